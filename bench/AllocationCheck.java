@@ -0,0 +1,224 @@
+import java.awt.Color;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * The AllocationCheck class checks that the hot path of a tick creates no garbage once it is warmed up: moving the
+ * balls, including every hit on a block, a brick of a brick field and the paddle, and moving the paddle. It also
+ * checks that a collision query along a trajectory creates nothing but the collision it returns, and that a tick
+ * looking for collisions on a pool creates nothing either, on the current thread or the pool's. It measures what
+ * the threads allocate with the thread MXBean and exits with a non-zero status if the average tick or query
+ * allocates more than a fixed budget, so {@code ant alloc-check} fails the build.
+ * Arguments are optional: the number of ticks to measure and the budget in bytes per tick.
+ */
+public class AllocationCheck {
+    private static final int WARMUP_TICKS = 20000;
+    private static final int DEFAULT_TICKS = 20000;
+    private static final double DEFAULT_BUDGET = 8;
+    private static final int QUERIES = 200000;
+    private static final double QUERY_BUDGET = 1;
+    private static final int RESULT_BYTES = 64;
+    private static final int BALLS = 200;
+    private static final int POOL_BALLS = 1000;
+    private static final int POOL_THREADS = 4;
+    private static final int POOL_WAIT_BYTES = 24;
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+    private static final int BORDER_SIZE = 20;
+
+    private final GameEnvironment environment;
+    private final BallSystem balls;
+    private final Ball single;
+    private final Paddle paddle;
+    private final double[] segments;
+    private long tick;
+
+    /**
+     * Constructs the world the check runs in: an arena with walls made of blocks, a row of blocks, a brick field of
+     * unbreakable bricks so it keeps being hit, a paddle, and balls going in every direction.
+     *
+     * @param ballCount the number of balls of the ball system
+     */
+    public AllocationCheck(int ballCount) {
+        this.environment = new GameEnvironment();
+        this.environment.addCollidable(new Block(new Rectangle(new Point(0, 0), WIDTH, HEIGHT), Color.BLUE));
+        this.environment.addCollidable(new Block(new Rectangle(new Point(0, 0), BORDER_SIZE, HEIGHT), Color.GRAY));
+        this.environment.addCollidable(new Block(new Rectangle(new Point(WIDTH - BORDER_SIZE, 0), BORDER_SIZE,
+                HEIGHT), Color.GRAY));
+        this.environment.addCollidable(new Block(new Rectangle(new Point(0, 0), WIDTH, BORDER_SIZE), Color.GRAY));
+        for (int i = 0; i < 10; i++) {
+            this.environment.addCollidable(new Block(new Rectangle(new Point(150 + i * 50, 260), 50, 20), Color.RED));
+        }
+        BrickField field = new BrickField(new Point(BORDER_SIZE, BORDER_SIZE), 50, 20, 15, 5,
+                new Color[] {Color.YELLOW});
+        for (int column = 0; column < field.getColumns(); column++) {
+            for (int row = 0; row < field.getRows(); row++) {
+                field.setBrick(column, row, 0, BrickField.UNBREAKABLE);
+            }
+        }
+        this.environment.addCollidable(field);
+        this.paddle = new Paddle(new Rectangle(new Point(350, HEIGHT - 2 * BORDER_SIZE), 100, 20), Color.ORANGE,
+                new NullKeyboardSensor());
+        this.environment.addMovingCollidable(this.paddle);
+
+        Random random = new Random(1);
+        this.balls = new BallSystem(this.environment, ballCount);
+        for (int i = 0; i < ballCount; i++) {
+            int index = this.balls.addBall(100 + random.nextInt(600), 300 + random.nextInt(200), 5, Color.WHITE);
+            Velocity velocity = Velocity.fromAngleAndSpeed(random.nextInt(360) + 0.5, 2 + random.nextInt(5));
+            this.balls.setVelocity(index, velocity.getDx(), velocity.getDy());
+        }
+        this.single = new Ball(400, 400, 5, Color.WHITE, this.environment);
+        this.single.setVelocity(3, 4);
+
+        // Trajectories below the brick field, so a hit only creates the collision and its point
+        this.segments = new double[QUERIES * 4];
+        for (int i = 0; i < this.segments.length; i += 4) {
+            double x = BORDER_SIZE + random.nextDouble() * (WIDTH - 2 * BORDER_SIZE);
+            double y = 300 + random.nextDouble() * (HEIGHT - 300);
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double length = random.nextDouble() * 40;
+            this.segments[i] = x;
+            this.segments[i + 1] = y;
+            this.segments[i + 2] = x + Math.cos(angle) * length;
+            this.segments[i + 3] = y + Math.sin(angle) * length;
+        }
+    }
+
+    /**
+     * Runs one tick: sweeps the paddle back and forth, moves every ball of the system and the single ball, and
+     * keeps the balls that fell past the paddle in play by bouncing them off the bottom of the arena.
+     *
+     * @param pool the pool to look for the collisions of the ball system on, or null to look on this thread
+     */
+    private void tick(ForkJoinPool pool) {
+        if ((this.tick / 100) % 2 == 0) {
+            this.paddle.moveLeft();
+        } else {
+            this.paddle.moveRight();
+        }
+        this.paddle.timePassed();
+        if (pool == null) {
+            this.balls.timePassed();
+        } else {
+            this.balls.timePassed(pool);
+        }
+        this.single.moveOneStep(this.environment);
+        for (int i = 0; i < this.balls.size(); i++) {
+            if (this.balls.getY(i) > HEIGHT && this.balls.getDy(i) > 0) {
+                this.balls.setVelocity(i, this.balls.getDx(i), -this.balls.getDy(i));
+            }
+        }
+        if (this.single.getY() > HEIGHT) {
+            this.single.setVelocity(3, -4);
+        }
+        this.tick++;
+    }
+
+    /**
+     * Runs a collision query along every trajectory.
+     *
+     * @return the number of trajectories that hit a collidable
+     */
+    private int queryTrajectories() {
+        int hits = 0;
+        for (int i = 0; i < this.segments.length; i += 4) {
+            CollisionInfo info = this.environment.getClosestCollision(this.segments[i], this.segments[i + 1],
+                    this.segments[i + 2], this.segments[i + 3]);
+            if (info != null) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Returns the bytes allocated so far by a thread and the workers of a pool.
+     *
+     * @param threads  the thread MXBean
+     * @param threadId the id of the thread
+     * @param workers  the workers the pool started
+     * @return the bytes allocated by all of them
+     */
+    private static long allocatedBytes(com.sun.management.ThreadMXBean threads, long threadId,
+                                       List<ForkJoinWorkerThread> workers) {
+        long allocated = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < workers.size(); i++) {
+            allocated += Math.max(0, threads.getThreadAllocatedBytes(workers.get(i).getId()));
+        }
+        return allocated;
+    }
+
+    /**
+     * Main method that runs the check.
+     *
+     * @param args the number of ticks to measure and the budget in bytes per tick, both optional
+     */
+    public static void main(String[] args) {
+        int ticks = args.length > 0 && !args[0].isEmpty() ? Integer.parseInt(args[0]) : DEFAULT_TICKS;
+        double budget = args.length > 1 ? Double.parseDouble(args[1]) : DEFAULT_BUDGET;
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        AllocationCheck check = new AllocationCheck(BALLS);
+        for (int i = 0; i < WARMUP_TICKS; i++) {
+            check.tick(null);
+        }
+        long queries = check.environment.getCollisionQueryCount();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ticks; i++) {
+            check.tick(null);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        queries = check.environment.getCollisionQueryCount() - queries;
+
+        double perTick = (double) allocated / ticks;
+        System.out.printf("%d ticks, %d collision queries: %d bytes allocated, %.2f bytes per tick (budget %.2f)%n",
+                ticks, queries, allocated, perTick, budget);
+
+        for (int i = 0; i < 5; i++) {
+            check.queryTrajectories();
+        }
+        before = threads.getThreadAllocatedBytes(threadId);
+        int hits = check.queryTrajectories();
+        allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        // A hit may create the collision it returns and its point, and nothing else
+        double perQuery = (double) Math.max(0, allocated - (long) hits * RESULT_BYTES) / QUERIES;
+        System.out.printf("%d trajectory queries, %d hits: %d bytes allocated, %.2f bytes per query beyond the "
+                + "collisions returned (budget %.2f)%n", QUERIES, hits, allocated, perQuery, QUERY_BUDGET);
+
+        // Enough balls for several slices, so the tick hands them to the pool's threads
+        List<ForkJoinWorkerThread> workers = new CopyOnWriteArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(POOL_THREADS, p -> {
+            ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            workers.add(worker);
+            return worker;
+        }, null, false);
+        AllocationCheck poolCheck = new AllocationCheck(POOL_BALLS);
+        for (int i = 0; i < WARMUP_TICKS; i++) {
+            poolCheck.tick(pool);
+        }
+        before = allocatedBytes(threads, threadId, workers);
+        for (int i = 0; i < ticks; i++) {
+            poolCheck.tick(pool);
+        }
+        allocated = allocatedBytes(threads, threadId, workers) - before;
+        pool.shutdown();
+        double perPoolTick = (double) allocated / ticks;
+        // The pool creates a node for a thread outside it to wait on, whenever the tasks are still running
+        double poolBudget = budget + POOL_WAIT_BYTES;
+        System.out.printf("%d ticks of %d balls on %d pool threads (%d started): %d bytes allocated, %.2f bytes per "
+                + "tick (budget %.2f)%n", ticks, POOL_BALLS, POOL_THREADS, workers.size(), allocated, perPoolTick,
+                poolBudget);
+
+        if (perTick > budget || perQuery > QUERY_BUDGET || perPoolTick > poolBudget) {
+            System.out.println("allocation budget exceeded");
+            System.exit(1);
+        }
+    }
+}
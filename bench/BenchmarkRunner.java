@@ -0,0 +1,101 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * The BenchmarkRunner class is a small microbenchmark harness.
+ * Each benchmark is a batch of operations returning a checksum; the harness warms it up, then times several
+ * measurement iterations and reports the mean time per operation with its standard deviation.
+ * The checksums are accumulated into a sink, so the JIT cannot drop the measured work.
+ */
+public class BenchmarkRunner {
+    private final long warmupMillis;
+    private final long iterationMillis;
+    private final int iterations;
+    private final String filter;
+    private final List<String> results;
+    private long sink;
+
+    /**
+     * Constructs a BenchmarkRunner.
+     *
+     * @param warmupMillis    how long to run each benchmark before measuring it
+     * @param iterationMillis how long a single measurement iteration lasts
+     * @param iterations      the number of measurement iterations
+     * @param filter          only benchmarks whose name contains this text are run
+     */
+    public BenchmarkRunner(long warmupMillis, long iterationMillis, int iterations, String filter) {
+        this.warmupMillis = warmupMillis;
+        this.iterationMillis = iterationMillis;
+        this.iterations = iterations;
+        this.filter = filter;
+        this.results = new ArrayList<>();
+    }
+
+    /**
+     * Runs a benchmark and records its result.
+     *
+     * @param name            the name of the benchmark, including its parameters
+     * @param operationsPerCall the number of operations performed by a single call of the batch
+     * @param batch           the batch of operations to time, returning a checksum
+     */
+    public void run(String name, int operationsPerCall, LongSupplier batch) {
+        if (!name.contains(this.filter)) {
+            return;
+        }
+        runFor(this.warmupMillis, batch);
+        double[] nanosPerOp = new double[this.iterations];
+        for (int i = 0; i < this.iterations; i++) {
+            long start = System.nanoTime();
+            long calls = runFor(this.iterationMillis, batch);
+            nanosPerOp[i] = (double) (System.nanoTime() - start) / (calls * operationsPerCall);
+        }
+
+        double mean = 0;
+        for (double value : nanosPerOp) {
+            mean += value / nanosPerOp.length;
+        }
+        double variance = 0;
+        for (double value : nanosPerOp) {
+            variance += (value - mean) * (value - mean) / nanosPerOp.length;
+        }
+        String result = String.format("%-60s %12.1f +- %8.1f ns/op", name, mean, Math.sqrt(variance));
+        this.results.add(result);
+        System.out.println(result);
+    }
+
+    /**
+     * Calls a batch repeatedly for about the given time.
+     *
+     * @param millis how long to keep calling the batch
+     * @param batch  the batch of operations to call
+     * @return the number of calls made
+     */
+    private long runFor(long millis, LongSupplier batch) {
+        long deadline = System.nanoTime() + millis * 1000000L;
+        long calls = 0;
+        do {
+            this.sink += batch.getAsLong();
+            calls++;
+        } while (System.nanoTime() < deadline);
+        return calls;
+    }
+
+    /**
+     * Returns the results recorded so far, one formatted line per benchmark.
+     *
+     * @return the recorded results
+     */
+    public List<String> getResults() {
+        return this.results;
+    }
+
+    /**
+     * Returns the accumulated checksums, so the measured work is observably used.
+     *
+     * @return the sum of all checksums
+     */
+    public long getSink() {
+        return this.sink;
+    }
+}
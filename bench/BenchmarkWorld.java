@@ -0,0 +1,164 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The BenchmarkWorld class builds scalable game worlds for the benchmarks: a walled arena with a grid of
+ * 50x20 bricks at the top and an empty area below it, where the balls start.
+ */
+public class BenchmarkWorld {
+    private static final int BRICK_WIDTH = 50;
+    private static final int BRICK_HEIGHT = 20;
+    private static final int BORDER_SIZE = 20;
+    private static final int OPEN_AREA_HEIGHT = 400;
+
+    private final GameEnvironment environment;
+    private final SpriteCollection sprites;
+    private final List<Block> blocks = new ArrayList<>();
+    private final Ball[] balls;
+    private final int width;
+    private final int height;
+    private final double openTop;
+
+    /**
+     * Constructs a world with the given number of bricks and balls.
+     *
+     * @param bricks the number of bricks
+     * @param balls  the number of balls
+     * @param seed   the seed for the ball positions and velocities
+     */
+    public BenchmarkWorld(int bricks, int balls, long seed) {
+        this.environment = new GameEnvironment();
+        this.sprites = new SpriteCollection();
+        int columns = Math.max(10, (int) Math.ceil(Math.sqrt(bricks * 2.5)));
+        int rows = (bricks + columns - 1) / columns;
+        this.width = columns * BRICK_WIDTH + 2 * BORDER_SIZE;
+        this.height = rows * BRICK_HEIGHT + OPEN_AREA_HEIGHT + 2 * BORDER_SIZE;
+
+        addBlock(new Block(new Rectangle(new Point(0, 0), this.width, BORDER_SIZE), Color.GRAY));
+        addBlock(new Block(new Rectangle(new Point(0, this.height - BORDER_SIZE), this.width, BORDER_SIZE),
+                Color.GRAY));
+        addBlock(new Block(new Rectangle(new Point(0, 0), BORDER_SIZE, this.height), Color.GRAY));
+        addBlock(new Block(new Rectangle(new Point(this.width - BORDER_SIZE, 0), BORDER_SIZE, this.height),
+                Color.GRAY));
+        for (int i = 0; i < bricks; i++) {
+            Point upperLeft = new Point(BORDER_SIZE + (i % columns) * BRICK_WIDTH,
+                    BORDER_SIZE + (i / columns) * BRICK_HEIGHT);
+            addBlock(new Block(new Rectangle(upperLeft, BRICK_WIDTH, BRICK_HEIGHT), Color.RED));
+        }
+
+        this.openTop = BORDER_SIZE + rows * BRICK_HEIGHT + 10;
+        Random random = new Random(seed);
+        this.balls = new Ball[balls];
+        for (int i = 0; i < balls; i++) {
+            this.balls[i] = new Ball(randomX(random), randomY(random), 5, Color.WHITE, this.environment);
+            this.balls[i].setVelocity(Velocity.fromAngleAndSpeed(random.nextInt(360) + 0.5, 5));
+            this.sprites.addSprite(this.balls[i]);
+        }
+    }
+
+    /**
+     * Creates a ball system in the open area of this world, with the same balls the constructor would create.
+     * The system is not added to the world's sprites.
+     *
+     * @param balls the number of balls
+     * @param seed  the seed for the ball positions and velocities
+     * @return the ball system
+     */
+    public BallSystem createBallSystem(int balls, long seed) {
+        Random random = new Random(seed);
+        BallSystem system = new BallSystem(this.environment, balls);
+        for (int i = 0; i < balls; i++) {
+            int index = system.addBall(randomX(random), randomY(random), 5, Color.WHITE);
+            Velocity velocity = Velocity.fromAngleAndSpeed(random.nextInt(360) + 0.5, 5);
+            system.setVelocity(index, velocity.getDx(), velocity.getDy());
+        }
+        return system;
+    }
+
+    /**
+     * Picks a random x-coordinate for a ball in the open area.
+     *
+     * @param random the random generator
+     * @return the x-coordinate
+     */
+    private double randomX(Random random) {
+        return BORDER_SIZE + 10 + random.nextDouble() * (this.width - 2 * BORDER_SIZE - 20);
+    }
+
+    /**
+     * Picks a random y-coordinate for a ball in the open area.
+     *
+     * @param random the random generator
+     * @return the y-coordinate
+     */
+    private double randomY(Random random) {
+        return this.openTop + random.nextDouble() * (OPEN_AREA_HEIGHT - 30);
+    }
+
+    /**
+     * Adds a block to both the environment and the sprites.
+     *
+     * @param block the block to add
+     */
+    private void addBlock(Block block) {
+        this.blocks.add(block);
+        this.environment.addCollidable(block);
+        this.sprites.addSprite(block);
+    }
+
+    /**
+     * Returns the walls and bricks, in the order they were added.
+     *
+     * @return the blocks
+     */
+    public List<Block> getBlocks() {
+        return this.blocks;
+    }
+
+    /**
+     * Returns the environment holding the walls and bricks.
+     *
+     * @return the game environment
+     */
+    public GameEnvironment getEnvironment() {
+        return this.environment;
+    }
+
+    /**
+     * Returns all sprites of the world: the walls, the bricks and the balls.
+     *
+     * @return the sprite collection
+     */
+    public SpriteCollection getSprites() {
+        return this.sprites;
+    }
+
+    /**
+     * Returns the balls of the world.
+     *
+     * @return the balls
+     */
+    public Ball[] getBalls() {
+        return this.balls;
+    }
+
+    /**
+     * Returns the width of the arena, walls included.
+     *
+     * @return the width of the arena
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Returns the height of the arena, walls included.
+     *
+     * @return the height of the arena
+     */
+    public int getHeight() {
+        return this.height;
+    }
+}
@@ -0,0 +1,426 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Benchmarks class that measures the physics and geometry hot paths.
+ * The first argument filters the benchmarks by name; the second, if given, is a file the results are written to.
+ */
+public class Benchmarks {
+    private static final int QUERIES = 1024;
+
+    /**
+     * Main method that runs the benchmarks.
+     *
+     * @param args command line arguments.
+     * @throws IOException if the results cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        String filter = args.length > 0 ? args[0] : "";
+        BenchmarkRunner runner = new BenchmarkRunner(1000, 500, 5, filter);
+
+        benchmarkGeometry(runner);
+        for (int collidables : new int[] {60, 1000, 100000}) {
+            benchmarkClosestCollision(runner, collidables);
+            benchmarkSweptCollision(runner, collidables);
+        }
+        benchmarkMoveOneStep(runner);
+        int[][] tickSizes = {{2, 60}, {100, 1000}, {1000, 10000}};
+        for (int[] size : tickSizes) {
+            benchmarkTick(runner, size[0], size[1]);
+        }
+        benchmarkBallSystem(runner, 1000, 10000);
+        benchmarkBallSystem(runner, 10000, 10000);
+        benchmarkParallelBallSystem(runner, 10000, 10000);
+        benchmarkBallCollisions(runner, 10000, 10000);
+        benchmarkSaveState(runner, 50000, 50000);
+        benchmarkBatchedReplay(runner, 10000, 8);
+        for (int moves : new int[] {1000, 10000}) {
+            benchmarkBatchCollision(runner, moves, 10000);
+        }
+        for (double length : new double[] {20, 2000}) {
+            benchmarkBrickField(runner, 1000, 1000, length);
+        }
+
+        if (args.length > 1) {
+            Files.write(Paths.get(args[1]), runner.getResults());
+        }
+        System.out.println("sink: " + runner.getSink());
+    }
+
+    /**
+     * Creates random short trajectories inside an area, like the ones a ball tests every tick.
+     *
+     * @param width  the width of the area
+     * @param height the height of the area
+     * @param length the maximal length of a trajectory along each axis
+     * @return the trajectories
+     */
+    private static Line[] randomTrajectories(int width, int height, double length) {
+        Random random = new Random(42);
+        Line[] lines = new Line[QUERIES];
+        for (int i = 0; i < lines.length; i++) {
+            double x = random.nextDouble() * width;
+            double y = random.nextDouble() * height;
+            lines[i] = new Line(x, y, x + (random.nextDouble() - 0.5) * length,
+                    y + (random.nextDouble() - 0.5) * length);
+        }
+        return lines;
+    }
+
+    /**
+     * Benchmarks line/line and rectangle/line intersections.
+     *
+     * @param runner the benchmark runner
+     */
+    private static void benchmarkGeometry(BenchmarkRunner runner) {
+        Line[] lines = randomTrajectories(200, 200, 200);
+        Rectangle rect = new Rectangle(new Point(50, 50), 100, 100);
+        Line edge = new Line(50, 50, 150, 150);
+
+        runner.run("Line.intersectionWith", QUERIES, () -> {
+            long hits = 0;
+            for (Line line : lines) {
+                if (line.intersectionWith(edge) != null) {
+                    hits++;
+                }
+            }
+            return hits;
+        });
+        runner.run("Rectangle.intersectionPoints", QUERIES, () -> {
+            long hits = 0;
+            for (Line line : lines) {
+                hits += rect.intersectionPoints(line).size();
+            }
+            return hits;
+        });
+    }
+
+    /**
+     * Benchmarks closest-collision queries of short trajectories against a brick field.
+     *
+     * @param runner      the benchmark runner
+     * @param collidables the number of bricks in the environment
+     */
+    private static void benchmarkClosestCollision(BenchmarkRunner runner, int collidables) {
+        BenchmarkWorld world = new BenchmarkWorld(collidables, 0, 1);
+        GameEnvironment environment = world.getEnvironment();
+        Line[] lines = randomTrajectories(world.getWidth(), world.getHeight(), 20);
+
+        runner.run("GameEnvironment.getClosestCollision collidables=" + collidables, QUERIES, () -> {
+            long hits = 0;
+            for (Line line : lines) {
+                if (environment.getClosestCollision(line) != null) {
+                    hits++;
+                }
+            }
+            return hits;
+        });
+    }
+
+    /**
+     * Benchmarks swept-circle queries of short moves against a brick field.
+     *
+     * @param runner      the benchmark runner
+     * @param collidables the number of bricks in the environment
+     */
+    private static void benchmarkSweptCollision(BenchmarkRunner runner, int collidables) {
+        BenchmarkWorld world = new BenchmarkWorld(collidables, 0, 1);
+        GameEnvironment environment = world.getEnvironment();
+        Line[] lines = randomTrajectories(world.getWidth(), world.getHeight(), 20);
+
+        runner.run("GameEnvironment.getClosestSweptCollision collidables=" + collidables, QUERIES, () -> {
+            long hits = 0;
+            for (Line line : lines) {
+                if (environment.getClosestSweptCollision(line.start().getX(), line.start().getY(),
+                        line.end().getX(), line.end().getY(), 6) != null) {
+                    hits++;
+                }
+            }
+            return hits;
+        });
+    }
+
+    /**
+     * Benchmarks moving a single ball around the default-sized brick field.
+     *
+     * @param runner the benchmark runner
+     */
+    private static void benchmarkMoveOneStep(BenchmarkRunner runner) {
+        BenchmarkWorld world = new BenchmarkWorld(60, 1, 1);
+        Ball ball = world.getBalls()[0];
+        GameEnvironment environment = world.getEnvironment();
+
+        runner.run("Ball.moveOneStep", QUERIES, () -> {
+            for (int i = 0; i < QUERIES; i++) {
+                ball.moveOneStep(environment);
+            }
+            return ball.getX();
+        });
+    }
+
+    /**
+     * Benchmarks a full tick of every sprite.
+     *
+     * @param runner the benchmark runner
+     * @param balls  the number of balls
+     * @param bricks the number of bricks
+     */
+    private static void benchmarkTick(BenchmarkRunner runner, int balls, int bricks) {
+        BenchmarkWorld world = new BenchmarkWorld(bricks, balls, 1);
+        SpriteCollection sprites = world.getSprites();
+        Ball first = world.getBalls()[0];
+
+        runner.run("SpriteCollection.notifyAllTimePassed balls=" + balls + " bricks=" + bricks, 1, () -> {
+            sprites.notifyAllTimePassed();
+            return first.getX();
+        });
+    }
+
+    /**
+     * Benchmarks moving all balls of a ball system one step.
+     *
+     * @param runner the benchmark runner
+     * @param balls  the number of balls
+     * @param bricks the number of bricks
+     */
+    private static void benchmarkBallSystem(BenchmarkRunner runner, int balls, int bricks) {
+        BenchmarkWorld world = new BenchmarkWorld(bricks, 0, 1);
+        BallSystem system = world.createBallSystem(balls, 1);
+
+        runner.run("BallSystem.timePassed balls=" + balls + " bricks=" + bricks, 1, () -> {
+            system.timePassed();
+            return (long) system.getX(0);
+        });
+    }
+
+    /**
+     * Benchmarks moving all balls of a ball system one step, looking for collisions on the common pool.
+     *
+     * @param runner the benchmark runner
+     * @param balls  the number of balls
+     * @param bricks the number of bricks
+     */
+    private static void benchmarkParallelBallSystem(BenchmarkRunner runner, int balls, int bricks) {
+        BenchmarkWorld world = new BenchmarkWorld(bricks, 0, 1);
+        BallSystem system = world.createBallSystem(balls, 1);
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+
+        runner.run("BallSystem.timePassed parallel=" + pool.getParallelism() + " balls=" + balls
+                + " bricks=" + bricks, 1, () -> {
+            system.timePassed(pool);
+            return (long) system.getX(0);
+        });
+    }
+
+    /**
+     * Benchmarks moving all balls of a ball system one step with balls bouncing off each other, and reports how
+     * many pairs of balls the sweep and prune tested.
+     *
+     * @param runner the benchmark runner
+     * @param balls  the number of balls
+     * @param bricks the number of bricks
+     */
+    private static void benchmarkBallCollisions(BenchmarkRunner runner, int balls, int bricks) {
+        BenchmarkWorld world = new BenchmarkWorld(bricks, 0, 1);
+        BallSystem system = world.createBallSystem(balls, 1);
+        system.setBallCollisions(true);
+
+        runner.run("BallSystem.timePassed ball collisions balls=" + balls + " bricks=" + bricks, 1, () -> {
+            system.timePassed();
+            return (long) system.getX(0);
+        });
+        if (system.getPairTests() > 0) {
+            System.out.printf("  pair tests in the last tick: %d of %d possible, %d hits%n", system.getPairTests(),
+                    (long) balls * (balls - 1) / 2, system.getBallHits());
+        }
+    }
+
+    /**
+     * Benchmarks saving a world to a save state file and loading its balls and blocks back.
+     *
+     * @param runner the benchmark runner
+     * @param balls  the number of balls
+     * @param bricks the number of bricks
+     * @throws IOException if the save state file cannot be created
+     */
+    private static void benchmarkSaveState(BenchmarkRunner runner, int balls, int bricks) throws IOException {
+        BenchmarkWorld world = new BenchmarkWorld(bricks, 0, 1);
+        BallSystem system = world.createBallSystem(balls, 1);
+        Paddle paddle = new Paddle(new Rectangle(new Point(400, 560), 100, 20), Color.ORANGE,
+                new NullKeyboardSensor());
+        Path file = Files.createTempFile("arkanoid", ".save");
+        file.toFile().deleteOnExit();
+        String fileName = file.toString();
+        BallSystem loaded = new BallSystem(null, balls);
+        boolean[] inGame = new boolean[world.getBlocks().size()];
+
+        runner.run("SaveState.save balls=" + balls + " bricks=" + bricks, 1, () -> {
+            try {
+                SaveState.save(fileName, 1, 1, paddle, 0, system, world.getBlocks());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return system.size();
+        });
+        runner.run("SaveState.load balls=" + balls + " bricks=" + bricks, 1, () -> {
+            try {
+                SaveState state = SaveState.load(fileName);
+                state.readBalls(loaded);
+                return state.readBlocks(inGame).length + (long) loaded.getX(0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Benchmarks replaying a recorded frame of many balls of a few interleaved colors on an off-screen image, in
+     * order and in batches, and reports how many color changes each replay made.
+     *
+     * @param runner the benchmark runner
+     * @param balls  the number of balls
+     * @param colors the number of colors, used in turn
+     */
+    private static void benchmarkBatchedReplay(BenchmarkRunner runner, int balls, int colors) {
+        Random random = new Random(1);
+        BallSystem system = new BallSystem(null, balls);
+        for (int i = 0; i < balls; i++) {
+            system.addBall(random.nextInt(800), random.nextInt(600), 5,
+                    Color.getHSBColor((float) (i % colors) / colors, 1, 1));
+        }
+        DrawCommandBuffer frame = new DrawCommandBuffer(800, 600);
+        system.drawOn(frame);
+        BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        GraphicsDrawSurface surface = new GraphicsDrawSurface(graphics, 800, 600);
+
+        runner.run("DrawCommandBuffer.replay balls=" + balls + " colors=" + colors, 1, () -> {
+            frame.replay(surface);
+            return frame.getColorChanges();
+        });
+        System.out.printf("  color changes: %d%n", frame.getColorChanges());
+        runner.run("DrawCommandBuffer.replayBatched balls=" + balls + " colors=" + colors, 1, () -> {
+            frame.replayBatched(surface);
+            return frame.getColorChanges();
+        });
+        System.out.printf("  color changes: %d%n", frame.getColorChanges());
+        graphics.dispose();
+    }
+
+    /**
+     * Benchmarks swept-circle queries against a brick field of packed cells, in which one cell in a hundred holds
+     * a brick, so long moves cross many cells before they hit one.
+     *
+     * @param runner  the benchmark runner
+     * @param columns the number of columns of the field
+     * @param rows    the number of rows of the field
+     * @param length  the maximal length of a move along each axis
+     */
+    private static void benchmarkBrickField(BenchmarkRunner runner, int columns, int rows, double length) {
+        BrickField field = new BrickField(new Point(0, 0), 50, 20, columns, rows, new Color[] {Color.RED});
+        Random random = new Random(1);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                if (random.nextInt(100) == 0) {
+                    field.setBrick(column, row, 0, 1);
+                }
+            }
+        }
+        GameEnvironment environment = new GameEnvironment();
+        environment.addCollidable(field);
+        Line[] lines = randomTrajectories(columns * 50, rows * 20, length);
+
+        runner.run("BrickField swept query cells=" + columns + "x" + rows + " length=" + length, QUERIES, () -> {
+            long hits = 0;
+            for (Line line : lines) {
+                if (environment.getClosestSweptCollision(line.start().getX(), line.start().getY(),
+                        line.end().getX(), line.end().getY(), 6) != null) {
+                    hits++;
+                }
+            }
+            return hits;
+        });
+        System.out.printf("  storage: %d bytes%n", field.getStorageBytes());
+    }
+
+    /**
+     * Benchmarks answering the moves of many balls one query at a time against answering them in one batch, both
+     * one move at a time and with the vector kernel over the packed cells. The random moves start anywhere in the
+     * world, most of them inside the bricks; the ball moves are one tick of the world's balls in the open area.
+     *
+     * @param runner      the benchmark runner
+     * @param moves       the number of moves
+     * @param collidables the number of bricks in the environment
+     */
+    private static void benchmarkBatchCollision(BenchmarkRunner runner, int moves, int collidables) {
+        BenchmarkWorld world = new BenchmarkWorld(collidables, moves, 1);
+        GameEnvironment environment = world.getEnvironment();
+        Random random = new Random(42);
+        CollisionBatch randomMoves = new CollisionBatch(moves);
+        for (int i = 0; i < moves; i++) {
+            double x = random.nextDouble() * world.getWidth();
+            double y = random.nextDouble() * world.getHeight();
+            randomMoves.setMove(i, x, y, x + (random.nextDouble() - 0.5) * 20, y + (random.nextDouble() - 0.5) * 20,
+                    6);
+        }
+        CollisionBatch ballMoves = new CollisionBatch(moves);
+        for (int i = 0; i < moves; i++) {
+            Ball ball = world.getBalls()[i];
+            Point center = ball.getCenter();
+            Velocity velocity = ball.getVelocity();
+            ballMoves.setMove(i, center.getX(), center.getY(), center.getX() + velocity.getDx(),
+                    center.getY() + velocity.getDy(), ball.getSize());
+        }
+        String bricks = " collidables=" + collidables;
+        benchmarkBatch(runner, environment, randomMoves, moves, "random moves=" + moves + bricks);
+        benchmarkBatch(runner, environment, ballMoves, moves, "balls=" + moves + bricks);
+    }
+
+    /**
+     * Benchmarks answering a batch of moves one query at a time, and in one batch without and with the vector kernel.
+     *
+     * @param runner      the benchmark runner
+     * @param environment the environment to query
+     * @param batch       the moves
+     * @param moves       the number of moves in the batch
+     * @param label       the description of the moves, appended to every benchmark name
+     */
+    private static void benchmarkBatch(BenchmarkRunner runner, GameEnvironment environment, CollisionBatch batch,
+                                       int moves, String label) {
+        environment.setVectorized(false);
+        environment.refresh();
+        runner.run("GameEnvironment.getClosestSweptCollision " + label, moves, () -> {
+            long hits = 0;
+            for (int i = 0; i < moves; i++) {
+                if (environment.getClosestSweptCollision(batch.getStartX(i), batch.getStartY(i), batch.getEndX(i),
+                        batch.getEndY(i), batch.getRadius(i)) != null) {
+                    hits++;
+                }
+            }
+            return hits;
+        });
+        for (boolean vectorized : new boolean[] {false, true}) {
+            environment.setVectorized(vectorized);
+            environment.refresh();
+            runner.run("GameEnvironment.findSweptCollisions " + (vectorized ? "vectorized " : "scalar ") + label,
+                    moves, () -> {
+                        environment.findSweptCollisions(batch, 0, moves);
+                        long hits = 0;
+                        for (int i = 0; i < moves; i++) {
+                            if (batch.getHit(i) != CollisionBatch.NO_HIT) {
+                                hits++;
+                            }
+                        }
+                        return hits;
+                    });
+        }
+    }
+}
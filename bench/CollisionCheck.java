@@ -0,0 +1,50 @@
+import java.awt.Color;
+
+/**
+ * The CollisionCheck class checks that a ball moved on its own sees a paddle where it is now, rather than where the
+ * environment last saw it. The paddle is moved between ticks, then one ball falls onto its new spot and another onto
+ * its old one; the first must bounce and the second must fall through. It exits with a non-zero status if either
+ * does not, so {@code ant collision-check} fails the build.
+ */
+public class CollisionCheck {
+    private static final int TICKS = 20;
+    private static final double PADDLE_TOP = 500;
+    private static final double PADDLE_HEIGHT = 20;
+
+    /**
+     * Main method that runs the check.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        GameEnvironment environment = new GameEnvironment();
+        Paddle paddle = new Paddle(new Rectangle(new Point(100, PADDLE_TOP), 100, PADDLE_HEIGHT), Color.ORANGE,
+                new NullKeyboardSensor());
+        environment.addMovingCollidable(paddle);
+        Ball onNewSpot = new Ball(350, 440, 5, Color.WHITE, environment);
+        onNewSpot.setVelocity(0.5, 4);
+        Ball onOldSpot = new Ball(150, 440, 5, Color.WHITE, environment);
+        onOldSpot.setVelocity(0.5, 4);
+
+        // One tick with the paddle at its old spot, which the environment then holds
+        onNewSpot.timePassed();
+        onOldSpot.timePassed();
+        while (paddle.getCollisionRectangle().getMinX() < 300) {
+            paddle.moveRight();
+        }
+        for (int i = 0; i < TICKS; i++) {
+            onNewSpot.timePassed();
+            onOldSpot.timePassed();
+        }
+
+        boolean bounced = onNewSpot.getVelocity().getDy() < 0 && onNewSpot.getY() < PADDLE_TOP;
+        boolean fellThrough = onOldSpot.getVelocity().getDy() > 0 && onOldSpot.getY() > PADDLE_TOP + PADDLE_HEIGHT;
+        System.out.printf("ball on the paddle's new spot: y=%d, dy=%.1f; ball on its old spot: y=%d, dy=%.1f%n",
+                onNewSpot.getY(), onNewSpot.getVelocity().getDy(), onOldSpot.getY(),
+                onOldSpot.getVelocity().getDy());
+        if (!bounced || !fellThrough) {
+            System.out.println("a ball did not see the paddle where it moved");
+            System.exit(1);
+        }
+    }
+}
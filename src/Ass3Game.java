@@ -1,14 +1,39 @@
+import java.io.IOException;
+
 /**
  * Ass3Game class that runs the game.
  */
 public class Ass3Game {
     /**
      * Main method that runs the game.
+     * Passing "pipelined" runs the simulation and the drawing on separate threads.
+     * Passing "record" followed by a file name records the input of the game into that file, to be replayed
+     * with {@link ReplayGame}.
+     * Passing "level" followed by a file name plays the level in that file instead of the built-in one.
      * @param args command line arguments.
+     * @throws IOException if the input log cannot be written or the level cannot be read
      */
-        public static void main(String[] args) {
+        public static void main(String[] args) throws IOException {
             Game game = new Game();
+            boolean pipelined = false;
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("pipelined")) {
+                    pipelined = true;
+                } else if (args[i].equals("record") && i + 1 < args.length) {
+                    InputRecorder recorder = new InputRecorder(args[++i], game.getSeed(),
+                            InputLog.DEFAULT_HASH_INTERVAL);
+                    game.setInputLog(recorder);
+                    // Closing the window exits the JVM, so the log is closed on the way out
+                    Runtime.getRuntime().addShutdownHook(new Thread(recorder::close));
+                } else if (args[i].equals("level") && i + 1 < args.length) {
+                    game.setLevel(Level.load(args[++i]));
+                }
+            }
             game.initialize();
-            game.run();
+            if (pipelined) {
+                game.runPipelined();
+            } else {
+                game.run();
+            }
         }
-}
\ No newline at end of file
+}
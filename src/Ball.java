@@ -2,13 +2,12 @@ import biuoop.DrawSurface;
 
 /**
  * The Ball class represents a ball with a center point, radius, color, and velocity.
+ * A Ball is a view over one index of a {@link BallSystem}, which holds the actual state;
+ * a ball created on its own gets a system of its own.
  */
 public class Ball implements Sprite {
-    private Point center;
-    private int r;
-    private java.awt.Color color;
-    private Velocity v;
-    private GameEnvironment gameEnvironment;
+    private final BallSystem system;
+    private final int index;
 
     /**
      * Constructs a Ball object.
@@ -18,9 +17,7 @@ public class Ball implements Sprite {
      * @param color  the color of the ball
      */
     public Ball(Point center, int r, java.awt.Color color) {
-        this.center = center;
-        this.r = r;
-        this.color = color;
+        this(center.getX(), center.getY(), r, color, null);
     }
 
     /**
@@ -32,9 +29,7 @@ public class Ball implements Sprite {
      * @param color the color of the ball
      */
     public Ball(double dx, double dy, int r, java.awt.Color color) {
-        this.center = new Point(dx, dy);
-        this.r = r;
-        this.color = color;
+        this(dx, dy, r, color, null);
     }
 
     /**
@@ -47,10 +42,20 @@ public class Ball implements Sprite {
      * @param gameEnvironment  the game environment of the ball
      */
     public Ball(double dx, double dy, int r, java.awt.Color color, GameEnvironment gameEnvironment) {
-        this.center = new Point(dx, dy);
-        this.r = r;
-        this.color = color;
-        this.gameEnvironment = gameEnvironment;
+        this.system = new BallSystem(gameEnvironment, 1);
+        this.index = this.system.addBall(dx, dy, r, color);
+    }
+
+    /**
+     * Constructs a Ball viewing a ball of a BallSystem.
+     * The view should not be added to the game on its own, since the system already moves and draws the ball.
+     *
+     * @param system the system holding the ball
+     * @param index  the index of the ball in the system
+     */
+    public Ball(BallSystem system, int index) {
+        this.system = system;
+        this.index = index;
     }
 
     /**
@@ -59,7 +64,7 @@ public class Ball implements Sprite {
      * @return the x-coordinate
      */
     public int getX() {
-        return (int) this.center.getX();
+        return (int) this.system.getX(this.index);
     }
 
     /**
@@ -68,7 +73,7 @@ public class Ball implements Sprite {
      * @return the y-coordinate
      */
     public int getY() {
-        return (int) this.center.getY();
+        return (int) this.system.getY(this.index);
     }
 
     /**
@@ -77,7 +82,7 @@ public class Ball implements Sprite {
      * @return the radius
      */
     public int getSize() {
-        return this.r;
+        return this.system.getRadius(this.index);
     }
 
     /**
@@ -86,7 +91,7 @@ public class Ball implements Sprite {
      * @return the center point
      */
     public Point getCenter() {
-        return this.center;
+        return new Point(this.system.getX(this.index), this.system.getY(this.index));
     }
 
     /**
@@ -95,7 +100,7 @@ public class Ball implements Sprite {
      * @return the color
      */
     public java.awt.Color getColor() {
-        return this.color;
+        return this.system.getColor(this.index);
     }
 
     /**
@@ -113,7 +118,7 @@ public class Ball implements Sprite {
 
     @Override
     public void timePassed() {
-        moveOneStep(this.gameEnvironment);
+        moveOneStep(this.system.getGameEnvironment());
     }
 
     /**
@@ -122,7 +127,7 @@ public class Ball implements Sprite {
      * @param v the velocity
      */
     public void setVelocity(Velocity v) {
-        this.v = v;
+        this.system.setVelocity(this.index, v.getDx(), v.getDy());
     }
 
     /**
@@ -132,7 +137,7 @@ public class Ball implements Sprite {
      * @param dy the change in y-coordinate
      */
     public void setVelocity(double dx, double dy) {
-        this.v = new Velocity(dx, dy);
+        this.system.setVelocity(this.index, dx, dy);
     }
 
     /**
@@ -141,59 +146,17 @@ public class Ball implements Sprite {
      * @return the velocity
      */
     public Velocity getVelocity() {
-        return this.v;
+        return new Velocity(this.system.getDx(this.index), this.system.getDy(this.index));
     }
 
     /**
      * Moves the ball one step according to its velocity and handles collisions.
+     * The environment is refreshed first, so the ball sees where moving collidables such as the paddle are now.
      *
      * @param environment the game environment containing collidable objects
      */
     public void moveOneStep(GameEnvironment environment) {
-        double dx = v.getDx();
-        double dy = v.getDy();
-        Point nextPositionNoCollision = new Point(center.getX() + dx, center.getY() + dy);
-
-        // Extend the trajectory line by the radius in the direction of the velocity
-        Point extendedNextPosition = new Point(
-                center.getX() + dx + r * (dx / Math.abs(dx)),
-                center.getY() + dy + r * (dy / Math.abs(dy))
-        );
-
-        // Create a trajectory line from the current center to the extended position
-        Line trajectory = new Line(center, extendedNextPosition);
-
-        CollisionInfo collisionInfo = environment.getClosestCollision(trajectory);
-        if (collisionInfo == null) {
-            // No collision, move to end of trajectory
-            this.center = nextPositionNoCollision;
-        } else {
-            // Collision detected
-            Point collisionPoint = collisionInfo.collisionPoint();
-            Collidable collisionObject = collisionInfo.collisionObject();
-
-            // Move to just before the collision point
-            double distanceToCollision = center.distance(collisionPoint);
-            double distanceToMove = distanceToCollision - this.r; // Subtract the ball's radius
-            double fraction = distanceToMove / center.distance(extendedNextPosition);
-
-            // Ensure fraction is within valid range
-            if (fraction < 0) {
-                fraction = 0;
-            }
-            if (fraction > 1) {
-                fraction = 1;
-            }
-
-            // Move to the almost collision point
-            this.center = trajectory.getPointAtFraction(fraction);
-
-            // Update velocity after collision
-            this.v = collisionObject.hit(collisionPoint, v);
-
-            // Move the ball slightly with the new velocity to avoid sticking
-            this.center = this.v.applyToPoint(this.center);
-        }
+        this.system.moveOneStep(this.index, environment);
     }
 
     /**
@@ -201,18 +164,19 @@ public class Ball implements Sprite {
      * Reverses direction if the ball hits the boundary.
      */
     public void moveOneStepWithin() {
-        double dx = v.getDx();
-        double dy = v.getDy();
-        double newVX = center.getX() + dx;
-        double newVY = center.getY() + dy;
-        if (newVX > 500 - this.r || newVX < 50 + this.r) {
+        double dx = this.system.getDx(this.index);
+        double dy = this.system.getDy(this.index);
+        double newVX = this.system.getX(this.index) + dx;
+        double newVY = this.system.getY(this.index) + dy;
+        int r = getSize();
+        if (newVX > 500 - r || newVX < 50 + r) {
             dx = -dx;
         }
-        if (newVY > 500 - this.r || newVY < 50 + this.r) {
+        if (newVY > 500 - r || newVY < 50 + r) {
             dy = -dy;
         }
         setVelocity(dx, dy);
-        this.center = this.getVelocity().applyToPoint(this.center);
+        moveOneStepOutside();
     }
 
     /**
@@ -222,11 +186,12 @@ public class Ball implements Sprite {
      * @param height the height of the surface
      */
     public void checkAndReverseVelocity(int width, int height) {
-        if (this.getX() - this.r < 0 || this.getX() + this.r >= width) {
-            this.v = new Velocity(-v.getDx(), v.getDy());
+        int r = getSize();
+        if (this.getX() - r < 0 || this.getX() + r >= width) {
+            setVelocity(-this.system.getDx(this.index), this.system.getDy(this.index));
         }
-        if (this.getY() - this.r <= 0 || this.getY() + this.r >= height) {
-            this.v = new Velocity(v.getDx(), -v.getDy());
+        if (this.getY() - r <= 0 || this.getY() + r >= height) {
+            setVelocity(this.system.getDx(this.index), -this.system.getDy(this.index));
         }
     }
 
@@ -248,7 +213,8 @@ public class Ball implements Sprite {
      * Moves the ball one step according to its velocity.
      */
     public void moveOneStepOutside() {
-        this.center = this.getVelocity().applyToPoint(this.center);
+        this.system.setCenter(this.index, this.system.getX(this.index) + this.system.getDx(this.index),
+                this.system.getY(this.index) + this.system.getDy(this.index));
     }
 
     /**
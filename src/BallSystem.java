@@ -0,0 +1,846 @@
+import biuoop.DrawSurface;
+
+import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The BallSystem class stores many balls as a structure of arrays and moves them all as a single sprite.
+ * {@link Ball} objects are views over a single index of a BallSystem.
+ */
+public class BallSystem implements ParallelSprite {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int BALLS_PER_TASK = 256;
+    private static final long HASH_PRIME = 0x100000001B3L;
+    private static final long HASH_OFFSET = 0xCBF29CE484222325L;
+    private static final double LOOKAHEAD_DISTANCE = 256;
+    private static final int MAX_HORIZON = 1024;
+    private static final double DUE_MARGIN = 1e-6;
+
+    private GameEnvironment gameEnvironment;
+    private double[] x;
+    private double[] y;
+    private double[] dx;
+    private double[] dy;
+    private int[] radius;
+    private Color[] color;
+    private CollisionBatch pendingHits;
+    private final Velocity hitVelocity = new Velocity(0, 0);
+    private int size;
+    private boolean ballCollisions;
+    private int[] sweepOrder;
+    private long pairTests;
+    private long ballHits;
+    private boolean kinetic;
+    private long kineticTicks;
+    private double[] paths;
+    private boolean[] stale;
+    private int[] staleBalls;
+    private int staleCount;
+    private int[] dueBalls;
+    private EventQueue events;
+    private CollisionBatch kineticQueries;
+    private long predictions;
+    private final FindAllCollisionsTask findAllCollisions = new FindAllCollisionsTask();
+    private FindCollisionsTask[] sliceTasks = new FindCollisionsTask[0];
+    private int sliceCount;
+
+    /**
+     * Constructs an empty BallSystem whose balls collide with the given environment.
+     *
+     * @param gameEnvironment the game environment of the balls, or null if they are not moved through it
+     */
+    public BallSystem(GameEnvironment gameEnvironment) {
+        this(gameEnvironment, INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty BallSystem with room for the given number of balls.
+     *
+     * @param gameEnvironment the game environment of the balls, or null if they are not moved through it
+     * @param capacity        the number of balls the system can hold before growing
+     */
+    public BallSystem(GameEnvironment gameEnvironment, int capacity) {
+        this.gameEnvironment = gameEnvironment;
+        this.x = new double[capacity];
+        this.y = new double[capacity];
+        this.dx = new double[capacity];
+        this.dy = new double[capacity];
+        this.radius = new int[capacity];
+        this.color = new Color[capacity];
+        this.pendingHits = new CollisionBatch(capacity);
+        this.sweepOrder = new int[capacity];
+    }
+
+    /**
+     * Adds a ball to the system. The ball is not moving until its velocity is set.
+     *
+     * @param centerX the x-coordinate of the center of the ball
+     * @param centerY the y-coordinate of the center of the ball
+     * @param r       the radius of the ball
+     * @param c       the color of the ball
+     * @return the index of the new ball
+     */
+    public int addBall(double centerX, double centerY, int r, Color c) {
+        if (this.size == this.x.length) {
+            grow(Math.max(1, this.x.length * 2));
+        }
+        // New balls join at the end of the sweep order, and the next sort moves them into place
+        this.sweepOrder[this.size] = this.size;
+        this.x[this.size] = centerX;
+        this.y[this.size] = centerY;
+        this.radius[this.size] = r;
+        this.color[this.size] = c;
+        if (this.kinetic) {
+            restart(this.size);
+        }
+        return this.size++;
+    }
+
+    /**
+     * Grows the arrays of the system to the given capacity.
+     *
+     * @param capacity the new capacity, at least the current one
+     */
+    private void grow(int capacity) {
+        this.x = Arrays.copyOf(this.x, capacity);
+        this.y = Arrays.copyOf(this.y, capacity);
+        this.dx = Arrays.copyOf(this.dx, capacity);
+        this.dy = Arrays.copyOf(this.dy, capacity);
+        this.radius = Arrays.copyOf(this.radius, capacity);
+        this.color = Arrays.copyOf(this.color, capacity);
+        this.pendingHits.ensureCapacity(capacity);
+        this.sweepOrder = Arrays.copyOf(this.sweepOrder, capacity);
+        if (this.paths != null) {
+            growKinetic(capacity);
+        }
+    }
+
+    /**
+     * Writes the state of all balls to the buffer, at its position, one column after the other: the x- and
+     * y-coordinates of the centers, the x and y velocities, the radii, and the colors as ARGB values.
+     * The buffer must have {@link SaveState#BALL_BYTES} bytes left per ball.
+     *
+     * @param buffer the buffer to write to; its position is moved past the balls
+     */
+    public void writeState(ByteBuffer buffer) {
+        int n = this.size;
+        buffer.asDoubleBuffer().put(this.x, 0, n).put(this.y, 0, n).put(this.dx, 0, n).put(this.dy, 0, n);
+        buffer.position(buffer.position() + 4 * n * Double.BYTES);
+        buffer.asIntBuffer().put(this.radius, 0, n);
+        buffer.position(buffer.position() + n * Integer.BYTES);
+        for (int i = 0; i < n; i++) {
+            buffer.putInt(this.color[i].getRGB());
+        }
+    }
+
+    /**
+     * Replaces all balls of the system with the given number of balls read from the buffer, at its position,
+     * in the layout of {@link #writeState(ByteBuffer)}. Pending collisions and the sweep order are reset.
+     *
+     * @param buffer the buffer to read from; its position is moved past the balls
+     * @param count  the number of balls in the buffer
+     */
+    public void readState(ByteBuffer buffer, int count) {
+        if (count > this.x.length) {
+            grow(count);
+        }
+        buffer.asDoubleBuffer().get(this.x, 0, count).get(this.y, 0, count).get(this.dx, 0, count)
+                .get(this.dy, 0, count);
+        buffer.position(buffer.position() + 4 * count * Double.BYTES);
+        buffer.asIntBuffer().get(this.radius, 0, count);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        Color last = null;
+        for (int i = 0; i < count; i++) {
+            int argb = buffer.getInt();
+            // Balls mostly share a few colors, so consecutive equal colors share one object
+            if (last == null || last.getRGB() != argb) {
+                last = new Color(argb, true);
+            }
+            this.color[i] = last;
+            this.sweepOrder[i] = i;
+        }
+        for (int i = 0; i < count; i++) {
+            this.pendingHits.setHit(i, CollisionBatch.NO_HIT, Double.NaN);
+        }
+        this.size = count;
+        if (this.kinetic) {
+            restartAll();
+        }
+    }
+
+    /**
+     * Returns a view of a single ball of the system.
+     *
+     * @param index the index of the ball
+     * @return a Ball reading and writing the ball's state in this system
+     */
+    public Ball getBall(int index) {
+        return new Ball(this, index);
+    }
+
+    /**
+     * Returns the number of balls in the system.
+     *
+     * @return the number of balls
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns a hash of the positions and velocities of all balls, exact to the last bit, so two runs that hash
+     * differently have diverged.
+     *
+     * @return the state hash of the balls
+     */
+    public long stateHash() {
+        long hash = HASH_OFFSET;
+        for (int i = 0; i < this.size; i++) {
+            hash = (hash ^ Double.doubleToLongBits(this.x[i])) * HASH_PRIME;
+            hash = (hash ^ Double.doubleToLongBits(this.y[i])) * HASH_PRIME;
+            hash = (hash ^ Double.doubleToLongBits(this.dx[i])) * HASH_PRIME;
+            hash = (hash ^ Double.doubleToLongBits(this.dy[i])) * HASH_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the game environment the balls collide with.
+     *
+     * @return the game environment
+     */
+    public GameEnvironment getGameEnvironment() {
+        return this.gameEnvironment;
+    }
+
+    /**
+     * Gets the x-coordinate of the center of a ball.
+     *
+     * @param index the index of the ball
+     * @return the x-coordinate
+     */
+    public double getX(int index) {
+        return this.x[index];
+    }
+
+    /**
+     * Gets the y-coordinate of the center of a ball.
+     *
+     * @param index the index of the ball
+     * @return the y-coordinate
+     */
+    public double getY(int index) {
+        return this.y[index];
+    }
+
+    /**
+     * Gets the change in x-coordinate of a ball per step.
+     *
+     * @param index the index of the ball
+     * @return the change in x-coordinate
+     */
+    public double getDx(int index) {
+        return this.dx[index];
+    }
+
+    /**
+     * Gets the change in y-coordinate of a ball per step.
+     *
+     * @param index the index of the ball
+     * @return the change in y-coordinate
+     */
+    public double getDy(int index) {
+        return this.dy[index];
+    }
+
+    /**
+     * Gets the radius of a ball.
+     *
+     * @param index the index of the ball
+     * @return the radius
+     */
+    public int getRadius(int index) {
+        return this.radius[index];
+    }
+
+    /**
+     * Gets the color of a ball.
+     *
+     * @param index the index of the ball
+     * @return the color
+     */
+    public Color getColor(int index) {
+        return this.color[index];
+    }
+
+    /**
+     * Moves the center of a ball.
+     *
+     * @param index   the index of the ball
+     * @param centerX the new x-coordinate of the center
+     * @param centerY the new y-coordinate of the center
+     */
+    public void setCenter(int index, double centerX, double centerY) {
+        this.x[index] = centerX;
+        this.y[index] = centerY;
+        if (this.kinetic) {
+            restart(index);
+        }
+    }
+
+    /**
+     * Sets the velocity of a ball.
+     *
+     * @param index     the index of the ball
+     * @param velocityX the change in x-coordinate per step
+     * @param velocityY the change in y-coordinate per step
+     */
+    public void setVelocity(int index, double velocityX, double velocityY) {
+        this.dx[index] = velocityX;
+        this.dy[index] = velocityY;
+        if (this.kinetic) {
+            restart(index);
+        }
+    }
+
+    /**
+     * Turns collisions between balls of this system on or off. They are off by default. Balls bounce elastically,
+     * and the candidate pairs come from a sweep and prune along the x-axis.
+     *
+     * @param enabled true to make balls bounce off each other
+     * @throws IllegalStateException if balls are to bounce off each other in kinetic mode
+     */
+    public void setBallCollisions(boolean enabled) {
+        if (enabled && this.kinetic) {
+            throw new IllegalStateException("balls cannot bounce off each other in kinetic mode");
+        }
+        this.ballCollisions = enabled;
+    }
+
+    /**
+     * Turns kinetic mode on or off. It is off by default. In kinetic mode a ball is only queried on the tick its
+     * predicted collision falls in, or after a change of the environment along its path, and otherwise just moves
+     * by its velocity. Turning it on makes the system's environment keep track of its changes.
+     *
+     * @param enabled true to move balls from collision to collision
+     * @throws IllegalStateException if kinetic mode is turned on while balls bounce off each other
+     */
+    public void setKinetic(boolean enabled) {
+        if (enabled == this.kinetic) {
+            return;
+        }
+        if (enabled && this.ballCollisions) {
+            throw new IllegalStateException("balls cannot bounce off each other in kinetic mode");
+        }
+        this.kinetic = enabled;
+        this.gameEnvironment.setChangeTracking(enabled);
+        if (!enabled) {
+            return;
+        }
+        if (this.paths == null) {
+            this.events = new EventQueue();
+            this.kineticQueries = new CollisionBatch(INITIAL_CAPACITY);
+            growKinetic(this.x.length);
+        }
+        restartAll();
+    }
+
+    /**
+     * Returns how many times the next collision of a ball was predicted in kinetic mode, which is how much
+     * collision work it did besides the ticks in which balls actually collide.
+     *
+     * @return the number of predictions so far
+     */
+    public long getPredictions() {
+        return this.predictions;
+    }
+
+    /**
+     * Returns how many pairs of balls were tested against each other in the last tick, which shows how well the
+     * sweep and prune cut down the number of pairs from the n * (n - 1) / 2 of testing them all.
+     *
+     * @return the number of pair tests in the last tick, or 0 if ball collisions are off
+     */
+    public long getPairTests() {
+        return this.pairTests;
+    }
+
+    /**
+     * Returns how many pairs of balls bounced off each other in the last tick.
+     *
+     * @return the number of ball-to-ball hits in the last tick, or 0 if ball collisions are off
+     */
+    public long getBallHits() {
+        return this.ballHits;
+    }
+
+    /**
+     * Draws all balls on the given DrawSurface.
+     *
+     * @param surface the DrawSurface to draw on
+     */
+    @Override
+    public void drawOn(DrawSurface surface) {
+        for (int i = 0; i < this.size; i++) {
+            surface.setColor(this.color[i]);
+            surface.fillCircle((int) this.x[i], (int) this.y[i], this.radius[i]);
+        }
+    }
+
+    /**
+     * Moves all balls one step against the system's game environment. The collisions of all balls are looked for
+     * first, and then applied one ball at a time in index order.
+     */
+    @Override
+    public void timePassed() {
+        if (this.kinetic) {
+            kineticTick();
+            return;
+        }
+        this.gameEnvironment.refresh();
+        this.gameEnvironment.beginHitPhase();
+        findCollisions(0, this.size, this.gameEnvironment);
+        applyCollisions();
+        this.gameEnvironment.endHitPhase();
+        if (this.ballCollisions) {
+            collideBalls();
+        }
+    }
+
+    /**
+     * Moves all balls one step against the system's game environment, looking for collisions on the given pool.
+     *
+     * @param pool the pool to look for collisions on
+     */
+    @Override
+    public void timePassed(ForkJoinPool pool) {
+        if (this.kinetic) {
+            // Only the few balls that collide are queried, which is not worth handing over to the pool
+            kineticTick();
+            return;
+        }
+        this.gameEnvironment.refresh();
+        this.gameEnvironment.beginHitPhase();
+        if (this.size <= BALLS_PER_TASK) {
+            // Too few balls to be worth handing over to the pool
+            findCollisions(0, this.size, this.gameEnvironment);
+        } else {
+            prepareSliceTasks();
+            this.findAllCollisions.reinitialize();
+            pool.invoke(this.findAllCollisions);
+        }
+        applyCollisions();
+        this.gameEnvironment.endHitPhase();
+        if (this.ballCollisions) {
+            collideBalls();
+        }
+    }
+
+    /**
+     * Moves a ball one step according to its velocity and handles collisions.
+     * The environment is refreshed first, unless a tick is between finding and delivering its hits, where that
+     * would reclaim slots under the pending hits of other balls.
+     *
+     * @param index       the index of the ball
+     * @param environment the game environment containing collidable objects
+     */
+    public void moveOneStep(int index, GameEnvironment environment) {
+        environment.refreshIfIdle();
+        findCollisions(index, index + 1, environment);
+        applyCollision(index, environment);
+        if (this.kinetic) {
+            restart(index);
+        }
+    }
+
+    /**
+     * Runs the first phase of a tick for a range of balls: looks for the collisions of all of them in one batch.
+     * The whole ball is swept along its step, so it touches collidables with its edge rather than its center.
+     * Balls that hit nothing are moved to the end of their step; the other collisions are kept for
+     * {@link #applyCollision(int, GameEnvironment)}.
+     *
+     * @param from        the index of the first ball
+     * @param to          the index after the last ball
+     * @param environment the game environment containing collidable objects
+     */
+    private void findCollisions(int from, int to, GameEnvironment environment) {
+        CollisionBatch batch = this.pendingHits;
+        for (int i = from; i < to; i++) {
+            batch.setMove(i, this.x[i], this.y[i], this.x[i] + this.dx[i], this.y[i] + this.dy[i], this.radius[i]);
+        }
+        environment.findSweptCollisions(batch, from, to);
+        for (int i = from; i < to; i++) {
+            if (batch.getHit(i) == CollisionBatch.NO_HIT) {
+                // No collision, move to end of trajectory
+                this.x[i] = batch.getEndX(i);
+                this.y[i] = batch.getEndY(i);
+            }
+        }
+    }
+
+    /**
+     * Runs the second phase of a tick for every ball, in index order.
+     */
+    private void applyCollisions() {
+        for (int i = 0; i < this.size; i++) {
+            applyCollision(i, this.gameEnvironment);
+        }
+    }
+
+    /**
+     * Applies the collision found for a ball, if any: moves the ball to where it touches the collidable and lets
+     * the collidable decide its new velocity.
+     *
+     * @param index       the index of the ball
+     * @param environment the game environment the collision was found in
+     */
+    private void applyCollision(int index, GameEnvironment environment) {
+        CollisionBatch batch = this.pendingHits;
+        if (batch.getHit(index) == CollisionBatch.NO_HIT) {
+            return;
+        }
+        double fraction = batch.getTime(index);
+        double vx = this.dx[index];
+        double vy = this.dy[index];
+
+        // Move to the point of contact. The rest of the step is dropped, since moving on unchecked could push the
+        // ball into another collidable
+        this.x[index] += fraction * vx;
+        this.y[index] += fraction * vy;
+
+        // Update velocity after collision, in place
+        Velocity velocity = this.hitVelocity;
+        velocity.set(vx, vy);
+        environment.deliverHit(batch, index, velocity);
+        batch.setHit(index, CollisionBatch.NO_HIT, Double.NaN);
+        this.dx[index] = velocity.getDx();
+        this.dy[index] = velocity.getDy();
+    }
+
+    /**
+     * Runs a tick in kinetic mode. Predictions that a change of the environment may have spoiled are dropped, and
+     * the balls without a prediction are swept ahead. The balls whose collision falls in this tick are then moved
+     * one step like in a normal tick, in index order, and every other ball simply moves by its velocity.
+     */
+    private void kineticTick() {
+        GameEnvironment environment = this.gameEnvironment;
+        environment.refresh();
+        if (environment.hasChanges()) {
+            for (int i = 0; i < this.size; i++) {
+                int offset = i * 4;
+                if (!this.stale[i] && environment.changedWithin(this.paths[offset], this.paths[offset + 1],
+                        this.paths[offset + 2], this.paths[offset + 3])) {
+                    markStale(i);
+                }
+            }
+            environment.clearChanges();
+        }
+        predictStale();
+
+        long now = this.kineticTicks;
+        int dueCount = 0;
+        // A collision predicted just after the end of the tick may still fall in it when the ball is moved one step,
+        // so such balls are queried as well; the query decides
+        while (this.events.peekTime() <= now + 1 + DUE_MARGIN) {
+            this.dueBalls[dueCount++] = this.events.poll();
+        }
+        Arrays.sort(this.dueBalls, 0, dueCount);
+        environment.beginHitPhase();
+        CollisionBatch batch = this.kineticQueries;
+        batch.ensureCapacity(dueCount);
+        for (int k = 0; k < dueCount; k++) {
+            int i = this.dueBalls[k];
+            batch.setMove(k, this.x[i], this.y[i], this.x[i] + this.dx[i], this.y[i] + this.dy[i], this.radius[i]);
+        }
+        environment.findSweptCollisions(batch, 0, dueCount);
+        for (int k = 0; k < dueCount; k++) {
+            int i = this.dueBalls[k];
+            if (batch.getHit(k) == CollisionBatch.NO_HIT) {
+                this.x[i] = batch.getEndX(k);
+                this.y[i] = batch.getEndY(k);
+            } else {
+                double vx = this.dx[i];
+                double vy = this.dy[i];
+                // As in a normal tick, the ball stops where it touches and the rest of the step is dropped
+                this.x[i] += batch.getTime(k) * vx;
+                this.y[i] += batch.getTime(k) * vy;
+                Velocity velocity = this.hitVelocity;
+                velocity.set(vx, vy);
+                environment.deliverHit(batch, k, velocity);
+                this.dx[i] = velocity.getDx();
+                this.dy[i] = velocity.getDy();
+            }
+            markStale(i);
+        }
+        environment.endHitPhase();
+
+        // The balls that were queried are the stale ones now
+        for (int i = 0; i < this.size; i++) {
+            if (!this.stale[i]) {
+                this.x[i] += this.dx[i];
+                this.y[i] += this.dy[i];
+            }
+        }
+        this.kineticTicks = now + 1;
+    }
+
+    /**
+     * Sweeps every ball without a prediction ahead from where it is now, and schedules its next collision, or the
+     * end of its sweep if it hits nothing on the way. A ball is swept about {@link #LOOKAHEAD_DISTANCE} ahead, so a
+     * prediction stays cheap and a change of the environment only spoils the predictions of nearby balls.
+     */
+    private void predictStale() {
+        int count = this.staleCount;
+        if (count == 0) {
+            return;
+        }
+        long now = this.kineticTicks;
+        CollisionBatch batch = this.kineticQueries;
+        batch.ensureCapacity(count);
+        for (int k = 0; k < count; k++) {
+            int i = this.staleBalls[k];
+            int horizon = horizon(i);
+            batch.setMove(k, this.x[i], this.y[i], this.x[i] + horizon * this.dx[i], this.y[i] + horizon * this.dy[i],
+                    this.radius[i]);
+        }
+        this.gameEnvironment.findSweptCollisions(batch, 0, count);
+        for (int k = 0; k < count; k++) {
+            int i = this.staleBalls[k];
+            double time = batch.getHit(k) == CollisionBatch.NO_HIT ? 1 : batch.getTime(k);
+            int horizon = horizon(i);
+            this.events.schedule(i, now + time * horizon);
+            double endX = this.x[i] + time * horizon * this.dx[i];
+            double endY = this.y[i] + time * horizon * this.dy[i];
+            int r = this.radius[i];
+            int offset = i * 4;
+            this.paths[offset] = Math.min(this.x[i], endX) - r;
+            this.paths[offset + 1] = Math.min(this.y[i], endY) - r;
+            this.paths[offset + 2] = Math.max(this.x[i], endX) + r;
+            this.paths[offset + 3] = Math.max(this.y[i], endY) + r;
+            this.stale[i] = false;
+        }
+        this.predictions += count;
+        this.staleCount = 0;
+    }
+
+    /**
+     * Returns how many ticks ahead a ball is swept when its next collision is predicted.
+     *
+     * @param index the index of the ball
+     * @return the number of ticks, between 1 and {@link #MAX_HORIZON}
+     */
+    private int horizon(int index) {
+        double speed = Math.max(Math.abs(this.dx[index]), Math.abs(this.dy[index]));
+        if (speed * MAX_HORIZON <= LOOKAHEAD_DISTANCE) {
+            return MAX_HORIZON;
+        }
+        return Math.max(1, (int) (LOOKAHEAD_DISTANCE / speed));
+    }
+
+    /**
+     * Drops the prediction of a ball, so it is predicted again at the start of the next tick.
+     *
+     * @param index the index of the ball
+     */
+    private void markStale(int index) {
+        if (!this.stale[index]) {
+            this.stale[index] = true;
+            this.staleBalls[this.staleCount++] = index;
+        }
+    }
+
+    /**
+     * Drops the prediction of a ball whose position or velocity was changed from outside.
+     *
+     * @param index the index of the ball
+     */
+    private void restart(int index) {
+        this.events.cancel(index);
+        markStale(index);
+    }
+
+    /**
+     * Drops the predictions of all balls.
+     */
+    private void restartAll() {
+        this.events.clear();
+        this.staleCount = 0;
+        Arrays.fill(this.stale, false);
+        for (int i = 0; i < this.size; i++) {
+            restart(i);
+        }
+    }
+
+    /**
+     * Grows the arrays of kinetic mode to the given capacity.
+     *
+     * @param capacity the new capacity, at least the current one
+     */
+    private void growKinetic(int capacity) {
+        if (this.paths == null) {
+            this.paths = new double[capacity * 4];
+            this.stale = new boolean[capacity];
+            this.staleBalls = new int[capacity];
+            this.dueBalls = new int[capacity];
+            return;
+        }
+        this.paths = Arrays.copyOf(this.paths, capacity * 4);
+        this.stale = Arrays.copyOf(this.stale, capacity);
+        this.staleBalls = Arrays.copyOf(this.staleBalls, capacity);
+        this.dueBalls = Arrays.copyOf(this.dueBalls, capacity);
+    }
+
+    /**
+     * Bounces overlapping balls that move towards each other off one another. Runs after the balls moved, one
+     * pair at a time in sweep order, so the result is deterministic.
+     */
+    private void collideBalls() {
+        sortSweepOrder();
+        long tests = 0;
+        long hits = 0;
+        for (int i = 0; i < this.size; i++) {
+            int a = this.sweepOrder[i];
+            double right = this.x[a] + this.radius[a];
+            for (int j = i + 1; j < this.size; j++) {
+                int b = this.sweepOrder[j];
+                if (this.x[b] - this.radius[b] > right) {
+                    // Every later ball starts even further right
+                    break;
+                }
+                tests++;
+                if (bounce(a, b)) {
+                    hits++;
+                }
+            }
+        }
+        this.pairTests = tests;
+        this.ballHits = hits;
+    }
+
+    /**
+     * Sorts the sweep order by the left side of every ball. The order of the previous tick is almost sorted
+     * already, so an insertion sort repairs it in close to linear time.
+     */
+    private void sortSweepOrder() {
+        int[] order = this.sweepOrder;
+        for (int i = 1; i < this.size; i++) {
+            int ball = order[i];
+            double left = this.x[ball] - this.radius[ball];
+            int j = i - 1;
+            while (j >= 0 && this.x[order[j]] - this.radius[order[j]] > left) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = ball;
+        }
+    }
+
+    /**
+     * Bounces two balls off each other elastically if they overlap and move towards each other. Each ball's mass
+     * is taken to be its radius squared.
+     *
+     * @param a the index of the first ball
+     * @param b the index of the second ball
+     * @return true if the balls bounced
+     */
+    private boolean bounce(int a, int b) {
+        double nx = this.x[b] - this.x[a];
+        double ny = this.y[b] - this.y[a];
+        double reach = this.radius[a] + this.radius[b];
+        double distanceSquared = nx * nx + ny * ny;
+        if (distanceSquared >= reach * reach || distanceSquared == 0) {
+            return false;
+        }
+        // The speed at which b moves towards a along the line between their centers
+        double distance = Math.sqrt(distanceSquared);
+        nx /= distance;
+        ny /= distance;
+        double closing = (this.dx[b] - this.dx[a]) * nx + (this.dy[b] - this.dy[a]) * ny;
+        if (closing >= 0) {
+            // Overlapping but already moving apart
+            return false;
+        }
+        double massA = (double) this.radius[a] * this.radius[a];
+        double massB = (double) this.radius[b] * this.radius[b];
+        double impulse = 2 * closing / (massA + massB);
+        this.dx[a] += impulse * massB * nx;
+        this.dy[a] += impulse * massB * ny;
+        this.dx[b] -= impulse * massA * nx;
+        this.dy[b] -= impulse * massA * ny;
+        return true;
+    }
+
+    /**
+     * Readies a task for every slice of {@link #BALLS_PER_TASK} balls, so a tick on a pool reuses the tasks of the
+     * previous one. Tasks are only created when the balls no longer fit the slices there are.
+     */
+    private void prepareSliceTasks() {
+        this.sliceCount = (this.size + BALLS_PER_TASK - 1) / BALLS_PER_TASK;
+        if (this.sliceTasks.length < this.sliceCount) {
+            int created = this.sliceTasks.length;
+            this.sliceTasks = Arrays.copyOf(this.sliceTasks, this.sliceCount);
+            for (int slice = created; slice < this.sliceCount; slice++) {
+                this.sliceTasks[slice] = new FindCollisionsTask(slice);
+            }
+        }
+        for (int slice = 0; slice < this.sliceCount; slice++) {
+            this.sliceTasks[slice].reinitialize();
+        }
+    }
+
+    /**
+     * Adds the ball system to the game as a single sprite.
+     *
+     * @param game the game to add the balls to
+     */
+    public void addToGame(Game game) {
+        game.addSprite(this);
+    }
+
+    /**
+     * Runs the first phase of a tick on the threads of a pool, handing every slice of balls but the first to a task
+     * of its own and running the first itself. It is created once and reinitialized for every tick.
+     */
+    private class FindAllCollisionsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute() {
+            for (int slice = 1; slice < sliceCount; slice++) {
+                sliceTasks[slice].fork();
+            }
+            sliceTasks[0].invoke();
+            // Join in the reverse order of the forks, so slices no thread took are run here without waiting
+            for (int slice = sliceCount - 1; slice >= 1; slice--) {
+                sliceTasks[slice].join();
+            }
+        }
+    }
+
+    /**
+     * Runs the first phase of a tick for one slice of {@link #BALLS_PER_TASK} balls. It is created once for its
+     * slice and reinitialized for every tick.
+     */
+    private class FindCollisionsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int slice;
+
+        /**
+         * Constructs a task for a slice of balls.
+         *
+         * @param slice the index of the slice, whose first ball is slice * BALLS_PER_TASK
+         */
+        FindCollisionsTask(int slice) {
+            this.slice = slice;
+        }
+
+        @Override
+        protected void compute() {
+            int from = this.slice * BALLS_PER_TASK;
+            findCollisions(from, Math.min(from + BALLS_PER_TASK, size), gameEnvironment);
+        }
+    }
+}
@@ -4,9 +4,12 @@ import biuoop.DrawSurface;
  * The Block class represents a block that is both a collidable and a sprite.
  * It is defined by a rectangle and a color.
  */
-public class Block implements Collidable, Sprite {
+public class Block implements Collidable, StaticSprite {
     private Rectangle rect;
     private java.awt.Color color;
+    private StaticLayer layer;
+    private int collidableHandle = -1;
+    private int spriteHandle = -1;
 
     /**
      * Constructs a Block object.
@@ -58,6 +61,23 @@ public class Block implements Collidable, Sprite {
         return this.color;
     }
 
+    /**
+     * Changes the color of the block.
+     *
+     * @param color the new color of the block
+     */
+    public void setColor(java.awt.Color color) {
+        this.color = color;
+        if (this.layer != null) {
+            this.layer.invalidate();
+        }
+    }
+
+    @Override
+    public void setLayer(StaticLayer layer) {
+        this.layer = layer;
+    }
+
     /**
      * Notifies the object that a collision occurred at the specified point with the given velocity.
      * The method returns the new velocity after the hit based on the collision's impact.
@@ -67,30 +87,68 @@ public class Block implements Collidable, Sprite {
      * @return the new velocity after the collision
      */
     public Velocity hit(Point collisionPoint, Velocity currentVelocity) {
-        double dx = currentVelocity.getDx();
-        double dy = currentVelocity.getDy();
-        double x = collisionPoint.getX();
-        double y = collisionPoint.getY();
+        Velocity velocity = new Velocity(currentVelocity.getDx(), currentVelocity.getDy());
+        hit(collisionPoint.getX(), collisionPoint.getY(), velocity);
+        return velocity;
+    }
+
+    /**
+     * Notifies the object that a collision occurred at the specified point, and reflects the velocity in place off
+     * the sides the point lies on.
+     *
+     * @param x        the x-coordinate of the point of collision
+     * @param y        the y-coordinate of the point of collision
+     * @param velocity the current velocity, changed to the velocity after the collision
+     */
+    @Override
+    public void hit(double x, double y, Velocity velocity) {
+        double dx = velocity.getDx();
+        double dy = velocity.getDy();
+        int sides = this.rect.sidesAt(x, y);
 
         // Check for collision with vertical sides
-        if (x == this.rect.getUpperLeft().getX() + this.rect.getWidth() || x == this.rect.getUpperLeft().getX()) {
+        if ((sides & Rectangle.VERTICAL_SIDES) != 0) {
             dx = -dx;
         }
 
         // Check for collision with horizontal sides
-        if (y == this.rect.getUpperLeft().getY() + this.rect.getHeight() || y == this.rect.getUpperLeft().getY()) {
+        if ((sides & Rectangle.HORIZONTAL_SIDES) != 0) {
             dy = -dy;
         }
-        return new Velocity(dx, dy);
+        velocity.set(dx, dy);
     }
 
     /**
-     * Adds the block to the game as both a collidable and a sprite.
+     * Adds the block to the game as both a collidable and a static sprite.
      *
      * @param g the game to add the block to
      */
     public void addToGame(Game g) {
-        g.addCollidable(this);
-        g.addSprite(this);
+        this.collidableHandle = g.addCollidable(this);
+        this.spriteHandle = g.addStaticSprite(this);
+    }
+
+    /**
+     * Checks whether the block is in a game: it was added to one and was not removed since.
+     *
+     * @return true if the block is in a game, false otherwise
+     */
+    public boolean isInGame() {
+        return this.collidableHandle >= 0;
+    }
+
+    /**
+     * Removes the block from the game it was added to. Safe to call during a tick, such as from a hit.
+     *
+     * @param g the game the block was added to
+     */
+    public void removeFromGame(Game g) {
+        if (this.collidableHandle < 0) {
+            return;
+        }
+        g.removeCollidable(this.collidableHandle);
+        g.removeStaticSprite(this.spriteHandle);
+        this.collidableHandle = -1;
+        this.spriteHandle = -1;
     }
 }
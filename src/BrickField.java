@@ -0,0 +1,639 @@
+import biuoop.DrawSurface;
+
+import java.awt.Color;
+
+/**
+ * The BrickField class represents a whole grid of equally sized bricks as a single collidable and static sprite.
+ * The bricks are not objects: the field keeps one bit per cell for whether it holds a live brick, one byte for the
+ * index of its color in a palette of up to 256 colors, and one byte for the number of hits it still takes, so a
+ * field of a million bricks takes about 2 MB.
+ * <p>
+ * A moving circle is traced through the cells its center crosses, in order, with the Amanatides-Woo grid
+ * traversal, testing only the live bricks within reach of the circle, and the search stops at the first cell
+ * that cannot hold an earlier hit than the one found. A query thus costs time proportional to the number of
+ * cells crossed rather than to the number of bricks. A hit is reported through a lightweight collidable for the
+ * brick that was hit, as {@link GameEnvironment} does for any field it holds.
+ * <p>
+ * Bricks only change when they are hit, which {@link BallSystem} does from a single thread, so queries may run
+ * concurrently between hits. Every brick put or broken changes the version of the field and is reported to the
+ * environment holding it as a change of the brick's cell, so predictions through other cells stay valid.
+ */
+public class BrickField implements Collidable, StaticSprite {
+    /**
+     * The hit count of a brick that never breaks, like a {@link Block}.
+     */
+    public static final int UNBREAKABLE = 0;
+
+    private final double originX;
+    private final double originY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int columns;
+    private final int rows;
+    private final Rectangle bounds;
+    private final Color[] palette;
+    private final long[] alive;
+    private final byte[] colors;
+    private final byte[] hits;
+    private int liveCount;
+    private long version;
+    private StaticLayer layer;
+    private GameEnvironment environment;
+
+    /**
+     * Constructs an empty BrickField.
+     *
+     * @param origin     the upper-left corner of the field
+     * @param cellWidth  the width of every brick
+     * @param cellHeight the height of every brick
+     * @param columns    the number of columns of bricks
+     * @param rows       the number of rows of bricks
+     * @param palette    the colors of the bricks, at most 256
+     */
+    public BrickField(Point origin, double cellWidth, double cellHeight, int columns, int rows, Color[] palette) {
+        if (palette.length == 0 || palette.length > 256) {
+            throw new IllegalArgumentException("a brick field needs between 1 and 256 colors");
+        }
+        long cells = (long) columns * rows;
+        if (columns <= 0 || rows <= 0 || cells > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("invalid brick field size " + columns + "x" + rows);
+        }
+        this.originX = origin.getX();
+        this.originY = origin.getY();
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+        this.columns = columns;
+        this.rows = rows;
+        this.bounds = new Rectangle(origin, cellWidth * columns, cellHeight * rows);
+        this.palette = palette.clone();
+        this.alive = new long[(int) ((cells + 63) >>> 6)];
+        this.colors = new byte[(int) cells];
+        this.hits = new byte[(int) cells];
+    }
+
+    /**
+     * Puts a brick in a cell, replacing the brick that was there.
+     *
+     * @param column     the column of the cell
+     * @param row        the row of the cell
+     * @param colorIndex the index of the brick's color in the palette
+     * @param hitCount   the number of hits the brick takes before it breaks, between 1 and 127, or
+     *                   {@link #UNBREAKABLE}
+     */
+    public void setBrick(int column, int row, int colorIndex, int hitCount) {
+        if (colorIndex < 0 || colorIndex >= this.palette.length) {
+            throw new IllegalArgumentException("no color " + colorIndex + " in the palette");
+        }
+        if (hitCount < UNBREAKABLE || hitCount > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("invalid hit count " + hitCount);
+        }
+        int cell = cellIndex(column, row);
+        if (!isAlive(cell)) {
+            this.alive[cell >>> 6] |= 1L << cell;
+            this.liveCount++;
+        }
+        this.colors[cell] = (byte) colorIndex;
+        this.hits[cell] = (byte) hitCount;
+        changed(cell);
+    }
+
+    /**
+     * Removes the brick in a cell, if any.
+     *
+     * @param column the column of the cell
+     * @param row    the row of the cell
+     */
+    public void removeBrick(int column, int row) {
+        int cell = cellIndex(column, row);
+        if (isAlive(cell)) {
+            kill(cell);
+        }
+    }
+
+    /**
+     * Checks whether a cell holds a live brick.
+     *
+     * @param column the column of the cell
+     * @param row    the row of the cell
+     * @return true if the cell holds a brick, false otherwise
+     */
+    public boolean hasBrick(int column, int row) {
+        return isAlive(cellIndex(column, row));
+    }
+
+    /**
+     * Returns the number of hits the brick in a cell still takes.
+     *
+     * @param column the column of the cell
+     * @param row    the row of the cell
+     * @return the number of hits left, {@link #UNBREAKABLE} if the brick never breaks, or -1 if the cell is empty
+     */
+    public int getHitsLeft(int column, int row) {
+        int cell = cellIndex(column, row);
+        return isAlive(cell) ? this.hits[cell] : -1;
+    }
+
+    /**
+     * Returns the number of columns of the field.
+     *
+     * @return the number of columns
+     */
+    public int getColumns() {
+        return this.columns;
+    }
+
+    /**
+     * Returns the number of rows of the field.
+     *
+     * @return the number of rows
+     */
+    public int getRows() {
+        return this.rows;
+    }
+
+    /**
+     * Returns the number of live bricks in the field.
+     *
+     * @return the number of bricks
+     */
+    public int getBrickCount() {
+        return this.liveCount;
+    }
+
+    /**
+     * Returns the memory taken by the state of the bricks, not counting the palette.
+     *
+     * @return the size of the brick arrays, in bytes
+     */
+    public long getStorageBytes() {
+        return (long) this.alive.length * Long.BYTES + this.colors.length + this.hits.length;
+    }
+
+    /**
+     * Returns the rectangle covering the whole field.
+     *
+     * @return the bounds of the field
+     */
+    @Override
+    public Rectangle getCollisionRectangle() {
+        return this.bounds;
+    }
+
+    /**
+     * Ignores a hit on the field as a whole. Hits are delivered to the brick that was hit, through the collidable
+     * returned by {@link #brick(int)}.
+     *
+     * @param collisionPoint  the point of collision
+     * @param currentVelocity the current velocity
+     * @return the current velocity
+     */
+    @Override
+    public Velocity hit(Point collisionPoint, Velocity currentVelocity) {
+        return currentVelocity;
+    }
+
+    /**
+     * Finds the brick a moving circle touches first. A circle whose center starts inside a brick does not hit it,
+     * so it can leave it.
+     *
+     * @param x0 the x-coordinate of the center of the circle at the start of the move
+     * @param y0 the y-coordinate of the center of the circle at the start of the move
+     * @param x1 the x-coordinate of the center of the circle at the end of the move
+     * @param y1 the y-coordinate of the center of the circle at the end of the move
+     * @param r  the radius of the circle, or 0 for a trajectory line
+     * @return the cell of the brick hit first, or -1 if the move hits no brick
+     */
+    public int firstHitCell(double x0, double y0, double x1, double y1, double r) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+
+        // Clip the move to the field grown by the radius
+        double tStart = 0;
+        double tEnd = 1;
+        if (dx == 0) {
+            if (x0 < this.bounds.getMinX() - r || x0 > this.bounds.getMaxX() + r) {
+                return -1;
+            }
+        } else {
+            double t1 = (this.bounds.getMinX() - r - x0) / dx;
+            double t2 = (this.bounds.getMaxX() + r - x0) / dx;
+            tStart = Math.max(tStart, Math.min(t1, t2));
+            tEnd = Math.min(tEnd, Math.max(t1, t2));
+        }
+        if (dy == 0) {
+            if (y0 < this.bounds.getMinY() - r || y0 > this.bounds.getMaxY() + r) {
+                return -1;
+            }
+        } else {
+            double t1 = (this.bounds.getMinY() - r - y0) / dy;
+            double t2 = (this.bounds.getMaxY() + r - y0) / dy;
+            tStart = Math.max(tStart, Math.min(t1, t2));
+            tEnd = Math.min(tEnd, Math.max(t1, t2));
+        }
+        if (tStart > tEnd) {
+            return -1;
+        }
+
+        // A brick the circle touches is at most this many cells away from the cell of its center
+        int reachX = (int) (r / this.cellWidth) + 1;
+        int reachY = (int) (r / this.cellHeight) + 1;
+        int column = (int) Math.floor((x0 + tStart * dx - this.originX) / this.cellWidth);
+        int row = (int) Math.floor((y0 + tStart * dy - this.originY) / this.cellHeight);
+        int stepX = dx > 0 ? 1 : -1;
+        int stepY = dy > 0 ? 1 : -1;
+        double deltaX = dx == 0 ? Double.POSITIVE_INFINITY : this.cellWidth / Math.abs(dx);
+        double deltaY = dy == 0 ? Double.POSITIVE_INFINITY : this.cellHeight / Math.abs(dy);
+        double nextX = dx == 0 ? Double.POSITIVE_INFINITY
+                : (this.originX + (column + (dx > 0 ? 1 : 0)) * this.cellWidth - x0) / dx;
+        double nextY = dy == 0 ? Double.POSITIVE_INFINITY
+                : (this.originY + (row + (dy > 0 ? 1 : 0)) * this.cellHeight - y0) / dy;
+
+        double bestT = Double.POSITIVE_INFINITY;
+        int bestCell = -1;
+        while (true) {
+            int firstRow = Math.max(row - reachY, 0);
+            int lastRow = Math.min(row + reachY, this.rows - 1);
+            int firstColumn = Math.max(column - reachX, 0);
+            int lastColumn = Math.min(column + reachX, this.columns - 1);
+            for (int testRow = firstRow; testRow <= lastRow; testRow++) {
+                int rowStart = testRow * this.columns;
+                for (int testColumn = firstColumn; testColumn <= lastColumn; testColumn++) {
+                    int cell = rowStart + testColumn;
+                    if (!isAlive(cell)) {
+                        continue;
+                    }
+                    double t = cellHitParameter(cell, x0, y0, x1, y1, r);
+                    if (t < bestT || (t == bestT && cell < bestCell)) {
+                        bestT = t;
+                        bestCell = cell;
+                    }
+                }
+            }
+            // Every later cell is entered after the best hit found so far, or after the move ends
+            double next = Math.min(nextX, nextY);
+            if (bestT <= next || next > tEnd) {
+                return bestCell;
+            }
+            if (nextX < nextY) {
+                column += stepX;
+                nextX += deltaX;
+            } else {
+                row += stepY;
+                nextY += deltaY;
+            }
+        }
+    }
+
+    /**
+     * Returns when a moving circle touches the brick in a cell, whether or not the brick is alive.
+     * Gives the same result as {@link Rectangle#sweptCircleHitParameter(double, double, double, double, double)}
+     * on the brick's rectangle, except that a circle whose center starts inside the brick does not hit it.
+     *
+     * @param cell the cell of the brick
+     * @param x0   the x-coordinate of the center of the circle at the start of the move
+     * @param y0   the y-coordinate of the center of the circle at the start of the move
+     * @param x1   the x-coordinate of the center of the circle at the end of the move
+     * @param y1   the y-coordinate of the center of the circle at the end of the move
+     * @param r    the radius of the circle
+     * @return the fraction of the move, between 0 and 1, at which the circle first touches the brick, or NaN if
+     *         it does not touch it during the move
+     */
+    public double cellHitParameter(int cell, double x0, double y0, double x1, double y1, double r) {
+        // Computed exactly as the brick's rectangle computes its sides, so both agree to the last bit
+        double left = this.originX + (cell % this.columns) * this.cellWidth;
+        double top = this.originY + (cell / this.columns) * this.cellHeight;
+        double right = left + this.cellWidth;
+        double bottom = top + this.cellHeight;
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+
+        if (x0 >= left && x0 <= right && y0 >= top && y0 <= bottom) {
+            return Double.NaN;
+        }
+
+        double enterX;
+        double exitX;
+        if (dx == 0) {
+            if (x0 < left - r || x0 > right + r) {
+                return Double.NaN;
+            }
+            enterX = Double.NEGATIVE_INFINITY;
+            exitX = Double.POSITIVE_INFINITY;
+        } else {
+            double t1 = (left - r - x0) / dx;
+            double t2 = (right + r - x0) / dx;
+            enterX = Math.min(t1, t2);
+            exitX = Math.max(t1, t2);
+        }
+        double enterY;
+        double exitY;
+        if (dy == 0) {
+            if (y0 < top - r || y0 > bottom + r) {
+                return Double.NaN;
+            }
+            enterY = Double.NEGATIVE_INFINITY;
+            exitY = Double.POSITIVE_INFINITY;
+        } else {
+            double t1 = (top - r - y0) / dy;
+            double t2 = (bottom + r - y0) / dy;
+            enterY = Math.min(t1, t2);
+            exitY = Math.max(t1, t2);
+        }
+
+        double enter = Math.max(enterX, enterY);
+        double exit = Math.min(exitX, exitY);
+        if (enter > exit || enter > 1 || exit < 0) {
+            return Double.NaN;
+        }
+        if (enter >= 0) {
+            return enter;
+        }
+        boolean separating = (x0 < left && dx < 0) || (x0 > right && dx > 0)
+                || (y0 < top && dy < 0) || (y0 > bottom && dy > 0);
+        boolean approaching = (x0 < left && dx > 0) || (x0 > right && dx < 0)
+                || (y0 < top && dy > 0) || (y0 > bottom && dy < 0);
+        return approaching && !separating ? 0 : Double.NaN;
+    }
+
+    /**
+     * Returns the point where a circle moving from one position to another first touches the brick in a cell, as
+     * {@link Rectangle#sweptCircleContactPoint(double, double, double, double, double)} finds it on the brick's
+     * rectangle. A circle whose center starts inside the brick does not hit it, as in
+     * {@link #cellHitParameter(int, double, double, double, double, double)}. Only the point is created.
+     *
+     * @param cell the cell of the brick
+     * @param x0   the x-coordinate of the center of the circle at the start of the move
+     * @param y0   the y-coordinate of the center of the circle at the start of the move
+     * @param x1   the x-coordinate of the center of the circle at the end of the move
+     * @param y1   the y-coordinate of the center of the circle at the end of the move
+     * @param r    the radius of the circle
+     * @return the point of contact, or null if the circle does not touch the brick during the move
+     */
+    public Point cellContactPoint(int cell, double x0, double y0, double x1, double y1, double r) {
+        double t = cellHitParameter(cell, x0, y0, x1, y1, r);
+        if (Double.isNaN(t)) {
+            return null;
+        }
+        double left = this.originX + (cell % this.columns) * this.cellWidth;
+        double top = this.originY + (cell / this.columns) * this.cellHeight;
+        return new Point(Math.min(Math.max(x0 + t * (x1 - x0), left), left + this.cellWidth),
+                Math.min(Math.max(y0 + t * (y1 - y0), top), top + this.cellHeight));
+    }
+
+    /**
+     * Returns the point where a segment first hits the boundary of the brick in a cell, as
+     * {@link Line#closestHitPoint(double, double, double, double, double[], int)} finds it on the brick's bounds.
+     * Only the point is created.
+     *
+     * @param cell the cell of the brick
+     * @param x0   the x-coordinate of the start of the segment
+     * @param y0   the y-coordinate of the start of the segment
+     * @param x1   the x-coordinate of the end of the segment
+     * @param y1   the y-coordinate of the end of the segment
+     * @return the hit point closest to the start of the segment, or null if there is no hit
+     */
+    public Point cellHitPoint(int cell, double x0, double y0, double x1, double y1) {
+        double left = this.originX + (cell % this.columns) * this.cellWidth;
+        double top = this.originY + (cell / this.columns) * this.cellHeight;
+        double right = left + this.cellWidth;
+        double bottom = top + this.cellHeight;
+        double topHit = Line.horizontalEdgeHit(x0, y0, x1, y1, top, left, right);
+        double rightHit = Line.verticalEdgeHit(x0, y0, x1, y1, right, top, bottom);
+        double bottomHit = Line.horizontalEdgeHit(x0, y0, x1, y1, bottom, left, right);
+        double leftHit = Line.verticalEdgeHit(x0, y0, x1, y1, left, top, bottom);
+        double t = Line.closer(Line.closer(Line.closer(topHit, rightHit), bottomHit), leftHit);
+        if (Double.isNaN(t)) {
+            return null;
+        }
+        // The coordinate across the edge that was hit is exactly the edge's, as for a rectangle
+        double x = t == leftHit ? left : t == rightHit ? right : x0 + t * (x1 - x0);
+        double y = t == topHit ? top : t == bottomHit ? bottom : y0 + t * (y1 - y0);
+        return new Point(x, y);
+    }
+
+    /**
+     * Returns the rectangle of the brick in a cell.
+     *
+     * @param cell the cell of the brick
+     * @return the rectangle of the brick
+     */
+    public Rectangle cellRectangle(int cell) {
+        return new Rectangle(new Point(this.originX + (cell % this.columns) * this.cellWidth,
+                this.originY + (cell / this.columns) * this.cellHeight), this.cellWidth, this.cellHeight);
+    }
+
+    /**
+     * Copies the bounds of the brick in a cell into an array of packed bounds, as
+     * {@link Rectangle#copyBounds(double[], int)} does for the rectangle of the brick.
+     *
+     * @param cell   the cell of the brick
+     * @param packed the array to copy into
+     * @param offset the index of the first of the four bounds in the array
+     */
+    public void copyCellBounds(int cell, double[] packed, int offset) {
+        double left = this.originX + (cell % this.columns) * this.cellWidth;
+        double top = this.originY + (cell / this.columns) * this.cellHeight;
+        packed[offset] = left;
+        packed[offset + 1] = top;
+        packed[offset + 2] = left + this.cellWidth;
+        packed[offset + 3] = top + this.cellHeight;
+    }
+
+    /**
+     * Delivers a hit to the brick in a cell without creating anything: bounces the velocity off the sides of the
+     * brick the point lies on, in place, and takes one hit off the brick unless it is unbreakable, breaking it on
+     * its last hit.
+     *
+     * @param cell     the cell of the brick
+     * @param x        the x-coordinate of the point of collision
+     * @param y        the y-coordinate of the point of collision
+     * @param velocity the current velocity, changed to the velocity after the collision
+     */
+    public void hitCell(int cell, double x, double y, Velocity velocity) {
+        double left = this.originX + (cell % this.columns) * this.cellWidth;
+        double top = this.originY + (cell / this.columns) * this.cellHeight;
+        double dx = velocity.getDx();
+        double dy = velocity.getDy();
+        if (x == left || x == left + this.cellWidth) {
+            dx = -dx;
+        }
+        if (y == top || y == top + this.cellHeight) {
+            dy = -dy;
+        }
+        velocity.set(dx, dy);
+        if (isAlive(cell) && this.hits[cell] != UNBREAKABLE && --this.hits[cell] == 0) {
+            kill(cell);
+        }
+    }
+
+    /**
+     * Returns a collidable for the brick in a cell, which takes the hits of that brick.
+     *
+     * @param cell the cell of the brick
+     * @return the collidable of the brick
+     */
+    public Collidable brick(int cell) {
+        return new Brick(cell);
+    }
+
+    /**
+     * Draws the live bricks of the field.
+     *
+     * @param surface the DrawSurface to draw on
+     */
+    @Override
+    public void drawOn(DrawSurface surface) {
+        int width = (int) this.cellWidth;
+        int height = (int) this.cellHeight;
+        for (int word = 0; word < this.alive.length; word++) {
+            long bits = this.alive[word];
+            while (bits != 0) {
+                int cell = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int x = (int) (this.originX + (cell % this.columns) * this.cellWidth);
+                int y = (int) (this.originY + (cell / this.columns) * this.cellHeight);
+                surface.setColor(this.palette[this.colors[cell] & 0xFF]);
+                surface.fillRectangle(x, y, width, height);
+                surface.setColor(Color.BLACK);
+                surface.drawRectangle(x, y, width, height);
+            }
+        }
+    }
+
+    /**
+     * Indicates that time has passed. Currently, this method does nothing.
+     */
+    @Override
+    public void timePassed() {
+        // do nothing
+    }
+
+    @Override
+    public void setLayer(StaticLayer layer) {
+        this.layer = layer;
+    }
+
+    /**
+     * Sets the environment holding the field, which is told about every brick put or broken.
+     * Called by {@link GameEnvironment} when the field is added to it or removed from it.
+     *
+     * @param environment the environment, or null if the field is not in one
+     */
+    public void setEnvironment(GameEnvironment environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * Returns the version of the field, which changes whenever a brick is put or broken.
+     *
+     * @return the version of the field
+     */
+    @Override
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Adds the field to the game as both a collidable and a static sprite.
+     *
+     * @param g the game to add the field to
+     */
+    public void addToGame(Game g) {
+        g.addCollidable(this);
+        g.addStaticSprite(this);
+    }
+
+    /**
+     * Returns the cell at a column and a row.
+     *
+     * @param column the column of the cell
+     * @param row    the row of the cell
+     * @return the index of the cell
+     */
+    private int cellIndex(int column, int row) {
+        if (column < 0 || column >= this.columns || row < 0 || row >= this.rows) {
+            throw new IndexOutOfBoundsException("no cell " + column + "," + row + " in the brick field");
+        }
+        return row * this.columns + column;
+    }
+
+    /**
+     * Checks whether a cell holds a live brick.
+     *
+     * @param cell the index of the cell
+     * @return true if the cell holds a brick, false otherwise
+     */
+    private boolean isAlive(int cell) {
+        return (this.alive[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Removes the live brick in a cell.
+     *
+     * @param cell the index of the cell
+     */
+    private void kill(int cell) {
+        this.alive[cell >>> 6] &= ~(1L << cell);
+        this.liveCount--;
+        changed(cell);
+    }
+
+    /**
+     * Records that the brick in a cell was put or broken: changes the version of the field, reports the cell to
+     * the environment holding the field, and tells the static layer holding it to draw it again.
+     *
+     * @param cell the index of the cell
+     */
+    private void changed(int cell) {
+        this.version++;
+        if (this.environment != null) {
+            double left = this.originX + (cell % this.columns) * this.cellWidth;
+            double top = this.originY + (cell / this.columns) * this.cellHeight;
+            this.environment.recordChange(left, top, left + this.cellWidth, top + this.cellHeight);
+        }
+        if (this.layer != null) {
+            this.layer.invalidate();
+        }
+    }
+
+    /**
+     * The collidable of one brick of the field, handed out for a hit on that brick.
+     */
+    private final class Brick implements Collidable {
+        private final int cell;
+
+        /**
+         * Constructs a Brick for a cell.
+         *
+         * @param cell the cell of the brick
+         */
+        private Brick(int cell) {
+            this.cell = cell;
+        }
+
+        @Override
+        public Rectangle getCollisionRectangle() {
+            return cellRectangle(this.cell);
+        }
+
+        /**
+         * Bounces the ball off the brick, and takes one hit off the brick unless it is unbreakable, breaking it
+         * on its last hit.
+         *
+         * @param collisionPoint  the point of collision
+         * @param currentVelocity the current velocity
+         * @return the new velocity after the collision
+         */
+        @Override
+        public Velocity hit(Point collisionPoint, Velocity currentVelocity) {
+            Velocity velocity = new Velocity(currentVelocity.getDx(), currentVelocity.getDy());
+            hitCell(this.cell, collisionPoint.getX(), collisionPoint.getY(), velocity);
+            return velocity;
+        }
+
+        @Override
+        public void hit(double x, double y, Velocity velocity) {
+            hitCell(this.cell, x, y, velocity);
+        }
+    }
+}
@@ -13,6 +13,29 @@ public interface Collidable {
      */
     Rectangle getCollisionRectangle();
 
+    /**
+     * Returns the version of the collision shape of the object.
+     * The version changes whenever the collision rectangle changes, so a cache of the rectangle can tell whether it
+     * is still up to date by comparing a single number. Objects whose shape never changes keep the default.
+     *
+     * @return the version of the collision shape
+     */
+    default long getVersion() {
+        return 0;
+    }
+
+    /**
+     * Copies the bounds of the collision shape into an array of packed bounds, as
+     * {@link Rectangle#copyBounds(double[], int)} does. Objects that move every tick can override it to give their
+     * bounds without building a rectangle.
+     *
+     * @param packed the array to copy into
+     * @param offset the index of the first of the four bounds in the array
+     */
+    default void copyBounds(double[] packed, int offset) {
+        getCollisionRectangle().copyBounds(packed, offset);
+    }
+
     /**
      * Notifies the object that a collision occurred at the specified point with the given velocity.
      * The method calculates and returns the new velocity after the collision, based on the force
@@ -23,5 +46,19 @@ public interface Collidable {
      * @return the new velocity after the collision
      */
     Velocity hit(Point collisionPoint, Velocity currentVelocity);
+
+    /**
+     * Notifies the object that a collision occurred at the specified point, and changes the velocity of the object
+     * that collided with it in place, to the one {@link #hit(Point, Velocity)} would return. The game moves balls
+     * through this method; objects that override it do not create anything on a hit.
+     *
+     * @param x        the x-coordinate of the point at which the collision occurred
+     * @param y        the y-coordinate of the point at which the collision occurred
+     * @param velocity the current velocity of the object that collided with this object, changed to its new velocity
+     */
+    default void hit(double x, double y, Velocity velocity) {
+        Velocity newVelocity = hit(new Point(x, y), velocity);
+        velocity.set(newVelocity.getDx(), newVelocity.getDy());
+    }
 }
 
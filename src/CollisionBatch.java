@@ -0,0 +1,223 @@
+import java.util.Arrays;
+
+/**
+ * The CollisionBatch class holds many swept-circle collision queries, such as the steps of all balls in a tick,
+ * as parallel primitive arrays, together with their answers: which collidable each move hits first and when.
+ * {@link GameEnvironment#findSweptCollisions(CollisionBatch, int, int)} answers a range of the queries at once,
+ * without creating any object; the point and the collidable of a hit are only looked up for the moves that hit
+ * something, with {@link GameEnvironment#collisionOf(CollisionBatch, int)}, or delivered to the collidable in place
+ * with {@link GameEnvironment#deliverHit(CollisionBatch, int, Velocity)}.
+ * <p>
+ * Queries at different indices are independent, so separate ranges of a batch may be answered on separate threads.
+ */
+public class CollisionBatch {
+    /**
+     * The hit of a move that hits nothing.
+     */
+    public static final int NO_HIT = -1;
+
+    private double[] startX;
+    private double[] startY;
+    private double[] endX;
+    private double[] endY;
+    private double[] radius;
+    private int[] hits;
+    private int[] parts;
+    private double[] times;
+    private double[] contactX;
+    private double[] contactY;
+
+    /**
+     * Constructs a CollisionBatch with room for the given number of queries.
+     *
+     * @param capacity the number of queries the batch can hold before growing
+     */
+    public CollisionBatch(int capacity) {
+        this.startX = new double[capacity];
+        this.startY = new double[capacity];
+        this.endX = new double[capacity];
+        this.endY = new double[capacity];
+        this.radius = new double[capacity];
+        this.hits = new int[capacity];
+        this.parts = new int[capacity];
+        this.times = new double[capacity];
+        this.contactX = new double[capacity];
+        this.contactY = new double[capacity];
+    }
+
+    /**
+     * Makes room for at least the given number of queries, keeping the ones already set.
+     *
+     * @param capacity the number of queries the batch must hold
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= this.startX.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, this.startX.length * 2);
+        this.startX = Arrays.copyOf(this.startX, newCapacity);
+        this.startY = Arrays.copyOf(this.startY, newCapacity);
+        this.endX = Arrays.copyOf(this.endX, newCapacity);
+        this.endY = Arrays.copyOf(this.endY, newCapacity);
+        this.radius = Arrays.copyOf(this.radius, newCapacity);
+        this.hits = Arrays.copyOf(this.hits, newCapacity);
+        this.parts = Arrays.copyOf(this.parts, newCapacity);
+        this.times = Arrays.copyOf(this.times, newCapacity);
+        this.contactX = Arrays.copyOf(this.contactX, newCapacity);
+        this.contactY = Arrays.copyOf(this.contactY, newCapacity);
+    }
+
+    /**
+     * Sets the move of a query.
+     *
+     * @param index the index of the query
+     * @param x0    the x-coordinate of the center of the circle at the start of the move
+     * @param y0    the y-coordinate of the center of the circle at the start of the move
+     * @param x1    the x-coordinate of the center of the circle at the end of the move
+     * @param y1    the y-coordinate of the center of the circle at the end of the move
+     * @param r     the radius of the circle
+     */
+    public void setMove(int index, double x0, double y0, double x1, double y1, double r) {
+        this.startX[index] = x0;
+        this.startY[index] = y0;
+        this.endX[index] = x1;
+        this.endY[index] = y1;
+        this.radius[index] = r;
+    }
+
+    /**
+     * Returns the x-coordinate of the start of a query's move.
+     *
+     * @param index the index of the query
+     * @return the x-coordinate of the start of the move
+     */
+    public double getStartX(int index) {
+        return this.startX[index];
+    }
+
+    /**
+     * Returns the y-coordinate of the start of a query's move.
+     *
+     * @param index the index of the query
+     * @return the y-coordinate of the start of the move
+     */
+    public double getStartY(int index) {
+        return this.startY[index];
+    }
+
+    /**
+     * Returns the x-coordinate of the end of a query's move.
+     *
+     * @param index the index of the query
+     * @return the x-coordinate of the end of the move
+     */
+    public double getEndX(int index) {
+        return this.endX[index];
+    }
+
+    /**
+     * Returns the y-coordinate of the end of a query's move.
+     *
+     * @param index the index of the query
+     * @return the y-coordinate of the end of the move
+     */
+    public double getEndY(int index) {
+        return this.endY[index];
+    }
+
+    /**
+     * Returns the radius of a query's circle.
+     *
+     * @param index the index of the query
+     * @return the radius of the circle
+     */
+    public double getRadius(int index) {
+        return this.radius[index];
+    }
+
+    /**
+     * Records the answer to a query.
+     *
+     * @param index the index of the query
+     * @param hit   the id of the collidable hit first, as known to the environment, or {@link #NO_HIT}
+     * @param time  the fraction of the move at which the collidable is hit
+     */
+    public void setHit(int index, int hit, double time) {
+        this.hits[index] = hit;
+        this.times[index] = time;
+    }
+
+    /**
+     * Returns the collidable a query's move hits first, as known to the environment that answered it.
+     *
+     * @param index the index of the query
+     * @return the id of the collidable, or {@link #NO_HIT} if the move hits nothing
+     */
+    public int getHit(int index) {
+        return this.hits[index];
+    }
+
+    /**
+     * Records which part of the collidable a query's move hits, for collidables made of parts.
+     *
+     * @param index the index of the query
+     * @param part  the part that was hit, such as the cell of the brick hit in a {@link BrickField}
+     */
+    public void setPart(int index, int part) {
+        this.parts[index] = part;
+    }
+
+    /**
+     * Returns which part of the collidable a query's move hits.
+     *
+     * @param index the index of the query
+     * @return the part that was hit, such as the cell of the brick hit in a {@link BrickField}; meaningless if the
+     *         collidable is not made of parts
+     */
+    public int getPart(int index) {
+        return this.parts[index];
+    }
+
+    /**
+     * Returns when a query's move first hits a collidable.
+     *
+     * @param index the index of the query
+     * @return the fraction of the move, between 0 and 1, at which the collidable is hit; meaningless if the move
+     *         hits nothing
+     */
+    public double getTime(int index) {
+        return this.times[index];
+    }
+
+    /**
+     * Records where a query's circle touches the collidable it hits.
+     *
+     * @param index the index of the query
+     * @param x     the x-coordinate of the point of contact
+     * @param y     the y-coordinate of the point of contact
+     */
+    public void setContact(int index, double x, double y) {
+        this.contactX[index] = x;
+        this.contactY[index] = y;
+    }
+
+    /**
+     * Returns the x-coordinate of where a query's circle touches the collidable it hits, once it was recorded.
+     *
+     * @param index the index of the query
+     * @return the x-coordinate of the point of contact
+     */
+    public double getContactX(int index) {
+        return this.contactX[index];
+    }
+
+    /**
+     * Returns the y-coordinate of where a query's circle touches the collidable it hits, once it was recorded.
+     *
+     * @param index the index of the query
+     * @return the y-coordinate of the point of contact
+     */
+    public double getContactY(int index) {
+        return this.contactY[index];
+    }
+}
@@ -0,0 +1,274 @@
+import java.util.Arrays;
+
+/**
+ * The CollisionGrid class is a uniform-grid spatial hash over axis-aligned bounding boxes.
+ * Every item is identified by an int id and is registered in each cell its bounding box touches,
+ * so that a query only has to look at the items in the cells a search box touches.
+ * Cells are kept in an open-addressing table keyed by their packed (column, row) pair,
+ * which keeps both insertion and lookup free of boxing.
+ */
+public class CollisionGrid {
+    private static final int INITIAL_TABLE_SIZE = 64;
+    private static final int INITIAL_CELL_SIZE = 4;
+    private static final long EMPTY_KEY = Long.MIN_VALUE;
+
+    private final double cellSize;
+    private long[] keys;
+    private int[][] cellItems;
+    private int[] cellCounts;
+    private int usedCells;
+
+    /**
+     * Constructs an empty CollisionGrid with square cells of the given size.
+     *
+     * @param cellSize the width and height of a single cell
+     */
+    public CollisionGrid(double cellSize) {
+        this.cellSize = cellSize;
+        this.keys = new long[INITIAL_TABLE_SIZE];
+        this.cellItems = new int[INITIAL_TABLE_SIZE][];
+        this.cellCounts = new int[INITIAL_TABLE_SIZE];
+        Arrays.fill(this.keys, EMPTY_KEY);
+    }
+
+    /**
+     * Returns the column or row of the cell containing the given coordinate.
+     *
+     * @param coordinate an x or y coordinate
+     * @return the index of the cell containing the coordinate
+     */
+    public int cellOf(double coordinate) {
+        return (int) Math.floor(coordinate / this.cellSize);
+    }
+
+    /**
+     * Returns the number of cells a bounding box touches.
+     *
+     * @param minX the left side of the box
+     * @param minY the top side of the box
+     * @param maxX the right side of the box
+     * @param maxY the bottom side of the box
+     * @return the number of cells touched by the box
+     */
+    public long cellsTouched(double minX, double minY, double maxX, double maxY) {
+        long columns = (long) cellOf(maxX) - cellOf(minX) + 1;
+        long rows = (long) cellOf(maxY) - cellOf(minY) + 1;
+        return columns * rows;
+    }
+
+    /**
+     * Registers an item in every cell its bounding box touches.
+     *
+     * @param id   the id of the item
+     * @param minX the left side of the item's bounding box
+     * @param minY the top side of the item's bounding box
+     * @param maxX the right side of the item's bounding box
+     * @param maxY the bottom side of the item's bounding box
+     */
+    public void insert(int id, double minX, double minY, double maxX, double maxY) {
+        int lastColumn = cellOf(maxX);
+        int lastRow = cellOf(maxY);
+        for (int column = cellOf(minX); column <= lastColumn; column++) {
+            for (int row = cellOf(minY); row <= lastRow; row++) {
+                int cell = findOrCreateCell(pack(column, row));
+                int[] items = this.cellItems[cell];
+                if (this.cellCounts[cell] == items.length) {
+                    items = Arrays.copyOf(items, items.length * 2);
+                    this.cellItems[cell] = items;
+                }
+                items[this.cellCounts[cell]++] = id;
+            }
+        }
+    }
+
+    /**
+     * Unregisters an item from every cell its bounding box touches.
+     * The order of the other items in those cells may change.
+     *
+     * @param id   the id of the item
+     * @param minX the left side of the item's bounding box, as it was inserted
+     * @param minY the top side of the item's bounding box, as it was inserted
+     * @param maxX the right side of the item's bounding box, as it was inserted
+     * @param maxY the bottom side of the item's bounding box, as it was inserted
+     */
+    public void remove(int id, double minX, double minY, double maxX, double maxY) {
+        int lastColumn = cellOf(maxX);
+        int lastRow = cellOf(maxY);
+        for (int column = cellOf(minX); column <= lastColumn; column++) {
+            for (int row = cellOf(minY); row <= lastRow; row++) {
+                int cell = findCell(pack(column, row));
+                int index = indexOf(cell, id);
+                if (index >= 0) {
+                    int[] items = this.cellItems[cell];
+                    items[index] = items[--this.cellCounts[cell]];
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives an item a new id in every cell its bounding box touches.
+     *
+     * @param oldId the current id of the item
+     * @param newId the new id of the item
+     * @param minX  the left side of the item's bounding box, as it was inserted
+     * @param minY  the top side of the item's bounding box, as it was inserted
+     * @param maxX  the right side of the item's bounding box, as it was inserted
+     * @param maxY  the bottom side of the item's bounding box, as it was inserted
+     */
+    public void replace(int oldId, int newId, double minX, double minY, double maxX, double maxY) {
+        int lastColumn = cellOf(maxX);
+        int lastRow = cellOf(maxY);
+        for (int column = cellOf(minX); column <= lastColumn; column++) {
+            for (int row = cellOf(minY); row <= lastRow; row++) {
+                int cell = findCell(pack(column, row));
+                int index = indexOf(cell, oldId);
+                if (index >= 0) {
+                    this.cellItems[cell][index] = newId;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the cell at the given column and row.
+     *
+     * @param column the column of the cell
+     * @param row    the row of the cell
+     * @return the cell, or -1 if no item touches it
+     */
+    public int cell(int column, int row) {
+        return findCell(pack(column, row));
+    }
+
+    /**
+     * Returns the items registered in a cell.
+     * Only the first {@link #count(int)} entries of the returned array are valid.
+     *
+     * @param cell a cell returned by {@link #cell(int, int)}
+     * @return the items of the cell
+     */
+    public int[] items(int cell) {
+        return this.cellItems[cell];
+    }
+
+    /**
+     * Returns the number of items registered in a cell.
+     *
+     * @param cell a cell returned by {@link #cell(int, int)}
+     * @return the number of items in the cell
+     */
+    public int count(int cell) {
+        return this.cellCounts[cell];
+    }
+
+    /**
+     * Finds where an item is stored in a cell.
+     *
+     * @param cell the cell, or -1 for a cell that does not exist
+     * @param id   the id of the item
+     * @return the index of the item in the cell's items, or -1 if it is not there
+     */
+    private int indexOf(int cell, int id) {
+        if (cell < 0) {
+            return -1;
+        }
+        int[] items = this.cellItems[cell];
+        for (int i = 0; i < this.cellCounts[cell]; i++) {
+            if (items[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Packs a column and a row into a single table key.
+     *
+     * @param column the column of the cell
+     * @param row    the row of the cell
+     * @return the packed key
+     */
+    private static long pack(int column, int row) {
+        return ((long) column << 32) | (row & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the first table slot to probe for a key.
+     *
+     * @param key  the packed key
+     * @param mask the table size minus one
+     * @return the first slot to probe
+     */
+    private static int slotOf(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Finds the table slot holding a key.
+     *
+     * @param key the packed key
+     * @return the slot of the key, or -1 if the key is not in the table
+     */
+    private int findCell(long key) {
+        int mask = this.keys.length - 1;
+        int slot = slotOf(key, mask);
+        while (this.keys[slot] != EMPTY_KEY) {
+            if (this.keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the table slot holding a key, creating an empty cell for it if needed.
+     *
+     * @param key the packed key
+     * @return the slot of the key
+     */
+    private int findOrCreateCell(long key) {
+        if ((this.usedCells + 1) * 2 > this.keys.length) {
+            grow();
+        }
+        int mask = this.keys.length - 1;
+        int slot = slotOf(key, mask);
+        while (this.keys[slot] != EMPTY_KEY) {
+            if (this.keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        this.keys[slot] = key;
+        this.cellItems[slot] = new int[INITIAL_CELL_SIZE];
+        this.usedCells++;
+        return slot;
+    }
+
+    /**
+     * Doubles the size of the table and re-inserts every cell.
+     */
+    private void grow() {
+        long[] oldKeys = this.keys;
+        int[][] oldItems = this.cellItems;
+        int[] oldCounts = this.cellCounts;
+        this.keys = new long[oldKeys.length * 2];
+        this.cellItems = new int[oldKeys.length * 2][];
+        this.cellCounts = new int[oldKeys.length * 2];
+        Arrays.fill(this.keys, EMPTY_KEY);
+        int mask = this.keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY) {
+                int slot = slotOf(oldKeys[i], mask);
+                while (this.keys[slot] != EMPTY_KEY) {
+                    slot = (slot + 1) & mask;
+                }
+                this.keys[slot] = oldKeys[i];
+                this.cellItems[slot] = oldItems[i];
+                this.cellCounts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
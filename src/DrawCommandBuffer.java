@@ -0,0 +1,472 @@
+import biuoop.DrawSurface;
+
+import java.awt.Color;
+import java.awt.Image;
+import java.awt.Polygon;
+import java.util.Arrays;
+
+/**
+ * The DrawCommandBuffer class is a DrawSurface that records the draw calls made on it, so they can be
+ * replayed later on another surface, possibly on another thread.
+ * Commands are kept in reusable primitive arrays: clearing the buffer keeps its capacity, so recording the
+ * same scene frame after frame does not allocate.
+ * <p>
+ * A recording can also be replayed in batches with {@link #replayBatched(DrawSurface)}, which sets each color
+ * once per batch instead of once per shape. Between two barriers, the commands may then be reordered: all fills
+ * come before all outlines, which come before all text, and within each of these the shapes of one color are
+ * drawn together, in the order their colors were first used. Whatever must be drawn over something else, such as
+ * one sprite over the sprites before it, must therefore be separated from it by a {@link #barrier()}.
+ */
+public class DrawCommandBuffer implements DrawSurface {
+    private static final int SET_COLOR = 0;
+    private static final int DRAW_LINE = 1;
+    private static final int DRAW_OVAL = 2;
+    private static final int FILL_OVAL = 3;
+    private static final int DRAW_RECTANGLE = 4;
+    private static final int FILL_RECTANGLE = 5;
+    private static final int DRAW_IMAGE = 6;
+    private static final int DRAW_CIRCLE = 7;
+    private static final int FILL_CIRCLE = 8;
+    private static final int DRAW_TEXT = 9;
+    private static final int DRAW_POLYGON = 10;
+    private static final int FILL_POLYGON = 11;
+    private static final int BARRIER = 12;
+    private static final int ARGUMENTS = 4;
+    private static final int INITIAL_CAPACITY = 64;
+
+    // The batches of a replay: fills, then outlines, then text and images
+    private static final int FILL_PASS = 0;
+    private static final int OUTLINE_PASS = 1;
+    private static final int OTHER_PASS = 2;
+    private static final int PASSES = 3;
+
+    private final int width;
+    private final int height;
+    private int[] opcodes;
+    private int[] arguments;
+    private Object[] references;
+    private int size;
+    private long sequence;
+    private int colorChanges;
+
+    // Reusable state of a batched replay: the batch of every command, the commands sorted by batch, the batches,
+    // and a hash table from color and pass to batch, whose entries are valid only if stamped with the generation
+    private int[] batchOf = new int[INITIAL_CAPACITY];
+    private int[] sorted = new int[INITIAL_CAPACITY];
+    private Color[] batchColor = new Color[INITIAL_CAPACITY];
+    private int[] batchPass = new int[INITIAL_CAPACITY];
+    private int[] batchStart = new int[INITIAL_CAPACITY];
+    private int[] batchSize = new int[INITIAL_CAPACITY];
+    private long[] tableKeys = new long[2 * INITIAL_CAPACITY];
+    private int[] tableBatches = new int[2 * INITIAL_CAPACITY];
+    private int[] tableStamps = new int[2 * INITIAL_CAPACITY];
+    private int generation;
+    private Color replayColor;
+
+    /**
+     * Constructs an empty DrawCommandBuffer of the given size.
+     *
+     * @param width  the width of the surface
+     * @param height the height of the surface
+     */
+    public DrawCommandBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.opcodes = new int[INITIAL_CAPACITY];
+        this.arguments = new int[INITIAL_CAPACITY * ARGUMENTS];
+        this.references = new Object[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Removes all recorded commands, keeping the buffer's capacity.
+     */
+    public void clear() {
+        Arrays.fill(this.references, 0, this.size, null);
+        this.size = 0;
+    }
+
+    /**
+     * Returns the number of recorded commands.
+     *
+     * @return the number of commands
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the sequence number of the recording, such as the tick it was recorded at.
+     *
+     * @return the sequence number
+     */
+    public long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * Sets the sequence number of the recording.
+     *
+     * @param sequence the sequence number
+     */
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Returns the number of times the last replay set the color of the surface it drew on.
+     *
+     * @return the number of color changes
+     */
+    public int getColorChanges() {
+        return this.colorChanges;
+    }
+
+    /**
+     * Marks that the commands recorded from now on must be drawn over the ones recorded so far. Only a batched
+     * replay is affected: commands are never moved across a barrier.
+     */
+    public void barrier() {
+        record(BARRIER, 0, 0, 0, 0, null);
+    }
+
+    /**
+     * Replays all recorded commands, in order, on another surface.
+     *
+     * @param d the surface to draw on
+     */
+    public void replay(DrawSurface d) {
+        this.colorChanges = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (this.opcodes[i] == SET_COLOR) {
+                d.setColor((Color) this.references[i]);
+                this.colorChanges++;
+            } else {
+                replayShape(d, i);
+            }
+        }
+    }
+
+    /**
+     * Replays all recorded commands on another surface in batches, setting each color once per batch.
+     * Between two barriers, fills are drawn first, then outlines, then text and images, and within each of these
+     * the shapes of one color are drawn together, in the order their colors were first used, and otherwise in
+     * the order they were recorded. A replay reuses the buffer's arrays, so it does not allocate once the
+     * buffer has replayed a recording as large.
+     *
+     * @param d the surface to draw on
+     */
+    public void replayBatched(DrawSurface d) {
+        this.colorChanges = 0;
+        this.replayColor = null;
+        Color color = null;
+        int start = 0;
+        while (start < this.size) {
+            int end = start;
+            while (end < this.size && this.opcodes[end] != BARRIER) {
+                end++;
+            }
+            color = replaySegment(d, start, end, color);
+            start = end + 1;
+        }
+        this.replayColor = null;
+    }
+
+    /**
+     * Replays in batches the commands between two barriers.
+     *
+     * @param d     the surface to draw on
+     * @param start the index of the first command
+     * @param end   the index after the last command
+     * @param color the color recorded last before the first command, or null if none was
+     * @return the color recorded last before the end
+     */
+    private Color replaySegment(DrawSurface d, int start, int end, Color color) {
+        int count = end - start;
+        ensureReplayCapacity(count);
+        this.generation++;
+        if (this.generation == 0) {
+            // The stamps wrapped around, so stale entries could look current
+            Arrays.fill(this.tableStamps, -1);
+        }
+        int batches = 0;
+        for (int i = start; i < end; i++) {
+            int opcode = this.opcodes[i];
+            if (opcode == SET_COLOR) {
+                color = (Color) this.references[i];
+                this.batchOf[i - start] = -1;
+                continue;
+            }
+            int pass = passOf(opcode);
+            int batch = findBatch(color, pass, batches);
+            if (batch == batches) {
+                this.batchColor[batch] = color;
+                this.batchPass[batch] = pass;
+                this.batchSize[batch] = 0;
+                batches++;
+            }
+            this.batchSize[batch]++;
+            this.batchOf[i - start] = batch;
+        }
+
+        // Lay the batches out pass by pass, and within a pass in the order of their first commands
+        int offset = 0;
+        for (int pass = 0; pass < PASSES; pass++) {
+            for (int batch = 0; batch < batches; batch++) {
+                if (this.batchPass[batch] == pass) {
+                    this.batchStart[batch] = offset;
+                    offset += this.batchSize[batch];
+                }
+            }
+        }
+        for (int i = start; i < end; i++) {
+            int batch = this.batchOf[i - start];
+            if (batch >= 0) {
+                this.sorted[this.batchStart[batch]++] = i;
+            }
+        }
+
+        offset = 0;
+        for (int pass = 0; pass < PASSES; pass++) {
+            for (int batch = 0; batch < batches; batch++) {
+                if (this.batchPass[batch] != pass) {
+                    continue;
+                }
+                Color batchColor = this.batchColor[batch];
+                if (batchColor != null && !batchColor.equals(this.replayColor)) {
+                    d.setColor(batchColor);
+                    this.replayColor = batchColor;
+                    this.colorChanges++;
+                }
+                int batchEnd = offset + this.batchSize[batch];
+                for (int k = offset; k < batchEnd; k++) {
+                    replayShape(d, this.sorted[k]);
+                }
+                offset = batchEnd;
+                this.batchColor[batch] = null;
+            }
+        }
+        return color;
+    }
+
+    /**
+     * Returns the pass of a batched replay that draws a command.
+     *
+     * @param opcode the kind of command
+     * @return the pass
+     */
+    private static int passOf(int opcode) {
+        switch (opcode) {
+            case FILL_OVAL:
+            case FILL_RECTANGLE:
+            case FILL_CIRCLE:
+            case FILL_POLYGON:
+                return FILL_PASS;
+            case DRAW_LINE:
+            case DRAW_OVAL:
+            case DRAW_RECTANGLE:
+            case DRAW_CIRCLE:
+            case DRAW_POLYGON:
+                return OUTLINE_PASS;
+            default:
+                return OTHER_PASS;
+        }
+    }
+
+    /**
+     * Finds the batch of the commands of a color in a pass, in the hash table of the current segment, and adds
+     * the given new batch to the table if there is none yet.
+     *
+     * @param color    the color, or null if no color was recorded yet
+     * @param pass     the pass
+     * @param newBatch the index of the next new batch
+     * @return the index of the batch, which is newBatch if the color had no batch in the pass yet
+     */
+    private int findBatch(Color color, int pass, int newBatch) {
+        long key = color == null ? -1 - pass : ((color.getRGB() & 0xFFFFFFFFL) << 2) | pass;
+        int mask = this.tableKeys.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        while (this.tableStamps[slot] == this.generation) {
+            if (this.tableKeys[slot] == key) {
+                return this.tableBatches[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        this.tableStamps[slot] = this.generation;
+        this.tableKeys[slot] = key;
+        this.tableBatches[slot] = newBatch;
+        return newBatch;
+    }
+
+    /**
+     * Grows the arrays of a batched replay to hold a segment of the given number of commands.
+     *
+     * @param count the number of commands in the segment
+     */
+    private void ensureReplayCapacity(int count) {
+        if (count > this.batchOf.length) {
+            int capacity = Math.max(count, 2 * this.batchOf.length);
+            this.batchOf = new int[capacity];
+            this.sorted = new int[capacity];
+            this.batchColor = new Color[capacity];
+            this.batchPass = new int[capacity];
+            this.batchStart = new int[capacity];
+            this.batchSize = new int[capacity];
+        }
+        if (2 * count > this.tableKeys.length) {
+            int capacity = Integer.highestOneBit(2 * count - 1) << 1;
+            this.tableKeys = new long[capacity];
+            this.tableBatches = new int[capacity];
+            this.tableStamps = new int[capacity];
+            this.generation = 0;
+        }
+    }
+
+    /**
+     * Replays a recorded command that draws, on another surface.
+     *
+     * @param d the surface to draw on
+     * @param i the index of the command
+     */
+    private void replayShape(DrawSurface d, int i) {
+        int a = i * ARGUMENTS;
+        int x = this.arguments[a];
+        int y = this.arguments[a + 1];
+        int w = this.arguments[a + 2];
+        int h = this.arguments[a + 3];
+        switch (this.opcodes[i]) {
+            case DRAW_LINE:
+                d.drawLine(x, y, w, h);
+                break;
+            case DRAW_OVAL:
+                d.drawOval(x, y, w, h);
+                break;
+            case FILL_OVAL:
+                d.fillOval(x, y, w, h);
+                break;
+            case DRAW_RECTANGLE:
+                d.drawRectangle(x, y, w, h);
+                break;
+            case FILL_RECTANGLE:
+                d.fillRectangle(x, y, w, h);
+                break;
+            case DRAW_IMAGE:
+                d.drawImage(x, y, (Image) this.references[i]);
+                break;
+            case DRAW_CIRCLE:
+                d.drawCircle(x, y, w);
+                break;
+            case FILL_CIRCLE:
+                d.fillCircle(x, y, w);
+                break;
+            case DRAW_TEXT:
+                d.drawText(x, y, (String) this.references[i], w);
+                break;
+            case DRAW_POLYGON:
+                d.drawPolygon((Polygon) this.references[i]);
+                break;
+            case FILL_POLYGON:
+                d.fillPolygon((Polygon) this.references[i]);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Records a command.
+     *
+     * @param opcode    the kind of command
+     * @param x         the first argument
+     * @param y         the second argument
+     * @param w         the third argument
+     * @param h         the fourth argument
+     * @param reference the object argument, or null
+     */
+    private void record(int opcode, int x, int y, int w, int h, Object reference) {
+        if (this.size == this.opcodes.length) {
+            int capacity = this.opcodes.length * 2;
+            this.opcodes = Arrays.copyOf(this.opcodes, capacity);
+            this.arguments = Arrays.copyOf(this.arguments, capacity * ARGUMENTS);
+            this.references = Arrays.copyOf(this.references, capacity);
+        }
+        int a = this.size * ARGUMENTS;
+        this.opcodes[this.size] = opcode;
+        this.arguments[a] = x;
+        this.arguments[a + 1] = y;
+        this.arguments[a + 2] = w;
+        this.arguments[a + 3] = h;
+        this.references[this.size] = reference;
+        this.size++;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    @Override
+    public void setColor(Color color) {
+        record(SET_COLOR, 0, 0, 0, 0, color);
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        record(DRAW_LINE, x1, y1, x2, y2, null);
+    }
+
+    @Override
+    public void drawOval(int x, int y, int w, int h) {
+        record(DRAW_OVAL, x, y, w, h, null);
+    }
+
+    @Override
+    public void fillOval(int x, int y, int w, int h) {
+        record(FILL_OVAL, x, y, w, h, null);
+    }
+
+    @Override
+    public void drawRectangle(int x, int y, int w, int h) {
+        record(DRAW_RECTANGLE, x, y, w, h, null);
+    }
+
+    @Override
+    public void fillRectangle(int x, int y, int w, int h) {
+        record(FILL_RECTANGLE, x, y, w, h, null);
+    }
+
+    @Override
+    public void drawImage(int x, int y, Image image) {
+        record(DRAW_IMAGE, x, y, 0, 0, image);
+    }
+
+    @Override
+    public void drawCircle(int x, int y, int r) {
+        record(DRAW_CIRCLE, x, y, r, 0, null);
+    }
+
+    @Override
+    public void fillCircle(int x, int y, int r) {
+        record(FILL_CIRCLE, x, y, r, 0, null);
+    }
+
+    @Override
+    public void drawText(int x, int y, String s, int fontSize) {
+        record(DRAW_TEXT, x, y, fontSize, 0, s);
+    }
+
+    @Override
+    public void drawPolygon(Polygon polygon) {
+        // Polygons are mutable, so keep a copy of the one drawn now
+        record(DRAW_POLYGON, 0, 0, 0, 0, new Polygon(polygon.xpoints, polygon.ypoints, polygon.npoints));
+    }
+
+    @Override
+    public void fillPolygon(Polygon polygon) {
+        record(FILL_POLYGON, 0, 0, 0, 0, new Polygon(polygon.xpoints, polygon.ypoints, polygon.npoints));
+    }
+}
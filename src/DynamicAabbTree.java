@@ -0,0 +1,571 @@
+import java.util.Arrays;
+
+/**
+ * The DynamicAabbTree class is a bounding volume hierarchy over axis-aligned bounding boxes that can change.
+ * Every item is stored in a leaf, under a "fat" box grown by a margin on every side, and every inner node bounds
+ * its two children. An item that moves only has to be reinserted once it leaves its fat box, so an item moving a
+ * little each tick costs nothing most ticks. Leaves are inserted next to the sibling that grows the total perimeter
+ * of the tree the least, and the tree is rebalanced with rotations on the way up, which keeps its height
+ * logarithmic in its size.
+ * Nodes live in two primitive arrays, one for boxes and one for links, with the fields of a node next to each
+ * other so that visiting a node touches few cache lines. Nodes are recycled through a free list, so the tree does
+ * not allocate once it has grown to its working size.
+ * <p>
+ * The tree can be walked without a stack, using {@link #root()}, {@link #parent(int)}, {@link #child1(int)} and
+ * {@link #child2(int)}, so several threads may walk it at once as long as it does not change.
+ */
+public class DynamicAabbTree {
+    /**
+     * The node id standing for no node.
+     */
+    public static final int NULL_NODE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int BOX = 4;
+    private static final int MIN_X = 0;
+    private static final int MIN_Y = 1;
+    private static final int MAX_X = 2;
+    private static final int MAX_Y = 3;
+    private static final int LINKS = 4;
+    private static final int PARENT = 0;
+    private static final int CHILD1 = 1;
+    private static final int CHILD2 = 2;
+    private static final int ITEM = 3;
+
+    private final double margin;
+    private double[] boxes;
+    private int[] links;
+    private int[] height;
+    private int[] searchNodes;
+    private double[] searchCosts;
+    private int root;
+    private int freeList;
+    private int nodeCount;
+
+    /**
+     * Constructs an empty DynamicAabbTree.
+     *
+     * @param margin how much the box of a leaf is grown on every side, so small moves do not touch the tree
+     */
+    public DynamicAabbTree(double margin) {
+        this.margin = margin;
+        this.root = NULL_NODE;
+        this.freeList = NULL_NODE;
+        this.boxes = new double[INITIAL_CAPACITY * BOX];
+        this.links = new int[INITIAL_CAPACITY * LINKS];
+        this.height = new int[INITIAL_CAPACITY];
+        this.searchNodes = new int[INITIAL_CAPACITY];
+        this.searchCosts = new double[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Inserts an item into the tree.
+     *
+     * @param id     the id of the item
+     * @param left   the left side of the item's bounding box
+     * @param top    the top side of the item's bounding box
+     * @param right  the right side of the item's bounding box
+     * @param bottom the bottom side of the item's bounding box
+     * @return the leaf holding the item, used to move or remove it
+     */
+    public int insert(int id, double left, double top, double right, double bottom) {
+        int leaf = allocateNode();
+        setBox(leaf, left - this.margin, top - this.margin, right + this.margin, bottom + this.margin);
+        setItem(leaf, id);
+        this.height[leaf] = 0;
+        insertLeaf(leaf);
+        return leaf;
+    }
+
+    /**
+     * Removes an item from the tree.
+     *
+     * @param leaf the leaf returned when the item was inserted
+     */
+    public void remove(int leaf) {
+        removeLeaf(leaf);
+        freeNode(leaf);
+    }
+
+    /**
+     * Updates the bounding box of an item. The tree only changes if the new box leaves the item's fat box.
+     *
+     * @param leaf   the leaf returned when the item was inserted
+     * @param left   the new left side of the item's bounding box
+     * @param top    the new top side of the item's bounding box
+     * @param right  the new right side of the item's bounding box
+     * @param bottom the new bottom side of the item's bounding box
+     * @return true if the item had to be reinserted, false if its fat box still contained it
+     */
+    public boolean move(int leaf, double left, double top, double right, double bottom) {
+        if (minX(leaf) <= left && minY(leaf) <= top && right <= maxX(leaf) && bottom <= maxY(leaf)) {
+            return false;
+        }
+        removeLeaf(leaf);
+        setBox(leaf, left - this.margin, top - this.margin, right + this.margin, bottom + this.margin);
+        insertLeaf(leaf);
+        return true;
+    }
+
+    /**
+     * Changes the id of the item held by a leaf.
+     *
+     * @param leaf the leaf of the item
+     * @param id   the new id of the item
+     */
+    public void setItem(int leaf, int id) {
+        this.links[leaf * LINKS + ITEM] = id;
+    }
+
+    /**
+     * Returns the root of the tree.
+     *
+     * @return the root node, or {@link #NULL_NODE} if the tree is empty
+     */
+    public int root() {
+        return this.root;
+    }
+
+    /**
+     * Returns the parent of a node.
+     *
+     * @param node a node of the tree
+     * @return the parent node, or {@link #NULL_NODE} for the root
+     */
+    public int parent(int node) {
+        return this.links[node * LINKS + PARENT];
+    }
+
+    /**
+     * Returns the first child of a node.
+     *
+     * @param node a node of the tree
+     * @return the first child, or {@link #NULL_NODE} for a leaf
+     */
+    public int child1(int node) {
+        return this.links[node * LINKS + CHILD1];
+    }
+
+    /**
+     * Returns the second child of a node.
+     *
+     * @param node a node of the tree
+     * @return the second child, or {@link #NULL_NODE} for a leaf
+     */
+    public int child2(int node) {
+        return this.links[node * LINKS + CHILD2];
+    }
+
+    /**
+     * Tells whether a node is a leaf, holding an item.
+     *
+     * @param node a node of the tree
+     * @return true for a leaf
+     */
+    public boolean isLeaf(int node) {
+        return child1(node) == NULL_NODE;
+    }
+
+    /**
+     * Returns the id of the item held by a leaf.
+     *
+     * @param leaf a leaf of the tree
+     * @return the id of its item
+     */
+    public int item(int leaf) {
+        return this.links[leaf * LINKS + ITEM];
+    }
+
+    /**
+     * Returns the height of the tree: the number of inner nodes on the longest path from the root to a leaf.
+     *
+     * @return the height of the tree, or -1 if it is empty
+     */
+    public int height() {
+        return this.root == NULL_NODE ? -1 : this.height[this.root];
+    }
+
+    /**
+     * Returns when a move first reaches the box of a node, grown by a radius.
+     *
+     * @param node   a node of the tree
+     * @param x0     the x-coordinate of the start of the move
+     * @param y0     the y-coordinate of the start of the move
+     * @param x1     the x-coordinate of the end of the move
+     * @param y1     the y-coordinate of the end of the move
+     * @param radius how much to grow the box by, such as the radius of a moving circle
+     * @return the fraction of the move at which it enters the box, 0 if it starts inside, or NaN if it misses it
+     */
+    public double entry(int node, double x0, double y0, double x1, double y1, double radius) {
+        double enter = 0;
+        double exit = 1;
+        double dx = x1 - x0;
+        double left = minX(node) - radius;
+        double right = maxX(node) + radius;
+        if (dx == 0) {
+            if (x0 < left || x0 > right) {
+                return Double.NaN;
+            }
+        } else {
+            double t1 = (left - x0) / dx;
+            double t2 = (right - x0) / dx;
+            enter = Math.max(enter, Math.min(t1, t2));
+            exit = Math.min(exit, Math.max(t1, t2));
+        }
+        double dy = y1 - y0;
+        double top = minY(node) - radius;
+        double bottom = maxY(node) + radius;
+        if (dy == 0) {
+            if (y0 < top || y0 > bottom) {
+                return Double.NaN;
+            }
+        } else {
+            double t1 = (top - y0) / dy;
+            double t2 = (bottom - y0) / dy;
+            enter = Math.max(enter, Math.min(t1, t2));
+            exit = Math.min(exit, Math.max(t1, t2));
+        }
+        return enter <= exit ? enter : Double.NaN;
+    }
+
+    /**
+     * Inserts a leaf next to the sibling that makes the tree grow the least, then refits and rebalances the
+     * nodes above it.
+     *
+     * @param leaf the leaf to insert, with its box already set
+     */
+    private void insertLeaf(int leaf) {
+        if (this.root == NULL_NODE) {
+            this.root = leaf;
+            setParent(leaf, NULL_NODE);
+            return;
+        }
+
+        int sibling = findBestSibling(leaf);
+        int oldParent = parent(sibling);
+        int newParent = allocateNode();
+        setParent(newParent, oldParent);
+        setItem(newParent, -1);
+        this.height[newParent] = this.height[sibling] + 1;
+        setChild1(newParent, sibling);
+        setChild2(newParent, leaf);
+        setParent(sibling, newParent);
+        setParent(leaf, newParent);
+        if (oldParent == NULL_NODE) {
+            this.root = newParent;
+        } else if (child1(oldParent) == sibling) {
+            setChild1(oldParent, newParent);
+        } else {
+            setChild2(oldParent, newParent);
+        }
+        refitUpwards(newParent);
+    }
+
+    /**
+     * Finds the node to pair a new leaf with so that the total perimeter of all nodes grows the least.
+     * The search is a branch and bound over the tree: pairing with a node grows that node's new parent and every
+     * ancestor, and a subtree is skipped once even the cheapest pairing inside it cannot beat the best one found.
+     *
+     * @param leaf the leaf being inserted, with its box already set
+     * @return the best sibling for the leaf
+     */
+    private int findBestSibling(int leaf) {
+        double leafPerimeter = perimeter(leaf);
+        int best = this.root;
+        double bestCost = combinedPerimeter(this.root, leaf);
+        int size = 0;
+        this.searchNodes[size] = this.root;
+        this.searchCosts[size++] = 0;
+        while (size > 0) {
+            size--;
+            int node = this.searchNodes[size];
+            double inherited = this.searchCosts[size];
+            double direct = combinedPerimeter(node, leaf);
+            if (direct + inherited < bestCost) {
+                best = node;
+                bestCost = direct + inherited;
+            }
+            if (isLeaf(node)) {
+                continue;
+            }
+            // Pairing below this node grows it too, by at least this much
+            double childInherited = inherited + direct - perimeter(node);
+            if (leafPerimeter + childInherited < bestCost) {
+                if (size + 2 > this.searchNodes.length) {
+                    this.searchNodes = Arrays.copyOf(this.searchNodes, this.searchNodes.length * 2);
+                    this.searchCosts = Arrays.copyOf(this.searchCosts, this.searchCosts.length * 2);
+                }
+                this.searchNodes[size] = child1(node);
+                this.searchCosts[size++] = childInherited;
+                this.searchNodes[size] = child2(node);
+                this.searchCosts[size++] = childInherited;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Takes a leaf out of the tree, replacing its parent by its sibling. The leaf node itself is kept.
+     *
+     * @param leaf the leaf to take out
+     */
+    private void removeLeaf(int leaf) {
+        if (leaf == this.root) {
+            this.root = NULL_NODE;
+            return;
+        }
+        int oldParent = parent(leaf);
+        int grandParent = parent(oldParent);
+        int sibling = child1(oldParent) == leaf ? child2(oldParent) : child1(oldParent);
+        if (grandParent == NULL_NODE) {
+            this.root = sibling;
+            setParent(sibling, NULL_NODE);
+        } else {
+            if (child1(grandParent) == oldParent) {
+                setChild1(grandParent, sibling);
+            } else {
+                setChild2(grandParent, sibling);
+            }
+            setParent(sibling, grandParent);
+            refitUpwards(grandParent);
+        }
+        freeNode(oldParent);
+    }
+
+    /**
+     * Rebalances, refits and updates the height of a node and all nodes above it.
+     *
+     * @param start the lowest node to fix, or {@link #NULL_NODE}
+     */
+    private void refitUpwards(int start) {
+        int node = start;
+        while (node != NULL_NODE) {
+            node = balance(node);
+            this.height[node] = 1 + Math.max(this.height[child1(node)], this.height[child2(node)]);
+            fitToChildren(node);
+            node = parent(node);
+        }
+    }
+
+    /**
+     * Rotates a node with one of its grandchildren if one of its subtrees is more than one level higher than
+     * the other.
+     *
+     * @param a an inner node
+     * @return the node now at the place of the given node
+     */
+    private int balance(int a) {
+        if (isLeaf(a) || this.height[a] < 2) {
+            return a;
+        }
+        int b = child1(a);
+        int c = child2(a);
+        int difference = this.height[c] - this.height[b];
+        if (difference > 1) {
+            return rotateUp(a, c, b);
+        }
+        if (difference < -1) {
+            return rotateUp(a, b, c);
+        }
+        return a;
+    }
+
+    /**
+     * Lifts the higher child of a node into its place. The node takes the place of the lifted child's lower
+     * child, keeping the higher one.
+     *
+     * @param a     the unbalanced node
+     * @param up    the child of a to lift
+     * @param other the other child of a
+     * @return the lifted child, now at the place of a
+     */
+    private int rotateUp(int a, int up, int other) {
+        int f = child1(up);
+        int g = child2(up);
+
+        setChild1(up, a);
+        setParent(up, parent(a));
+        setParent(a, up);
+        int upParent = parent(up);
+        if (upParent == NULL_NODE) {
+            this.root = up;
+        } else if (child1(upParent) == a) {
+            setChild1(upParent, up);
+        } else {
+            setChild2(upParent, up);
+        }
+
+        // Keep the higher grandchild under the lifted node and hand the other one to a
+        int keep = this.height[f] > this.height[g] ? f : g;
+        int give = keep == f ? g : f;
+        setChild2(up, keep);
+        if (child1(a) == up) {
+            setChild1(a, give);
+        } else {
+            setChild2(a, give);
+        }
+        setParent(give, a);
+        fitToChildren(a);
+        this.height[a] = 1 + Math.max(this.height[other], this.height[give]);
+        fitToChildren(up);
+        this.height[up] = 1 + Math.max(this.height[a], this.height[keep]);
+        return up;
+    }
+
+    /**
+     * Returns the perimeter of the box of a node, which is how costly it is to test.
+     *
+     * @param node a node
+     * @return the perimeter of its box
+     */
+    private double perimeter(int node) {
+        return 2 * ((maxX(node) - minX(node)) + (maxY(node) - minY(node)));
+    }
+
+    /**
+     * Returns the perimeter of the box bounding two nodes.
+     *
+     * @param a a node
+     * @param b another node
+     * @return the perimeter of the box bounding both
+     */
+    private double combinedPerimeter(int a, int b) {
+        double width = Math.max(maxX(a), maxX(b)) - Math.min(minX(a), minX(b));
+        double height = Math.max(maxY(a), maxY(b)) - Math.min(minY(a), minY(b));
+        return 2 * (width + height);
+    }
+
+    /**
+     * Sets the box of an inner node to bound its children.
+     *
+     * @param node an inner node
+     */
+    private void fitToChildren(int node) {
+        int a = child1(node);
+        int b = child2(node);
+        setBox(node, Math.min(minX(a), minX(b)), Math.min(minY(a), minY(b)),
+                Math.max(maxX(a), maxX(b)), Math.max(maxY(a), maxY(b)));
+    }
+
+    /**
+     * Returns the left side of the box of a node.
+     *
+     * @param node a node
+     * @return the smallest x-coordinate of its box
+     */
+    private double minX(int node) {
+        return this.boxes[node * BOX + MIN_X];
+    }
+
+    /**
+     * Returns the top side of the box of a node.
+     *
+     * @param node a node
+     * @return the smallest y-coordinate of its box
+     */
+    private double minY(int node) {
+        return this.boxes[node * BOX + MIN_Y];
+    }
+
+    /**
+     * Returns the right side of the box of a node.
+     *
+     * @param node a node
+     * @return the largest x-coordinate of its box
+     */
+    private double maxX(int node) {
+        return this.boxes[node * BOX + MAX_X];
+    }
+
+    /**
+     * Returns the bottom side of the box of a node.
+     *
+     * @param node a node
+     * @return the largest y-coordinate of its box
+     */
+    private double maxY(int node) {
+        return this.boxes[node * BOX + MAX_Y];
+    }
+
+    /**
+     * Sets the parent of a node.
+     *
+     * @param node   a node
+     * @param parent its new parent
+     */
+    private void setParent(int node, int parent) {
+        this.links[node * LINKS + PARENT] = parent;
+    }
+
+    /**
+     * Sets the first child of a node.
+     *
+     * @param node  a node
+     * @param child its new first child
+     */
+    private void setChild1(int node, int child) {
+        this.links[node * LINKS + CHILD1] = child;
+    }
+
+    /**
+     * Sets the second child of a node.
+     *
+     * @param node  a node
+     * @param child its new second child
+     */
+    private void setChild2(int node, int child) {
+        this.links[node * LINKS + CHILD2] = child;
+    }
+
+    /**
+     * Sets the box of a node.
+     *
+     * @param node   a node
+     * @param left   the left side of the box
+     * @param top    the top side of the box
+     * @param right  the right side of the box
+     * @param bottom the bottom side of the box
+     */
+    private void setBox(int node, double left, double top, double right, double bottom) {
+        this.boxes[node * BOX + MIN_X] = left;
+        this.boxes[node * BOX + MIN_Y] = top;
+        this.boxes[node * BOX + MAX_X] = right;
+        this.boxes[node * BOX + MAX_Y] = bottom;
+    }
+
+    /**
+     * Takes a node from the free list, growing the node arrays if it is empty.
+     *
+     * @return a fresh node with no parent and no children
+     */
+    private int allocateNode() {
+        int node;
+        if (this.freeList != NULL_NODE) {
+            node = this.freeList;
+            this.freeList = parent(node);
+        } else {
+            if (this.nodeCount == this.height.length) {
+                int capacity = this.nodeCount * 2;
+                this.boxes = Arrays.copyOf(this.boxes, capacity * BOX);
+                this.links = Arrays.copyOf(this.links, capacity * LINKS);
+                this.height = Arrays.copyOf(this.height, capacity);
+            }
+            node = this.nodeCount++;
+        }
+        setParent(node, NULL_NODE);
+        setChild1(node, NULL_NODE);
+        setChild2(node, NULL_NODE);
+        return node;
+    }
+
+    /**
+     * Returns a node to the free list, linking it through its parent field.
+     *
+     * @param node the node to free
+     */
+    private void freeNode(int node) {
+        setParent(node, this.freeList);
+        setChild1(node, NULL_NODE);
+        setChild2(node, NULL_NODE);
+        this.freeList = node;
+    }
+}
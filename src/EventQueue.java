@@ -0,0 +1,194 @@
+import java.util.Arrays;
+
+/**
+ * The EventQueue class is a priority queue of timed events, at most one per id, kept as an indexed binary min-heap
+ * over primitive arrays. The time of an id's event can be changed or the event cancelled in logarithmic time, since
+ * the queue knows where in the heap every id is. Events at the same time come out in increasing id order, so the
+ * order never depends on how the heap happens to be laid out.
+ */
+public class EventQueue {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] heap;
+    private double[] times;
+    private int[] positions;
+    private int size;
+
+    /**
+     * Constructs an empty EventQueue.
+     */
+    public EventQueue() {
+        this.heap = new int[INITIAL_CAPACITY];
+        this.times = new double[INITIAL_CAPACITY];
+        this.positions = new int[INITIAL_CAPACITY];
+        Arrays.fill(this.positions, -1);
+    }
+
+    /**
+     * Schedules the event of an id, replacing its earlier event if it had one.
+     *
+     * @param id   the id, at least 0
+     * @param time the time of the event
+     */
+    public void schedule(int id, double time) {
+        if (id >= this.positions.length) {
+            int capacity = Math.max(id + 1, this.positions.length * 2);
+            int oldCapacity = this.positions.length;
+            this.positions = Arrays.copyOf(this.positions, capacity);
+            Arrays.fill(this.positions, oldCapacity, capacity, -1);
+            this.times = Arrays.copyOf(this.times, capacity);
+        }
+        int position = this.positions[id];
+        this.times[id] = time;
+        if (position < 0) {
+            if (this.size == this.heap.length) {
+                this.heap = Arrays.copyOf(this.heap, this.size * 2);
+            }
+            position = this.size++;
+            this.heap[position] = id;
+            this.positions[id] = position;
+        }
+        siftDown(siftUp(position));
+    }
+
+    /**
+     * Cancels the event of an id, if it has one.
+     *
+     * @param id the id
+     */
+    public void cancel(int id) {
+        if (id >= this.positions.length || this.positions[id] < 0) {
+            return;
+        }
+        int position = this.positions[id];
+        this.positions[id] = -1;
+        int last = this.heap[--this.size];
+        if (position < this.size) {
+            this.heap[position] = last;
+            this.positions[last] = position;
+            siftDown(siftUp(position));
+        }
+    }
+
+    /**
+     * Checks whether the queue holds no event.
+     *
+     * @return true if the queue is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Returns the number of events in the queue.
+     *
+     * @return the number of events
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the time of the earliest event.
+     *
+     * @return the time of the earliest event, or positive infinity if the queue is empty
+     */
+    public double peekTime() {
+        return this.size == 0 ? Double.POSITIVE_INFINITY : this.times[this.heap[0]];
+    }
+
+    /**
+     * Removes the earliest event from the queue.
+     *
+     * @return the id of the event
+     * @throws IllegalStateException if the queue is empty
+     */
+    public int poll() {
+        if (this.size == 0) {
+            throw new IllegalStateException("no event in the queue");
+        }
+        int id = this.heap[0];
+        cancel(id);
+        return id;
+    }
+
+    /**
+     * Removes every event from the queue.
+     */
+    public void clear() {
+        for (int i = 0; i < this.size; i++) {
+            this.positions[this.heap[i]] = -1;
+        }
+        this.size = 0;
+    }
+
+    /**
+     * Checks whether the event at one position of the heap comes before the event at another.
+     *
+     * @param a the first position
+     * @param b the second position
+     * @return true if the first event is earlier, or at the same time with a smaller id
+     */
+    private boolean before(int a, int b) {
+        int idA = this.heap[a];
+        int idB = this.heap[b];
+        double timeA = this.times[idA];
+        double timeB = this.times[idB];
+        return timeA < timeB || (timeA == timeB && idA < idB);
+    }
+
+    /**
+     * Moves an event up the heap until its parent comes before it.
+     *
+     * @param position the position of the event
+     * @return the new position of the event
+     */
+    private int siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!before(position, parent)) {
+                break;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+        return position;
+    }
+
+    /**
+     * Moves an event down the heap until it comes before its children.
+     *
+     * @param position the position of the event
+     */
+    private void siftDown(int position) {
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= this.size) {
+                return;
+            }
+            if (child + 1 < this.size && before(child + 1, child)) {
+                child++;
+            }
+            if (!before(child, position)) {
+                return;
+            }
+            swap(position, child);
+            position = child;
+        }
+    }
+
+    /**
+     * Swaps two events of the heap.
+     *
+     * @param a the position of the first event
+     * @param b the position of the second event
+     */
+    private void swap(int a, int b) {
+        int idA = this.heap[a];
+        int idB = this.heap[b];
+        this.heap[a] = idB;
+        this.heap[b] = idA;
+        this.positions[idB] = a;
+        this.positions[idA] = b;
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * The FrameStats class collects frame pacing statistics of the game loop:
+ * how many frames were late, how many physics ticks had to be dropped, and how much longer than asked
+ * the loop slept between frames.
+ */
+public class FrameStats {
+    private long frames;
+    private long ticks;
+    private long lateFrames;
+    private long droppedTicks;
+    private long sleeps;
+    private long totalSleepOvershootNanos;
+
+    /**
+     * Records a rendered frame.
+     *
+     * @param ticksRun the number of physics ticks run before the frame
+     * @param late     whether the frame was late, so more than one tick was needed to catch up
+     */
+    public void recordFrame(int ticksRun, boolean late) {
+        this.frames++;
+        this.ticks += ticksRun;
+        if (late) {
+            this.lateFrames++;
+        }
+    }
+
+    /**
+     * Records physics ticks that were skipped because the loop fell too far behind.
+     *
+     * @param count the number of ticks dropped
+     */
+    public void recordDroppedTicks(long count) {
+        this.droppedTicks += count;
+    }
+
+    /**
+     * Records a sleep between frames.
+     *
+     * @param requestedNanos how long the loop asked to sleep
+     * @param actualNanos    how long it actually slept
+     */
+    public void recordSleep(long requestedNanos, long actualNanos) {
+        this.sleeps++;
+        this.totalSleepOvershootNanos += actualNanos - requestedNanos;
+    }
+
+    /**
+     * Returns the number of rendered frames.
+     *
+     * @return the number of frames
+     */
+    public long getFrames() {
+        return this.frames;
+    }
+
+    /**
+     * Returns the number of physics ticks run.
+     *
+     * @return the number of ticks
+     */
+    public long getTicks() {
+        return this.ticks;
+    }
+
+    /**
+     * Returns the number of late frames.
+     *
+     * @return the number of late frames
+     */
+    public long getLateFrames() {
+        return this.lateFrames;
+    }
+
+    /**
+     * Returns the number of physics ticks dropped.
+     *
+     * @return the number of dropped ticks
+     */
+    public long getDroppedTicks() {
+        return this.droppedTicks;
+    }
+
+    /**
+     * Returns how much longer than asked the loop slept on average, in milliseconds.
+     *
+     * @return the average sleep overshoot, or 0 if the loop never slept
+     */
+    public double getAverageSleepOvershootMillis() {
+        return this.sleeps == 0 ? 0 : this.totalSleepOvershootNanos / 1e6 / this.sleeps;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("frames=%d ticks=%d late=%d dropped=%d overshoot=%.3fms",
+                this.frames, this.ticks, this.lateFrames, this.droppedTicks, getAverageSleepOvershootMillis());
+    }
+}
@@ -1,48 +1,232 @@
 import biuoop.DrawSurface;
 import biuoop.Sleeper;
 import java.awt.Color;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The Game class represents the game logic and the main game loop.
  * It manages the sprites and collidables, initializes the game objects, and runs the game loop.
  */
 public class Game {
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+    private static final int TICKS_PER_SECOND = 60;
+    private static final long NANOS_PER_TICK = 1000000000L / TICKS_PER_SECOND;
+    private static final int MAX_TICKS_PER_FRAME = 5;
+    private static final long HASH_PRIME = 0x100000001B3L;
+
     private SpriteCollection sprites;
     private GameEnvironment environment;
     private biuoop.GUI gui;
+    private FrameStats frameStats = new FrameStats();
+    private GameMetrics metrics;
+    private long seed = new Random().nextLong();
+    private InputLog inputLog;
+    private Level level;
+    private biuoop.KeyboardSensor keyboard;
+    private Paddle paddle;
+    private int paddleOrder;
+    private BallSystem balls;
+    private List<Block> blocks;
+    private long ticks;
 
     /**
      * Adds a collidable object to the game environment.
      *
      * @param c the collidable object to add
+     * @return the handle of the collidable, to remove it with
+     */
+    public int addCollidable(Collidable c) {
+        return this.environment.addCollidable(c);
+    }
+
+    /**
+     * Adds a collidable object whose collision rectangle may change over time to the game environment.
+     *
+     * @param c the moving collidable object to add
+     * @return the handle of the collidable, to remove it with
      */
-    public void addCollidable(Collidable c) {
-        this.environment.addCollidable(c);
+    public int addMovingCollidable(Collidable c) {
+        return this.environment.addMovingCollidable(c);
+    }
+
+    /**
+     * Removes a collidable object from the game environment. Safe to call during a tick, such as from a hit.
+     *
+     * @param handle the handle returned when the collidable was added
+     */
+    public void removeCollidable(int handle) {
+        this.environment.removeCollidable(handle);
     }
 
     /**
      * Adds a sprite object to the sprite collection.
      *
      * @param s the sprite object to add
+     * @return the handle of the sprite, to remove it with
+     */
+    public int addSprite(Sprite s) {
+        return this.sprites.addSprite(s);
+    }
+
+    /**
+     * Removes a sprite object from the sprite collection. Safe to call during a tick.
+     *
+     * @param handle the handle returned when the sprite was added
+     */
+    public void removeSprite(int handle) {
+        this.sprites.removeSprite(handle);
+    }
+
+    /**
+     * Adds a sprite that never moves to the sprite collection, where it is drawn as part of the static layer.
+     *
+     * @param s the static sprite object to add
+     * @return the handle of the static sprite, to remove it with
+     */
+    public int addStaticSprite(StaticSprite s) {
+        return this.sprites.addStaticSprite(s);
+    }
+
+    /**
+     * Removes a static sprite from the sprite collection. Safe to call during a tick.
+     *
+     * @param handle the handle returned when the static sprite was added
+     */
+    public void removeStaticSprite(int handle) {
+        this.sprites.removeStaticSprite(handle);
+    }
+
+    /**
+     * Turns parallel sprite updates on or off. Must be called after the game is initialized.
+     *
+     * @param pool the pool to update parallel sprites on, or null for sequential updates
+     */
+    public void setParallelUpdates(ForkJoinPool pool) {
+        this.sprites.setParallelUpdates(pool);
+    }
+
+    /**
+     * Turns kinetic mode of the balls on or off, in which they are moved from collision to collision instead of
+     * looking for collisions every tick. Must be called after the game is initialized.
+     *
+     * @param enabled true for kinetic mode
+     * @see BallSystem#setKinetic(boolean)
+     */
+    public void setKinetic(boolean enabled) {
+        this.balls.setKinetic(enabled);
+    }
+
+    /**
+     * Sets the seed of the random choices made when the game is initialized, such as the colors of the blocks.
+     * Must be called before the game is initialized; without it, every game gets a seed of its own.
+     *
+     * @param seed the seed of the game
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Returns the seed of the random choices made when the game is initialized.
+     *
+     * @return the seed of the game
      */
-    public void addSprite(Sprite s) {
-        this.sprites.addSprite(s);
+    public long getSeed() {
+        return this.seed;
     }
 
     /**
-     * Initializes a new game: creates the blocks, balls, and paddle,
+     * Sets the log to record the input of the game to, or to replay it from. Must be called before the game is
+     * initialized. The game then takes its seed from the log, and all its keys are read through the log.
+     *
+     * @param log the input log, or null to read the keyboard directly
+     */
+    public void setInputLog(InputLog log) {
+        this.inputLog = log;
+    }
+
+    /**
+     * Sets the level the game is initialized with. Must be called before the game is initialized; without it, the
+     * game is initialized with the built-in level.
+     *
+     * @param level the level, or null for the built-in level
+     */
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+    /**
+     * Initializes a new game: creates the GUI, the blocks, balls, and paddle,
      * and adds them to the game.
      */
     public void initialize() {
+        gui = new biuoop.GUI("Arkanoid", WIDTH, HEIGHT);
+        createWorld(gui.getKeyboardSensor());
+        this.metrics.registerMBean("Arkanoid");
+    }
+
+    /**
+     * Initializes a new game without a GUI, so it can run on machines without a display.
+     * No key is ever pressed unless the input is replayed from a log, and the game can only be run with
+     * {@link #runHeadless(long, long)} or {@link #advance(long)}.
+     */
+    public void initializeHeadless() {
+        initializeHeadless(new NullKeyboardSensor());
+    }
+
+    /**
+     * Initializes a new game without a GUI, whose paddle is controlled by the given keyboard sensor, such as a bot
+     * pressing keys. The game can only be run with {@link #runHeadless(long, long)} or {@link #advance(long)}.
+     *
+     * @param keyboard the keyboard sensor controlling the paddle, unless the game has an input log
+     */
+    public void initializeHeadless(biuoop.KeyboardSensor keyboard) {
+        gui = null;
+        createWorld(keyboard);
+    }
+
+    /**
+     * Creates the blocks, balls, and paddle of the level, or of the built-in level if none was set, and adds them
+     * to the game.
+     *
+     * @param keyboard the keyboard sensor controlling the paddle, unless the game has an input log
+     */
+    private void createWorld(biuoop.KeyboardSensor keyboard) {
+        if (this.inputLog != null) {
+            this.inputLog.attach(keyboard);
+            this.seed = this.inputLog.getSeed();
+            keyboard = this.inputLog;
+        }
+        this.keyboard = keyboard;
         this.sprites = new SpriteCollection();
         this.environment = new GameEnvironment();
-        gui = new biuoop.GUI("Arkanoid", 800, 600);
-        biuoop.KeyboardSensor keyboard = gui.getKeyboardSensor();
-        Block[] blocks = new Block[20];
+        this.metrics = new GameMetrics(this.environment);
+        this.blocks = new ArrayList<>();
+        if (this.level != null) {
+            addLevel(this.level);
+        } else {
+            addBuiltInLevel();
+        }
+
+        // Drawn last, on top of everything else
+        addSprite(new MetricsOverlay(this.metrics, keyboard));
+    }
+
+    /**
+     * Adds the blocks, paddle, and balls of the built-in level to the game. The colors of the rows of bricks are
+     * chosen at random from the seed of the game.
+     */
+    private void addBuiltInLevel() {
+        Random random = new Random(this.seed);
 
         // Create the blocks
-        int maxWidth = 800;
-        int maxHeight = 600;
+        int maxWidth = WIDTH;
+        int maxHeight = HEIGHT;
         int borderSize = 20;
         int minWidth = 0;
         int minHeight = 0;
@@ -54,54 +238,354 @@ public class Game {
                 maxWidth, borderSize), Color.GRAY);
         Block borderBottom = new Block(new Rectangle(new Point(minWidth, maxHeight - borderSize),
                 maxWidth, borderSize), Color.GRAY);
-        Paddle paddle = new Paddle(new Rectangle(new Point((double) maxWidth / 2, maxHeight - 2 * borderSize),
-                100, 20), Color.ORANGE, keyboard);
+        this.paddle = new Paddle(new Rectangle(new Point((double) maxWidth / 2, maxHeight - 2 * borderSize),
+                100, 20), Color.ORANGE, this.keyboard);
 
-        screen.addToGame(this);
-        borderLeft.addToGame(this);
-        borderRight.addToGame(this);
-        borderTop.addToGame(this);
-        borderBottom.addToGame(this);
-        paddle.addToGame(this);
+        addBlock(screen);
+        addBlock(borderLeft);
+        addBlock(borderRight);
+        addBlock(borderTop);
+        addBlock(borderBottom);
+        this.paddleOrder = this.blocks.size();
+        this.paddle.addToGame(this);
 
         for (int i = 0; i < 5; i++) {
-            Color randColor = new Color((int) (Math.random() * 0x10000000));
+            Color randColor = new Color(random.nextInt(0x10000000));
             for (int j = i; j <= 12; j++) {
                 Rectangle rectangle = new Rectangle(new Point((50 * j) + 150 - borderSize,
                         100 + i * borderSize), 50, 20);
-                blocks[j] = new Block(rectangle, randColor);
-                blocks[j].addToGame(this);
+                addBlock(new Block(rectangle, randColor));
             }
         }
 
         // Create the balls
+        this.balls = new BallSystem(this.environment);
         for (int i = 0; i < 2; i++) {
-            Ball ball = new Ball(400, 300, 6, Color.WHITE, this.environment);
+            Ball ball = this.balls.getBall(this.balls.addBall(400, 300, 6, Color.WHITE));
             ball.setVelocity(1 + i, 3);
-            ball.addToGame(this);
         }
+        this.balls.addToGame(this);
+    }
+
+    /**
+     * Adds the blocks, paddle, and balls of a level to the game, in the order of the level.
+     *
+     * @param l the level to add
+     */
+    private void addLevel(Level l) {
+        Block[] levelBlocks = l.createBlocks();
+        this.paddle = l.createPaddle(this.keyboard);
+        this.paddleOrder = l.getPaddleOrder();
+        for (int i = 0; i < levelBlocks.length; i++) {
+            if (i == this.paddleOrder) {
+                this.paddle.addToGame(this);
+            }
+            addBlock(levelBlocks[i]);
+        }
+        if (this.paddleOrder >= levelBlocks.length) {
+            this.paddle.addToGame(this);
+        }
+        this.balls = l.createBalls(this.environment);
+        this.balls.addToGame(this);
+    }
+
+    /**
+     * Adds a block to the game and to the blocks that are saved with the game's state.
+     *
+     * @param block the block to add
+     */
+    private void addBlock(Block block) {
+        this.blocks.add(block);
+        block.addToGame(this);
+    }
+
+    /**
+     * Saves the state of the game world into a file, replacing it if it exists: the tick and the seed of the game,
+     * the balls, the paddle, and the blocks, with the ones that were removed. Must be called between ticks.
+     *
+     * @param fileName the name of the file to save to
+     * @throws IOException if the file cannot be written
+     * @see SaveState
+     */
+    public void saveState(String fileName) throws IOException {
+        SaveState.save(fileName, this.ticks, this.seed, this.paddle, this.paddleOrder, this.balls, this.blocks);
+    }
+
+    /**
+     * Replaces the world of an initialized game with the one saved in a file by {@link #saveState(String)}, so the
+     * game continues exactly as the saved game did from the same tick, given the same input.
+     * Must be called between ticks, and parallel updates and ball collisions must be set again afterwards.
+     *
+     * @param fileName the name of the file to load
+     * @throws IOException if the file cannot be read or is not a save state
+     */
+    public void loadState(String fileName) throws IOException {
+        SaveState state = SaveState.load(fileName);
+        this.seed = state.getSeed();
+        this.ticks = state.getTick();
+        this.sprites = new SpriteCollection();
+        this.environment = new GameEnvironment();
+        this.metrics = new GameMetrics(this.environment);
+        if (gui != null) {
+            this.metrics.registerMBean("Arkanoid");
+        }
+
+        boolean[] inGame = new boolean[state.getBlockCount()];
+        Block[] saved = state.readBlocks(inGame);
+        this.blocks = new ArrayList<>(saved.length);
+        this.paddle = new Paddle(state.getPaddleRectangle(), state.getPaddleColor(), this.keyboard);
+        this.paddleOrder = state.getPaddleOrder();
+        for (int i = 0; i < saved.length; i++) {
+            if (i == this.paddleOrder) {
+                this.paddle.addToGame(this);
+            }
+            this.blocks.add(saved[i]);
+            if (inGame[i]) {
+                saved[i].addToGame(this);
+            }
+        }
+        if (this.paddleOrder >= saved.length) {
+            this.paddle.addToGame(this);
+        }
+
+        this.balls = new BallSystem(this.environment, state.getBallCount());
+        state.readBalls(this.balls);
+        this.balls.addToGame(this);
+
+        // Drawn last, on top of everything else
+        addSprite(new MetricsOverlay(this.metrics, this.keyboard));
+    }
+
+    /**
+     * Returns the number of ticks the game has run, counting the ticks of a loaded game before it was saved.
+     *
+     * @return the number of ticks
+     */
+    public long getTicks() {
+        return this.ticks;
     }
 
     /**
      * Runs the game by starting the animation loop.
      * The game loop continues until the user closes the game window.
+     * Physics advance in fixed ticks of 1/60 second, measured with {@link System#nanoTime()}: every frame runs
+     * as many ticks as the time elapsed calls for, up to a cap, and then draws the result, so a slow frame
+     * delays the drawing but not the game speed. When even the cap cannot catch up, the remaining ticks are dropped.
+     * Every frame is recorded into a reusable {@link DrawCommandBuffer} and replayed on the GUI in batches of one
+     * color, so the GUI changes colors once per color of each sprite instead of once per shape.
      */
     public void run() {
         Sleeper sleeper = new Sleeper();
-        int framesPerSecond = 60;
-        int millisecondsPerFrame = 1000 / framesPerSecond;
+        DrawCommandBuffer frame = new DrawCommandBuffer(WIDTH, HEIGHT);
+        long previousTime = System.nanoTime();
+        long accumulator = 0;
+        while (true) {
+            long now = System.nanoTime();
+            accumulator += now - previousTime;
+            previousTime = now;
+
+            int ticksRun = 0;
+            this.metrics.beginSlice();
+            while (accumulator >= NANOS_PER_TICK && ticksRun < MAX_TICKS_PER_FRAME) {
+                long tickStart = System.nanoTime();
+                tick();
+                this.metrics.recordTick(System.nanoTime() - tickStart);
+                accumulator -= NANOS_PER_TICK;
+                ticksRun++;
+            }
+            this.metrics.endSlice();
+            if (accumulator >= NANOS_PER_TICK) {
+                this.frameStats.recordDroppedTicks(accumulator / NANOS_PER_TICK);
+                accumulator %= NANOS_PER_TICK;
+            }
+            this.frameStats.recordFrame(ticksRun, ticksRun > 1);
+
+            long drawStart = System.nanoTime();
+            DrawSurface d = gui.getDrawSurface();
+            frame.clear();
+            this.sprites.drawAllOn(frame);
+            frame.replayBatched(d);
+            long showStart = System.nanoTime();
+            gui.show(d);
+            this.metrics.recordDraw(showStart - drawStart);
+            this.metrics.recordShow(System.nanoTime() - showStart);
+
+            // Sleep until the next tick is due, rounding up so the next frame always has a tick to run
+            long nanosLeftToSleep = NANOS_PER_TICK - accumulator - (System.nanoTime() - previousTime);
+            long milliSecondLeftToSleep = (nanosLeftToSleep + 999999L) / 1000000L;
+            if (milliSecondLeftToSleep > 0) {
+                long sleepStart = System.nanoTime();
+                sleeper.sleepFor(milliSecondLeftToSleep);
+                this.frameStats.recordSleep(milliSecondLeftToSleep * 1000000L, System.nanoTime() - sleepStart);
+            }
+        }
+    }
+
+    /**
+     * Runs the game with the simulation and the drawing on separate threads.
+     * A simulation thread advances the physics in fixed ticks of 1/60 second and, after every tick, records the
+     * sprites into a {@link SnapshotExchange}; the calling thread keeps drawing the newest recorded frame on the
+     * GUI. A slow {@code gui.show} therefore never delays the physics, and the two phases overlap on two cores.
+     * Metrics are only recorded on the simulation thread: the draw phase is the time spent recording a frame,
+     * and the show phase is not measured.
+     * The game loop continues until the user closes the game window.
+     */
+    public void runPipelined() {
+        SnapshotExchange exchange = new SnapshotExchange(WIDTH, HEIGHT);
+        Thread simulation = new Thread(() -> simulate(exchange), "simulation");
+        simulation.setDaemon(true);
+        simulation.start();
+
+        Sleeper sleeper = new Sleeper();
+        long lastSequence = 0;
         while (true) {
-            long startTime = System.currentTimeMillis(); // timing
+            DrawCommandBuffer frame = exchange.latest();
+            long ticksRun = frame.getSequence() - lastSequence;
+            if (ticksRun == 0) {
+                // Nothing new to draw yet
+                sleeper.sleepFor(1);
+                continue;
+            }
+            lastSequence = frame.getSequence();
+            this.frameStats.recordFrame((int) ticksRun, ticksRun > 1);
             DrawSurface d = gui.getDrawSurface();
-            this.sprites.drawAllOn(d);
+            frame.replayBatched(d);
             gui.show(d);
-            this.sprites.notifyAllTimePassed();
-            // timing
-            long usedTime = System.currentTimeMillis() - startTime;
-            long milliSecondLeftToSleep = millisecondsPerFrame - usedTime;
+        }
+    }
+
+    /**
+     * Runs the simulation side of {@link #runPipelined()}: fixed ticks of 1/60 second, each followed by a
+     * recording of the sprites. When the simulation falls more than a few ticks behind, the missed ticks are
+     * dropped rather than replayed.
+     *
+     * @param exchange the exchange to publish recorded frames through
+     */
+    private void simulate(SnapshotExchange exchange) {
+        Sleeper sleeper = new Sleeper();
+        long tick = 0;
+        long nextTickTime = System.nanoTime();
+        while (true) {
+            long tickStart = System.nanoTime();
+            this.metrics.beginSlice();
+            tick();
+            this.metrics.endSlice();
+            long drawStart = System.nanoTime();
+            tick++;
+            this.sprites.drawAllOn(exchange.beginFrame());
+            exchange.publish(tick);
+            this.metrics.recordDraw(System.nanoTime() - drawStart);
+            this.metrics.recordTick(drawStart - tickStart);
+
+            nextTickTime += NANOS_PER_TICK;
+            long now = System.nanoTime();
+            if (now - nextTickTime > MAX_TICKS_PER_FRAME * NANOS_PER_TICK) {
+                nextTickTime = now;
+            }
+            long milliSecondLeftToSleep = (nextTickTime - now) / 1000000L;
             if (milliSecondLeftToSleep > 0) {
                 sleeper.sleepFor(milliSecondLeftToSleep);
             }
         }
     }
+
+    /**
+     * Returns the per-phase timing metrics of the game loop.
+     *
+     * @return the game metrics
+     */
+    public GameMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Returns the frame pacing statistics of the game loop.
+     *
+     * @return the frame statistics
+     */
+    public FrameStats getFrameStats() {
+        return this.frameStats;
+    }
+
+    /**
+     * Runs the game without a GUI and without waiting between frames, so it runs as fast as possible.
+     * Nothing is drawn, as in {@link #advance(long)}, so the time measured is that of the ticks alone and the static
+     * sprites are never rasterized.
+     * The run stops after the given number of ticks or once the wall-clock budget is used up,
+     * whichever comes first, or when the input log has no more input.
+     *
+     * @param maxTicks     the number of ticks to run, or 0 for no limit
+     * @param budgetMillis the wall-clock budget in milliseconds, or 0 for no limit
+     * @return the number of ticks that were run
+     */
+    public long runHeadless(long maxTicks, long budgetMillis) {
+        long deadline = System.nanoTime() + budgetMillis * 1000000L;
+        long ticks = 0;
+        this.metrics.beginSlice();
+        while ((maxTicks <= 0 || ticks < maxTicks) && (budgetMillis <= 0 || System.nanoTime() < deadline)) {
+            long tickStart = System.nanoTime();
+            if (!tick()) {
+                break;
+            }
+            this.metrics.recordTick(System.nanoTime() - tickStart);
+            ticks++;
+        }
+        this.metrics.endSlice();
+        return ticks;
+    }
+
+    /**
+     * Runs up to the given number of ticks without a GUI and without drawing anything, as fast as possible.
+     * Since nothing is drawn, the static sprites are never rasterized, so a game run only this way holds no image;
+     * this is how a {@link GameHost} runs its sessions, a slice of ticks at a time.
+     *
+     * @param maxTicks the number of ticks to run
+     * @return the number of ticks that were run, fewer than asked only if the input log has no more input
+     */
+    public long advance(long maxTicks) {
+        // A host may run the next slice on another thread, so allocations are counted per slice
+        this.metrics.beginSlice();
+        long ticksRun = 0;
+        while (ticksRun < maxTicks) {
+            long tickStart = System.nanoTime();
+            if (!tick()) {
+                break;
+            }
+            this.metrics.recordTick(System.nanoTime() - tickStart);
+            ticksRun++;
+        }
+        this.metrics.endSlice();
+        return ticksRun;
+    }
+
+    /**
+     * Advances the game by one tick, reading the keys for the tick from the input log, if there is one.
+     *
+     * @return false if the input log has no more input, so the tick was not run, true otherwise
+     */
+    private boolean tick() {
+        if (this.inputLog != null && !this.inputLog.beginTick()) {
+            return false;
+        }
+        this.sprites.notifyAllTimePassed();
+        this.ticks++;
+        if (this.inputLog != null) {
+            this.inputLog.endTick(this);
+        }
+        return true;
+    }
+
+    /**
+     * Returns a hash of the state of the game: the balls, the paddle, and the number of collidables left.
+     * Two runs of the same game that hash differently at the same tick have diverged.
+     *
+     * @return the state hash
+     */
+    public long stateHash() {
+        Rectangle rect = this.paddle.getCollisionRectangle();
+        long hash = this.balls.stateHash();
+        hash = (hash ^ Double.doubleToLongBits(rect.getMinX())) * HASH_PRIME;
+        hash = (hash ^ Double.doubleToLongBits(rect.getMinY())) * HASH_PRIME;
+        return (hash ^ this.environment.size()) * HASH_PRIME;
+    }
 }
@@ -1,59 +1,843 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The GameEnvironment class represents the environment of the game, containing collidable objects.
  * It manages a list of collidables and provides methods for adding collidable objects and detecting collisions.
+ * Static collidables are indexed in a {@link CollisionGrid}, and moving or very large ones in a
+ * {@link DynamicAabbTree}. Queries only read the environment, so several threads may query it at once.
  */
 public class GameEnvironment {
+    private static final double CELL_SIZE = 64;
+    private static final int MAX_INDEXED_CELLS = 64;
+    private static final double TREE_MARGIN = 8;
+    private static final int MAX_LOOSE_ITEMS = 64;
+    private static final boolean VECTOR_MODULE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
     private List<Collidable> collidables;
+    private double[] boxes;
+    private BrickField[] fields;
+    private long[] versions;
+    private CollisionGrid grid;
+    private DynamicAabbTree tree;
+    private int[] treeItems;
+    private int treeItemCount;
+    private int[] leaves;
+    private int[] firstColumn;
+    private int[] firstRow;
+    private long[] addOrder;
+    private long nextAddOrder;
+    private boolean[] indexed;
+    private boolean[] removed;
+    private HandleTable handles;
+    private int[] pendingRemovals;
+    private int pendingRemovalCount;
+    private LongAdder queryCount;
+    private boolean trackChanges;
+    private double[] changes;
+    private int changeCount;
+    private final double[] cellBounds = new double[4];
+    private PackedCells packed;
+    private boolean packedStale;
+    private int[] packedItems;
+    private int[] fieldIds;
+    private int fieldCount;
+    private boolean looseFits;
+    private int openHitPhases;
 
     /**
      * Constructs a new GameEnvironment object with an empty list of collidables.
      */
     public GameEnvironment() {
         this.collidables = new ArrayList<>();
+        this.boxes = new double[16 * 4];
+        this.fields = new BrickField[16];
+        this.versions = new long[16];
+        this.grid = new CollisionGrid(CELL_SIZE);
+        this.tree = new DynamicAabbTree(TREE_MARGIN);
+        this.treeItems = new int[8];
+        this.leaves = new int[16];
+        this.firstColumn = new int[16];
+        this.firstRow = new int[16];
+        this.addOrder = new long[16];
+        this.indexed = new boolean[16];
+        this.removed = new boolean[16];
+        this.handles = new HandleTable();
+        this.pendingRemovals = new int[8];
+        this.queryCount = new LongAdder();
+        this.changes = new double[4 * 4];
+        this.packedItems = new int[16];
+        this.fieldIds = new int[4];
+        setVectorized(true);
+    }
+
+    /**
+     * Chooses whether {@link #findSweptCollisions(CollisionBatch, int, int)} tests the collidables in packed cells
+     * with {@link VectorSweep}, which is the default, or one move at a time like the single queries. The packed
+     * cells need the jdk.incubator.vector module; without it, or when turned off, they are not even built.
+     *
+     * @param enabled true to use the packed cells when the vector module is present
+     */
+    public void setVectorized(boolean enabled) {
+        this.packed = enabled && VECTOR_MODULE ? new PackedCells(CELL_SIZE) : null;
+        this.packedStale = true;
     }
 
     /**
      * Adds a collidable object to the game environment.
+     * The collision rectangle of the collidable is expected not to change after it was added.
+     *
+     * @param c the collidable object to add
+     * @return the handle of the collidable, to remove it with
+     */
+    public int addCollidable(Collidable c) {
+        int handle = register(c);
+        int id = this.handles.slotOf(handle);
+        Rectangle rect = c.getCollisionRectangle();
+        double minX = rect.getMinX();
+        double minY = rect.getMinY();
+        double maxX = rect.getMaxX();
+        double maxY = rect.getMaxY();
+        if (this.grid.cellsTouched(minX, minY, maxX, maxY) > MAX_INDEXED_CELLS) {
+            addToTree(id);
+        } else {
+            this.grid.insert(id, minX, minY, maxX, maxY);
+            this.firstColumn[id] = this.grid.cellOf(minX);
+            this.firstRow[id] = this.grid.cellOf(minY);
+            this.indexed[id] = true;
+        }
+        return handle;
+    }
+
+    /**
+     * Adds a collidable object whose collision rectangle may change over time, such as the paddle.
+     * Moving collidables are kept in the tree, which is only updated when they leave the margin around where
+     * they were last put in it. Their version must change whenever their collision rectangle does, so
+     * {@link #refresh()} can pick up their new bounds.
      *
      * @param c the collidable object to add
+     * @return the handle of the collidable, to remove it with
      */
-    public void addCollidable(Collidable c) {
+    public int addMovingCollidable(Collidable c) {
+        int handle = register(c);
+        addToTree(this.handles.slotOf(handle));
+        return handle;
+    }
+
+    /**
+     * Removes a collidable from the game environment. It is not hit by any query made after this call.
+     * Removing is cheap and can be done from a collidable's hit method, while balls are being moved.
+     *
+     * @param handle the handle returned when the collidable was added; it must not be used again
+     */
+    public void removeCollidable(int handle) {
+        int id = this.handles.slotOf(handle);
+        if (this.indexed[id]) {
+            int offset = id * 4;
+            this.grid.remove(id, this.boxes[offset], this.boxes[offset + 1], this.boxes[offset + 2],
+                    this.boxes[offset + 3]);
+        } else {
+            this.tree.remove(this.leaves[id]);
+            for (int i = 0; i < this.treeItemCount; i++) {
+                if (this.treeItems[i] == id) {
+                    this.treeItems[i] = this.treeItems[--this.treeItemCount];
+                    break;
+                }
+            }
+        }
+        // The packed cells drop a removed brick in place; anything else has them rebuilt at the next refresh
+        if (packedCurrent() && this.indexed[id] && this.fields[id] == null) {
+            this.packed.remove(id, this.boxes);
+        } else {
+            this.packedStale = true;
+        }
+        this.removed[id] = true;
+        recordChange(id);
+        if (this.fields[id] != null) {
+            this.fields[id].setEnvironment(null);
+        }
+        if (this.pendingRemovalCount == this.pendingRemovals.length) {
+            this.pendingRemovals = Arrays.copyOf(this.pendingRemovals, this.pendingRemovalCount * 2);
+        }
+        this.pendingRemovals[this.pendingRemovalCount++] = handle;
+    }
+
+    /**
+     * Returns the number of collidables in the environment, not counting removed ones.
+     *
+     * @return the number of collidables
+     */
+    public int size() {
+        return this.collidables.size() - this.pendingRemovalCount;
+    }
+
+    /**
+     * Stores a collidable in the next free slot and hands out a handle for it.
+     *
+     * @param c the collidable object to register
+     * @return the handle of the collidable
+     */
+    private int register(Collidable c) {
         this.collidables.add(c);
+        this.packedStale = true;
+        if (this.collidables.size() > this.firstColumn.length) {
+            int capacity = this.firstColumn.length * 2;
+            this.firstColumn = Arrays.copyOf(this.firstColumn, capacity);
+            this.firstRow = Arrays.copyOf(this.firstRow, capacity);
+            this.boxes = Arrays.copyOf(this.boxes, capacity * 4);
+            this.fields = Arrays.copyOf(this.fields, capacity);
+            this.versions = Arrays.copyOf(this.versions, capacity);
+            this.addOrder = Arrays.copyOf(this.addOrder, capacity);
+            this.indexed = Arrays.copyOf(this.indexed, capacity);
+            this.removed = Arrays.copyOf(this.removed, capacity);
+            this.leaves = Arrays.copyOf(this.leaves, capacity);
+        }
+        int id = this.collidables.size() - 1;
+        c.getCollisionRectangle().copyBounds(this.boxes, id * 4);
+        recordChange(id);
+        this.fields[id] = c instanceof BrickField ? (BrickField) c : null;
+        if (this.fields[id] != null) {
+            this.fields[id].setEnvironment(this);
+        }
+        this.versions[id] = c.getVersion();
+        this.addOrder[id] = this.nextAddOrder++;
+        this.indexed[id] = false;
+        this.removed[id] = false;
+        return this.handles.allocate(id);
+    }
+
+    /**
+     * Reclaims the slots of removed collidables by moving the last collidable into each of them.
+     */
+    private void compact() {
+        for (int i = 0; i < this.pendingRemovalCount; i++) {
+            int handle = this.pendingRemovals[i];
+            int id = this.handles.slotOf(handle);
+            int last = this.collidables.size() - 1;
+            if (id != last) {
+                moveSlot(last, id);
+            }
+            this.collidables.remove(last);
+            this.fields[last] = null;
+            this.handles.release(handle);
+        }
+        this.pendingRemovalCount = 0;
+    }
+
+    /**
+     * Moves a collidable to another slot, updating the index to match.
+     *
+     * @param from the current slot of the collidable
+     * @param to   the free slot to move it to
+     */
+    private void moveSlot(int from, int to) {
+        this.collidables.set(to, this.collidables.get(from));
+        System.arraycopy(this.boxes, from * 4, this.boxes, to * 4, 4);
+        this.fields[to] = this.fields[from];
+        this.versions[to] = this.versions[from];
+        this.firstColumn[to] = this.firstColumn[from];
+        this.firstRow[to] = this.firstRow[from];
+        this.addOrder[to] = this.addOrder[from];
+        this.indexed[to] = this.indexed[from];
+        this.removed[to] = this.removed[from];
+        this.leaves[to] = this.leaves[from];
+        this.handles.move(from, to);
+        if (this.removed[from]) {
+            // Already taken out of the index
+            return;
+        }
+        if (this.indexed[from]) {
+            int offset = to * 4;
+            this.grid.replace(from, to, this.boxes[offset], this.boxes[offset + 1], this.boxes[offset + 2],
+                    this.boxes[offset + 3]);
+        } else {
+            this.tree.setItem(this.leaves[from], to);
+            for (int i = 0; i < this.treeItemCount; i++) {
+                if (this.treeItems[i] == from) {
+                    this.treeItems[i] = to;
+                    break;
+                }
+            }
+        }
+        // The loose items are copied again at every refresh, but the cells and the fields keep their ids
+        if (packedCurrent() && this.indexed[to] && this.fields[to] == null) {
+            this.packed.rename(from, to, this.boxes);
+        } else if (this.fields[to] != null) {
+            this.packedStale = true;
+        }
+    }
+
+    /**
+     * Puts a collidable in the tree rather than the grid.
+     *
+     * @param id the id of the collidable
+     */
+    private void addToTree(int id) {
+        int offset = id * 4;
+        this.leaves[id] = this.tree.insert(id, this.boxes[offset], this.boxes[offset + 1], this.boxes[offset + 2],
+                this.boxes[offset + 3]);
+        if (this.treeItemCount == this.treeItems.length) {
+            this.treeItems = Arrays.copyOf(this.treeItems, this.treeItems.length * 2);
+        }
+        this.treeItems[this.treeItemCount++] = id;
+    }
+
+    /**
+     * Brings the environment up to date at a tick boundary: reclaims the slots of removed collidables and copies
+     * the bounds of moving collidables into the packed bounds. A collidable is only asked for its bounds again if
+     * its version changed, and the tree is only touched if it moved past its margin. Queries read nothing else,
+     * so they never call a collidable and never write to the environment.
+     * Call this from a single thread after collidables moved and before querying; {@link BallSystem} does it at
+     * the start of every tick.
+     */
+    public void refresh() {
+        if (this.pendingRemovalCount > 0) {
+            compact();
+        }
+        for (int i = 0; i < this.treeItemCount; i++) {
+            int id = this.treeItems[i];
+            Collidable collidable = this.collidables.get(id);
+            long version = collidable.getVersion();
+            if (version != this.versions[id] && this.fields[id] != null) {
+                // A field keeps its bounds and reports the cells that changed itself
+                this.versions[id] = version;
+            } else if (version != this.versions[id]) {
+                recordChange(id);
+                int offset = id * 4;
+                collidable.copyBounds(this.boxes, offset);
+                recordChange(id);
+                this.versions[id] = version;
+                this.tree.move(this.leaves[id], this.boxes[offset], this.boxes[offset + 1],
+                        this.boxes[offset + 2], this.boxes[offset + 3]);
+            }
+        }
+        if (this.packed != null) {
+            refreshPacked();
+        }
+    }
+
+    /**
+     * Marks the start of a tick phase that finds the hits of many balls before delivering any of them, such as a
+     * tick of a {@link BallSystem}. The ids in its batch must hold until {@link #endHitPhase()}, so
+     * {@link #refreshIfIdle()} leaves the environment alone in between.
+     */
+    public void beginHitPhase() {
+        this.openHitPhases++;
+    }
+
+    /**
+     * Marks the end of a tick phase started with {@link #beginHitPhase()}, once all of its hits were delivered.
+     */
+    public void endHitPhase() {
+        this.openHitPhases--;
+    }
+
+    /**
+     * Brings the environment up to date like {@link #refresh()}, unless a tick phase is between finding its hits
+     * and delivering them. A ball moved on its own calls this before its query, so it sees where moving
+     * collidables such as the paddle are now.
+     */
+    public void refreshIfIdle() {
+        if (this.openHitPhases == 0) {
+            refresh();
+        }
+    }
+
+    /**
+     * Brings the packed cells up to date. They are rebuilt from the grid's collidables, and the fields listed,
+     * only when collidables were added or removed other than as bricks; the bounds of the tree's collidables are
+     * copied into their loose run every time, since they may have moved.
+     */
+    private void refreshPacked() {
+        if (this.packedStale) {
+            int count = 0;
+            this.fieldCount = 0;
+            for (int id = 0; id < this.collidables.size(); id++) {
+                if (this.fields[id] != null) {
+                    if (this.fieldCount == this.fieldIds.length) {
+                        this.fieldIds = Arrays.copyOf(this.fieldIds, this.fieldCount * 2);
+                    }
+                    this.fieldIds[this.fieldCount++] = id;
+                } else if (this.indexed[id]) {
+                    if (count == this.packedItems.length) {
+                        this.packedItems = Arrays.copyOf(this.packedItems, count * 2);
+                    }
+                    this.packedItems[count++] = id;
+                }
+            }
+            this.packed.rebuild(this.boxes, this.addOrder, this.packedItems, count);
+            this.packedStale = false;
+        }
+        int looseCount = 0;
+        for (int i = 0; i < this.treeItemCount; i++) {
+            int id = this.treeItems[i];
+            if (this.fields[id] == null) {
+                if (looseCount == this.packedItems.length) {
+                    this.packedItems = Arrays.copyOf(this.packedItems, looseCount * 2);
+                }
+                this.packedItems[looseCount++] = id;
+            }
+        }
+        this.looseFits = looseCount + this.fieldCount <= MAX_LOOSE_ITEMS;
+        if (this.looseFits && this.packed.isValid()) {
+            this.packed.setLoose(this.boxes, this.addOrder, this.packedItems, looseCount);
+        }
+    }
+
+    /**
+     * Returns whether the packed cells hold every collidable of the grid, so they can be queried and updated in
+     * place.
+     *
+     * @return true if the packed cells are in use and up to date
+     */
+    private boolean packedCurrent() {
+        return this.packed != null && !this.packedStale && this.packed.isValid();
+    }
+
+    /**
+     * Turns keeping track of the regions where the environment changed on or off. It is off by default, and
+     * turning it off clears the regions.
+     *
+     * @param enabled true to keep track of changes
+     */
+    public void setChangeTracking(boolean enabled) {
+        this.trackChanges = enabled;
+        clearChanges();
+    }
+
+    /**
+     * Checks whether the environment changed since the regions were last cleared.
+     *
+     * @return true if a region changed, false otherwise or if changes are not tracked
+     */
+    public boolean hasChanges() {
+        return this.changeCount > 0;
+    }
+
+    /**
+     * Checks whether the environment changed within a box since the regions were last cleared: whether a collidable
+     * overlapping the box was added or removed, a moving collidable moved from or into it, or a brick in it was put
+     * or broken.
+     *
+     * @param minX the left of the box
+     * @param minY the top of the box
+     * @param maxX the right of the box
+     * @param maxY the bottom of the box
+     * @return true if the box overlaps a changed region, false otherwise
+     */
+    public boolean changedWithin(double minX, double minY, double maxX, double maxY) {
+        double[] regions = this.changes;
+        for (int i = 0; i < this.changeCount * 4; i += 4) {
+            if (regions[i] <= maxX && regions[i + 1] <= maxY && regions[i + 2] >= minX && regions[i + 3] >= minY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forgets the regions where the environment changed.
+     */
+    public void clearChanges() {
+        this.changeCount = 0;
+    }
+
+    /**
+     * Records a region as changed, if changes are tracked. A collidable whose shape changes within the same bounds,
+     * such as a {@link BrickField} putting or breaking a brick, reports the region that changed this way.
+     * Must be called from the thread that runs the ticks, outside of queries.
+     *
+     * @param minX the left of the region
+     * @param minY the top of the region
+     * @param maxX the right of the region
+     * @param maxY the bottom of the region
+     */
+    public void recordChange(double minX, double minY, double maxX, double maxY) {
+        if (!this.trackChanges) {
+            return;
+        }
+        if (this.changeCount * 4 == this.changes.length) {
+            this.changes = Arrays.copyOf(this.changes, this.changes.length * 2);
+        }
+        int offset = this.changeCount * 4;
+        this.changes[offset] = minX;
+        this.changes[offset + 1] = minY;
+        this.changes[offset + 2] = maxX;
+        this.changes[offset + 3] = maxY;
+        this.changeCount++;
+    }
+
+    /**
+     * Records the region a collidable covers as changed, if changes are tracked.
+     *
+     * @param id the id of the collidable
+     */
+    private void recordChange(int id) {
+        int offset = id * 4;
+        recordChange(this.boxes[offset], this.boxes[offset + 1], this.boxes[offset + 2], this.boxes[offset + 3]);
     }
 
     /**
      * Finds the closest collision point between a trajectory line and any collidable object in the environment.
+     * When several collidables are hit at the same distance, the one added first wins.
      *
      * @param trajectory the trajectory line to check for collisions
      * @return the collision information of the closest collision, or null if no collision occurs
      */
     public CollisionInfo getClosestCollision(Line trajectory) {
-        CollisionInfo closestCollision = null;
-        double closestDistance = Double.MAX_VALUE;
+        return getClosestCollision(trajectory.start().getX(), trajectory.start().getY(),
+                trajectory.end().getX(), trajectory.end().getY());
+    }
 
-        // Iterate over all collidable objects
-        for (Collidable collidable : collidables) {
-            // Get the collision rectangle of the collidable object
-            Rectangle rect = collidable.getCollisionRectangle();
+    /**
+     * Finds the closest collision point between a trajectory, given by its end points, and any collidable object
+     * in the environment. The search itself does not allocate; only the returned collision information is created.
+     *
+     * @param x0 the x-coordinate of the start of the trajectory
+     * @param y0 the y-coordinate of the start of the trajectory
+     * @param x1 the x-coordinate of the end of the trajectory
+     * @param y1 the y-coordinate of the end of the trajectory
+     * @return the collision information of the closest collision, or null if no collision occurs
+     */
+    public CollisionInfo getClosestCollision(double x0, double y0, double x1, double y1) {
+        this.queryCount.increment();
+        int closestId = closestHit(x0, y0, x1, y1, 0, false);
+        if (closestId < 0) {
+            return null;
+        }
+        BrickField field = this.fields[closestId];
+        if (field != null) {
+            int cell = field.firstHitCell(x0, y0, x1, y1, 0);
+            return new CollisionInfo(field.cellHitPoint(cell, x0, y0, x1, y1), field.brick(cell));
+        }
+        Point closestPoint = Line.closestHitPoint(x0, y0, x1, y1, this.boxes, closestId * 4);
+        return new CollisionInfo(closestPoint, this.collidables.get(closestId));
+    }
 
-            // Find the closest intersection point between the trajectory line and the collision rectangle
-            Point closestPoint = trajectory.closestIntersectionToStartOfLine(rect);
+    /**
+     * Finds the first collidable object hit by a moving circle, such as a ball during one step.
+     * The circle is swept continuously from its start to its end position, so it cannot tunnel through thin
+     * collidables however fast it moves. A circle starting inside a collidable, such as a ball inside the arena,
+     * hits it when it reaches its inner side. The search itself does not allocate; only the returned collision
+     * information is created.
+     *
+     * @param x0     the x-coordinate of the center of the circle at the start of the move
+     * @param y0     the y-coordinate of the center of the circle at the start of the move
+     * @param x1     the x-coordinate of the center of the circle at the end of the move
+     * @param y1     the y-coordinate of the center of the circle at the end of the move
+     * @param radius the radius of the circle
+     * @return the collision information of the first collision, with the point where the circle touches the
+     *         collidable, or null if no collision occurs
+     */
+    public CollisionInfo getClosestSweptCollision(double x0, double y0, double x1, double y1, double radius) {
+        this.queryCount.increment();
+        int closestId = closestHit(x0, y0, x1, y1, radius, true);
+        if (closestId < 0) {
+            return null;
+        }
+        // Trace a field again for the brick that was hit, which the search does not keep
+        BrickField field = this.fields[closestId];
+        int cell = field == null ? -1 : field.firstHitCell(x0, y0, x1, y1, radius);
+        return sweptCollisionInfo(closestId, cell, x0, y0, x1, y1, radius);
+    }
 
-            // If an intersection point is found
-            if (closestPoint != null) {
-                // Calculate the distance between the start point of the trajectory line and the intersection point
-                double distance = trajectory.start().distance(closestPoint);
+    /**
+     * Finds the first collidable hit by each of a range of moving circles, such as the balls during one tick, and
+     * records it in the batch with the time of the hit. Gives the same answers as
+     * {@link #getClosestSweptCollision(double, double, double, double, double)} for every move, but creates no
+     * object at all; {@link #collisionOf(CollisionBatch, int)} gives the full collision of a move that hit
+     * something. Short moves are tested against the packed cells with {@link VectorSweep} when they are in use, a
+     * chunk of collidables at a time; longer ones, and all moves otherwise, are searched one at a time.
+     *
+     * @param batch the moves, which receive their answers
+     * @param from  the index of the first move to answer
+     * @param to    the index after the last move to answer
+     */
+    public void findSweptCollisions(CollisionBatch batch, int from, int to) {
+        this.queryCount.add(to - from);
+        boolean vectorized = packedCurrent() && this.looseFits;
+        for (int i = from; i < to; i++) {
+            double x0 = batch.getStartX(i);
+            double y0 = batch.getStartY(i);
+            double x1 = batch.getEndX(i);
+            double y1 = batch.getEndY(i);
+            double radius = batch.getRadius(i);
+            boolean packedHit = vectorized && VectorSweep.closestHit(this.packed, batch, i);
+            int id = packedHit ? closestField(batch, i) : closestHit(x0, y0, x1, y1, radius, true);
+            BrickField field = id < 0 ? null : this.fields[id];
+            if (id < 0) {
+                batch.setHit(i, CollisionBatch.NO_HIT, Double.NaN);
+            } else if (field == null) {
+                // The packed cells already recorded the exact time of a hit that is not on a field
+                if (!packedHit) {
+                    batch.setHit(i, id, hitParameter(x0, y0, x1, y1, radius, true, id));
+                }
+            } else {
+                // Keep the brick, which may be broken by another move before the hit is delivered
+                int cell = field.firstHitCell(x0, y0, x1, y1, radius);
+                batch.setHit(i, id, field.cellHitParameter(cell, x0, y0, x1, y1, radius));
+                batch.setPart(i, cell);
+            }
+        }
+    }
 
-                // Update the closest collision information if the distance is smaller than the current closest distance
-                if (distance < closestDistance) {
-                    closestDistance = distance;
-                    closestCollision = new CollisionInfo(closestPoint, collidable);
+    /**
+     * Returns the collision of a move answered by {@link #findSweptCollisions(CollisionBatch, int, int)}.
+     * Must be called before the environment is next refreshed, while the ids in the batch still hold.
+     *
+     * @param batch the answered moves
+     * @param index the index of the move
+     * @return the collision information of the first collision, with the point where the circle touches the
+     *         collidable, or null if the move hits nothing
+     */
+    public CollisionInfo collisionOf(CollisionBatch batch, int index) {
+        int id = batch.getHit(index);
+        if (id == CollisionBatch.NO_HIT) {
+            return null;
+        }
+        return sweptCollisionInfo(id, batch.getPart(index), batch.getStartX(index), batch.getStartY(index),
+                batch.getEndX(index), batch.getEndY(index), batch.getRadius(index));
+    }
+
+    /**
+     * Delivers the hit of a move answered by {@link #findSweptCollisions(CollisionBatch, int, int)} to the
+     * collidable it hit, without creating any object: the point where the circle touches the collidable is
+     * recorded in the batch, and the collidable changes the velocity in place, as
+     * {@link Collidable#hit(double, double, Velocity)} does. Gives the same point and velocity as a hit through
+     * {@link #collisionOf(CollisionBatch, int)}. Must be called from a single thread, before the environment is next
+     * refreshed.
+     *
+     * @param batch    the answered moves
+     * @param index    the index of the move
+     * @param velocity the velocity of the moving circle, changed to its velocity after the hit
+     * @return true if the move hit a collidable, false if it hits nothing and the velocity is unchanged
+     */
+    public boolean deliverHit(CollisionBatch batch, int index, Velocity velocity) {
+        int id = batch.getHit(index);
+        if (id == CollisionBatch.NO_HIT) {
+            return false;
+        }
+        BrickField field = this.fields[id];
+        if (field != null) {
+            int cell = batch.getPart(index);
+            field.copyCellBounds(cell, this.cellBounds, 0);
+            Rectangle.sweptCircleContact(this.cellBounds, 0, batch, index);
+            field.hitCell(cell, batch.getContactX(index), batch.getContactY(index), velocity);
+        } else {
+            Rectangle.sweptCircleContact(this.boxes, id * 4, batch, index);
+            this.collidables.get(id).hit(batch.getContactX(index), batch.getContactY(index), velocity);
+        }
+        return true;
+    }
+
+    /**
+     * Creates the collision information of a moving circle that hits a collidable.
+     *
+     * @param id     the id of the collidable hit first
+     * @param cell   the cell of the brick hit, if the collidable is a brick field
+     * @param x0     the x-coordinate of the center of the circle at the start of the move
+     * @param y0     the y-coordinate of the center of the circle at the start of the move
+     * @param x1     the x-coordinate of the center of the circle at the end of the move
+     * @param y1     the y-coordinate of the center of the circle at the end of the move
+     * @param radius the radius of the circle
+     * @return the collision information, with the point where the circle touches the collidable
+     */
+    private CollisionInfo sweptCollisionInfo(int id, int cell, double x0, double y0, double x1, double y1,
+                                             double radius) {
+        BrickField field = this.fields[id];
+        if (field != null) {
+            return new CollisionInfo(field.cellContactPoint(cell, x0, y0, x1, y1, radius), field.brick(cell));
+        }
+        return new CollisionInfo(Rectangle.sweptCircleContactPoint(this.boxes, id * 4, x0, y0, x1, y1, radius),
+                this.collidables.get(id));
+    }
+
+    /**
+     * Finds the collidable hit first by a trajectory or by a moving circle.
+     * When several collidables are hit at the same time, the one added first wins.
+     *
+     * @param x0     the x-coordinate of the start of the move
+     * @param y0     the y-coordinate of the start of the move
+     * @param x1     the x-coordinate of the end of the move
+     * @param y1     the y-coordinate of the end of the move
+     * @param radius the radius of the moving circle; ignored for a trajectory
+     * @param swept  true to sweep a circle, false to test the trajectory line
+     * @return the id of the collidable hit first, or -1 if no collision occurs
+     */
+    private int closestHit(double x0, double y0, double x1, double y1, double radius, boolean swept) {
+        double closestT = Double.MAX_VALUE;
+        int closestId = -1;
+        double margin = swept ? radius : 0;
+        double minX = Math.min(x0, x1) - margin;
+        double minY = Math.min(y0, y1) - margin;
+        double maxX = Math.max(x0, x1) + margin;
+        double maxY = Math.max(y0, y1) + margin;
+
+        if (this.grid.cellsTouched(minX, minY, maxX, maxY) > this.collidables.size()) {
+            // A very long move touches more cells than there are collidables, so just test them all
+            for (int id = 0; id < this.collidables.size(); id++) {
+                if (!this.indexed[id] || this.removed[id] || misses(id, minX, minY, maxX, maxY)) {
+                    continue;
+                }
+                double t = hitParameter(x0, y0, x1, y1, radius, swept, id);
+                if (t < closestT || (t == closestT && this.addOrder[id] < this.addOrder[closestId])) {
+                    closestT = t;
+                    closestId = id;
+                }
+            }
+        } else {
+            int firstQueryColumn = this.grid.cellOf(minX);
+            int firstQueryRow = this.grid.cellOf(minY);
+            int lastColumn = this.grid.cellOf(maxX);
+            int lastRow = this.grid.cellOf(maxY);
+            for (int column = firstQueryColumn; column <= lastColumn; column++) {
+                for (int row = firstQueryRow; row <= lastRow; row++) {
+                    int cell = this.grid.cell(column, row);
+                    if (cell < 0) {
+                        continue;
+                    }
+                    int[] items = this.grid.items(cell);
+                    int count = this.grid.count(cell);
+                    for (int i = 0; i < count; i++) {
+                        int id = items[i];
+                        // A collidable spanning several cells is only tested in the first cell it shares with
+                        // the query, which avoids testing it twice without any per-query bookkeeping
+                        if (column != Math.max(this.firstColumn[id], firstQueryColumn)
+                                || row != Math.max(this.firstRow[id], firstQueryRow)
+                                || misses(id, minX, minY, maxX, maxY)) {
+                            continue;
+                        }
+                        double t = hitParameter(x0, y0, x1, y1, radius, swept, id);
+                        if (t < closestT || (t == closestT && this.addOrder[id] < this.addOrder[closestId])) {
+                            closestT = t;
+                            closestId = id;
+                        }
+                    }
+                }
+            }
+        }
+
+        // Walk the tree without a stack, using parent links to tell whether a node is entered from above or
+        // returned to from one of its children. Subtrees whose box is only reached after the closest hit found
+        // so far are skipped; ties are still visited, so the tie-break holds.
+        DynamicAabbTree bvh = this.tree;
+        int node = bvh.root();
+        int previous = DynamicAabbTree.NULL_NODE;
+        while (node != DynamicAabbTree.NULL_NODE) {
+            int parent = bvh.parent(node);
+            if (previous == parent) {
+                if (!(bvh.entry(node, x0, y0, x1, y1, margin) <= closestT)) {
+                    previous = node;
+                    node = parent;
+                } else if (bvh.isLeaf(node)) {
+                    int id = bvh.item(node);
+                    double t = hitParameter(x0, y0, x1, y1, radius, swept, id);
+                    if (t < closestT || (t == closestT && this.addOrder[id] < this.addOrder[closestId])) {
+                        closestT = t;
+                        closestId = id;
+                    }
+                    previous = node;
+                    node = parent;
+                } else {
+                    previous = node;
+                    node = bvh.child1(node);
                 }
+            } else if (previous == bvh.child1(node)) {
+                previous = node;
+                node = bvh.child2(node);
+            } else {
+                previous = node;
+                node = parent;
             }
         }
-        return closestCollision;
+        return closestId;
+    }
+
+    /**
+     * Finds the collidable hit first by a move of a batch whose hit among the packed cells was already recorded,
+     * by testing the brick fields, which the cells leave out, against that hit.
+     *
+     * @param batch the moves, with the hit of the move among the packed cells
+     * @param index the index of the move
+     * @return the id of the collidable hit first, or -1 if no collision occurs
+     */
+    private int closestField(CollisionBatch batch, int index) {
+        int closestId = batch.getHit(index);
+        double closestT = closestId == CollisionBatch.NO_HIT ? Double.MAX_VALUE : batch.getTime(index);
+        double x0 = batch.getStartX(index);
+        double y0 = batch.getStartY(index);
+        double x1 = batch.getEndX(index);
+        double y1 = batch.getEndY(index);
+        double radius = batch.getRadius(index);
+        double minX = Math.min(x0, x1) - radius;
+        double minY = Math.min(y0, y1) - radius;
+        double maxX = Math.max(x0, x1) + radius;
+        double maxY = Math.max(y0, y1) + radius;
+        for (int i = 0; i < this.fieldCount; i++) {
+            int id = this.fieldIds[i];
+            if (misses(id, minX, minY, maxX, maxY)) {
+                continue;
+            }
+            double t = hitParameter(x0, y0, x1, y1, radius, true, id);
+            if (t < closestT || (t == closestT && this.addOrder[id] < this.addOrder[closestId])) {
+                closestT = t;
+                closestId = id;
+            }
+        }
+        return closestId;
+    }
+
+    /**
+     * Checks whether a collidable lies outside the bounding box of a query, which it then cannot hit. This costs
+     * four comparisons on the packed bounds, while the exact test divides, so it is done first.
+     *
+     * @param id   the id of the collidable
+     * @param minX the left of the bounding box of the query
+     * @param minY the top of the bounding box of the query
+     * @param maxX the right of the bounding box of the query
+     * @param maxY the bottom of the bounding box of the query
+     * @return true if the collidable is outside the box, false if it may be hit
+     */
+    private boolean misses(int id, double minX, double minY, double maxX, double maxY) {
+        int offset = id * 4;
+        double[] bounds = this.boxes;
+        return bounds[offset] > maxX || bounds[offset + 1] > maxY || bounds[offset + 2] < minX
+                || bounds[offset + 3] < minY;
+    }
+
+    /**
+     * Returns the number of collision queries made so far.
+     *
+     * @return the number of collision queries
+     */
+    public long getCollisionQueryCount() {
+        return this.queryCount.sum();
+    }
+
+    /**
+     * Tests a trajectory or a moving circle against a single collidable.
+     *
+     * @param x0     the x-coordinate of the start of the move
+     * @param y0     the y-coordinate of the start of the move
+     * @param x1     the x-coordinate of the end of the move
+     * @param y1     the y-coordinate of the end of the move
+     * @param radius the radius of the moving circle; ignored for a trajectory
+     * @param swept  true to sweep a circle, false to test the trajectory line
+     * @param id     the id of the collidable to test
+     * @return the parameter of the hit along the move, or NaN if the move misses the collidable
+     */
+    private double hitParameter(double x0, double y0, double x1, double y1, double radius, boolean swept, int id) {
+        BrickField field = this.fields[id];
+        if (field != null) {
+            double r = swept ? radius : 0;
+            int cell = field.firstHitCell(x0, y0, x1, y1, r);
+            return cell < 0 ? Double.NaN : field.cellHitParameter(cell, x0, y0, x1, y1, r);
+        }
+        if (swept) {
+            return Rectangle.sweptCircleHitParameter(this.boxes, id * 4, x0, y0, x1, y1, radius);
+        }
+        return Line.closestHitParameter(x0, y0, x1, y1, this.boxes, id * 4);
     }
 }
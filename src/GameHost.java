@@ -0,0 +1,154 @@
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The GameHost class runs many independent headless games, its sessions, in one JVM on a small pool of shared
+ * worker threads, such as for automated playtesting or for evaluating bots. Every session has a game of its own,
+ * with its own environment and sprites, so sessions never share state.
+ * <p>
+ * Instead of a thread per session, the host time-slices: a worker runs a session for one slice of at most a fixed
+ * number of ticks, and then puts it at the back of a single first-in first-out queue of waiting sessions. Every
+ * waiting session thus runs one slice before any session runs two, so all sessions advance at the same rate in
+ * ticks however many there are, and a session waiting for its slice holds no thread and no stack, only its game.
+ * Games are run with {@link Game#advance(long)}, which draws nothing, so a session never holds a rendered image.
+ * <p>
+ * A session ends once it ran its budget of ticks, when the input log of its game runs out, when it is cancelled,
+ * or when its game throws; a failing game only ends its own session.
+ */
+public class GameHost implements AutoCloseable {
+    private final int sliceTicks;
+    private final ThreadPoolExecutor workers;
+    private int activeSessions;
+
+    /**
+     * Constructs a GameHost with a worker per available processor, running sessions in slices of 60 ticks.
+     */
+    public GameHost() {
+        this(Runtime.getRuntime().availableProcessors(), 60);
+    }
+
+    /**
+     * Constructs a GameHost.
+     *
+     * @param threads    the number of worker threads
+     * @param sliceTicks the number of ticks a session runs before the next session gets its turn
+     */
+    public GameHost(int threads, int sliceTicks) {
+        if (threads < 1 || sliceTicks < 1) {
+            throw new IllegalArgumentException("a game host needs at least one thread and one tick per slice");
+        }
+        this.sliceTicks = sliceTicks;
+        AtomicInteger workerCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread worker = new Thread(runnable, "game-host-" + workerCount.incrementAndGet());
+                    worker.setDaemon(true);
+                    return worker;
+                });
+    }
+
+    /**
+     * Adds a session running the given game, which gets its first slice after every session already waiting.
+     *
+     * @param game       the game to run, already initialized with {@link Game#initializeHeadless()}; it must not be
+     *                   touched until its session ended
+     * @param tickBudget the number of ticks the session may run
+     * @return the session
+     * @throws IllegalStateException if the host was closed
+     */
+    public GameSession submit(Game game, long tickBudget) {
+        GameSession session = new GameSession(this, game, tickBudget);
+        synchronized (this) {
+            if (this.workers.isShutdown()) {
+                throw new IllegalStateException("the game host is closed");
+            }
+            this.activeSessions++;
+        }
+        if (tickBudget <= 0) {
+            end(session, GameSession.State.FINISHED);
+        } else {
+            requeue(session);
+        }
+        return session;
+    }
+
+    /**
+     * Returns the number of ticks a session runs in one slice.
+     *
+     * @return the ticks per slice
+     */
+    public int getSliceTicks() {
+        return this.sliceTicks;
+    }
+
+    /**
+     * Returns the number of sessions that did not end yet.
+     *
+     * @return the number of active sessions
+     */
+    public synchronized int getActiveSessions() {
+        return this.activeSessions;
+    }
+
+    /**
+     * Waits until every session submitted so far ended.
+     *
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public synchronized void awaitAll() throws InterruptedException {
+        while (this.activeSessions > 0) {
+            wait();
+        }
+    }
+
+    /**
+     * Closes the host: the sessions waiting for a slice are cancelled, the slices already running are finished,
+     * and their sessions are cancelled as well. No session can be submitted afterwards.
+     */
+    @Override
+    public void close() {
+        List<Runnable> waiting;
+        synchronized (this) {
+            waiting = this.workers.shutdownNow();
+        }
+        for (Runnable session : waiting) {
+            end((GameSession) session, GameSession.State.CANCELLED);
+        }
+        try {
+            this.workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Puts a session at the back of the queue of sessions waiting for a slice, or cancels it if the host was closed.
+     *
+     * @param session the session
+     */
+    void requeue(GameSession session) {
+        try {
+            this.workers.execute(session);
+        } catch (RejectedExecutionException e) {
+            end(session, GameSession.State.CANCELLED);
+        }
+    }
+
+    /**
+     * Ends a session in the given state.
+     *
+     * @param session  the session
+     * @param endState the state the session ended in
+     */
+    void end(GameSession session, GameSession.State endState) {
+        session.end(endState);
+        synchronized (this) {
+            this.activeSessions--;
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,317 @@
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The GameMetrics class records how long each phase of a frame takes: drawing the sprites, showing the frame
+ * and advancing the sprites by a tick. It also records how many collision queries each tick makes and how fast
+ * the ticks allocate, measured around every slice of ticks on the thread that runs it.
+ * Values are collected in one-second windows. At the end of a window its percentiles are published to volatile
+ * fields, which the on-screen overlay and JMX read from any thread while the loop collects the next window.
+ * Recording only does arithmetic and never allocates. Recording must happen on one thread at a time, but a game
+ * whose slices run on different threads, such as in a {@link GameHost}, may record from each of them.
+ */
+public class GameMetrics implements GameMetricsMBean {
+    private static final long WINDOW_NANOS = 1000000000L;
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    private final GameEnvironment environment;
+    private final LatencyHistogram draw = new LatencyHistogram();
+    private final LatencyHistogram show = new LatencyHistogram();
+    private final LatencyHistogram tick = new LatencyHistogram();
+    private final LatencyHistogram runTicks = new LatencyHistogram();
+    private long runQueries;
+    private final com.sun.management.ThreadMXBean threads;
+    private long windowStart;
+    private long sliceStartAllocatedBytes = -1;
+    private long windowAllocatedBytes;
+    private long windowQueries;
+    private long windowMaxQueries;
+    private long lastQueryCount;
+
+    private final long[][] publishBuffers = new long[2][9];
+    private volatile long[] published = this.publishBuffers[0];
+    private volatile double ticksPerSecond;
+    private volatile double queriesPerTick;
+    private volatile long maxQueriesPerTick;
+    private volatile double allocatedBytesPerSecond;
+
+    /**
+     * Constructs GameMetrics counting the collision queries of the given environment.
+     *
+     * @param environment the game environment whose collision queries are counted
+     */
+    public GameMetrics(GameEnvironment environment) {
+        this.environment = environment;
+        this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        this.windowStart = System.nanoTime();
+        this.lastQueryCount = environment.getCollisionQueryCount();
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, so JMX clients such as JConsole can read them.
+     * Metrics registered earlier under the same name are replaced.
+     *
+     * @param name the name to register the metrics under, such as "Arkanoid"
+     */
+    public void registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName("arkanoid:type=GameMetrics,name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                // A game whose world was replaced, such as by loading a saved state, registers its new metrics
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            System.err.println("Could not register the game metrics with JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts a slice of ticks on the calling thread, which must also run the ticks and end the slice.
+     * What the thread allocates until the slice ends is counted as allocated by the ticks.
+     */
+    public void beginSlice() {
+        this.sliceStartAllocatedBytes = this.threads.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Ends the slice of ticks started on the calling thread by {@link #beginSlice()}.
+     */
+    public void endSlice() {
+        countSliceAllocations();
+        this.sliceStartAllocatedBytes = -1;
+    }
+
+    /**
+     * Adds what the calling thread allocated since the slice started, or since this was last called, to the
+     * current window.
+     */
+    private void countSliceAllocations() {
+        if (this.sliceStartAllocatedBytes < 0) {
+            return;
+        }
+        long allocatedBytes = this.threads.getCurrentThreadAllocatedBytes();
+        this.windowAllocatedBytes += allocatedBytes - this.sliceStartAllocatedBytes;
+        this.sliceStartAllocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * Records the time spent drawing the sprites of a frame.
+     *
+     * @param nanos the time spent, in nanoseconds
+     */
+    public void recordDraw(long nanos) {
+        this.draw.record(nanos);
+    }
+
+    /**
+     * Records the time spent showing a frame on the GUI.
+     *
+     * @param nanos the time spent, in nanoseconds
+     */
+    public void recordShow(long nanos) {
+        this.show.record(nanos);
+    }
+
+    /**
+     * Records the time spent on a tick, along with the collision queries made since the previous tick.
+     * Closes the current window once it is a second old.
+     *
+     * @param nanos the time spent, in nanoseconds
+     */
+    public void recordTick(long nanos) {
+        this.tick.record(nanos);
+        this.runTicks.record(nanos);
+        long queryCount = this.environment.getCollisionQueryCount();
+        long queries = queryCount - this.lastQueryCount;
+        this.lastQueryCount = queryCount;
+        this.runQueries += queries;
+        this.windowQueries += queries;
+        this.windowMaxQueries = Math.max(this.windowMaxQueries, queries);
+
+        long now = System.nanoTime();
+        if (now - this.windowStart >= WINDOW_NANOS) {
+            closeWindow(now);
+        }
+    }
+
+    /**
+     * Returns the times of all ticks recorded since the metrics were created or the run was last reset. Unlike the
+     * published values, these are not cut into windows. Must only be read on the game loop thread.
+     *
+     * @return the tick times of the run, in nanoseconds
+     */
+    public LatencyHistogram getRunTicks() {
+        return this.runTicks;
+    }
+
+    /**
+     * Returns the number of collision queries made by the ticks of the run.
+     *
+     * @return the number of collision queries
+     */
+    public long getRunCollisionQueries() {
+        return this.runQueries;
+    }
+
+    /**
+     * Returns the median tick time of the run. Unlike {@link #getTickP50Micros()}, it includes the ticks of a window
+     * that has not closed yet, so a run shorter than a window does not report zero. Must only be read on the game
+     * loop thread, like the other run values.
+     *
+     * @return the median tick time of the run, in microseconds
+     */
+    public double getRunTickP50Micros() {
+        return this.runTicks.getPercentile(50) / NANOS_PER_MICRO;
+    }
+
+    /**
+     * Returns the 99th percentile of the tick times of the run.
+     *
+     * @return the 99th percentile tick time of the run, in microseconds
+     */
+    public double getRunTickP99Micros() {
+        return this.runTicks.getPercentile(99) / NANOS_PER_MICRO;
+    }
+
+    /**
+     * Returns the longest tick time of the run.
+     *
+     * @return the longest tick time of the run, in microseconds
+     */
+    public double getRunTickMaxMicros() {
+        return this.runTicks.getMax() / NANOS_PER_MICRO;
+    }
+
+    /**
+     * Returns the average number of collision queries made by a tick of the run.
+     *
+     * @return the collision queries per tick of the run, or 0 if no tick was recorded
+     */
+    public double getRunCollisionQueriesPerTick() {
+        long ticks = this.runTicks.getCount();
+        return ticks == 0 ? 0 : (double) this.runQueries / ticks;
+    }
+
+    /**
+     * Starts a new run, such as after a warm-up, forgetting the ticks and collision queries of the previous one.
+     */
+    public void resetRun() {
+        this.runTicks.reset();
+        this.runQueries = 0;
+    }
+
+    /**
+     * Publishes the values of the current window and starts a new one.
+     *
+     * @param now the current time, from {@link System#nanoTime()}
+     */
+    private void closeWindow(long now) {
+        double seconds = (now - this.windowStart) / 1e9;
+        countSliceAllocations();
+        this.allocatedBytesPerSecond = this.windowAllocatedBytes / seconds;
+
+        long ticks = this.tick.getCount();
+        this.ticksPerSecond = ticks / seconds;
+        this.queriesPerTick = ticks == 0 ? 0 : (double) this.windowQueries / ticks;
+        this.maxQueriesPerTick = this.windowMaxQueries;
+        // Fill the buffer readers are not looking at, then hand it to them in one volatile write
+        long[] values = this.published == this.publishBuffers[0] ? this.publishBuffers[1] : this.publishBuffers[0];
+        values[0] = this.draw.getPercentile(50);
+        values[1] = this.draw.getPercentile(99);
+        values[2] = this.draw.getMax();
+        values[3] = this.show.getPercentile(50);
+        values[4] = this.show.getPercentile(99);
+        values[5] = this.show.getMax();
+        values[6] = this.tick.getPercentile(50);
+        values[7] = this.tick.getPercentile(99);
+        values[8] = this.tick.getMax();
+        this.published = values;
+
+        this.draw.reset();
+        this.show.reset();
+        this.tick.reset();
+        this.windowQueries = 0;
+        this.windowMaxQueries = 0;
+        this.windowAllocatedBytes = 0;
+        this.windowStart = now;
+    }
+
+    /**
+     * Returns a published value in microseconds.
+     *
+     * @param index the index of the value
+     * @return the value, in microseconds
+     */
+    private double publishedMicros(int index) {
+        return this.published[index] / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getDrawP50Micros() {
+        return publishedMicros(0);
+    }
+
+    @Override
+    public double getDrawP99Micros() {
+        return publishedMicros(1);
+    }
+
+    @Override
+    public double getDrawMaxMicros() {
+        return publishedMicros(2);
+    }
+
+    @Override
+    public double getShowP50Micros() {
+        return publishedMicros(3);
+    }
+
+    @Override
+    public double getShowP99Micros() {
+        return publishedMicros(4);
+    }
+
+    @Override
+    public double getShowMaxMicros() {
+        return publishedMicros(5);
+    }
+
+    @Override
+    public double getTickP50Micros() {
+        return publishedMicros(6);
+    }
+
+    @Override
+    public double getTickP99Micros() {
+        return publishedMicros(7);
+    }
+
+    @Override
+    public double getTickMaxMicros() {
+        return publishedMicros(8);
+    }
+
+    @Override
+    public double getTicksPerSecond() {
+        return this.ticksPerSecond;
+    }
+
+    @Override
+    public double getCollisionQueriesPerTick() {
+        return this.queriesPerTick;
+    }
+
+    @Override
+    public long getMaxCollisionQueriesPerTick() {
+        return this.maxQueriesPerTick;
+    }
+
+    @Override
+    public double getAllocatedBytesPerSecond() {
+        return this.allocatedBytesPerSecond;
+    }
+}
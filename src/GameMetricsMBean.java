@@ -0,0 +1,71 @@
+/**
+ * The GameMetricsMBean interface is the JMX view of {@link GameMetrics}.
+ * Every value describes the last completed one-second window.
+ */
+public interface GameMetricsMBean {
+
+    /**
+     * @return the median time spent drawing the sprites, in microseconds
+     */
+    double getDrawP50Micros();
+
+    /**
+     * @return the 99th percentile of the time spent drawing the sprites, in microseconds
+     */
+    double getDrawP99Micros();
+
+    /**
+     * @return the longest time spent drawing the sprites, in microseconds
+     */
+    double getDrawMaxMicros();
+
+    /**
+     * @return the median time spent showing a frame on the GUI, in microseconds
+     */
+    double getShowP50Micros();
+
+    /**
+     * @return the 99th percentile of the time spent showing a frame on the GUI, in microseconds
+     */
+    double getShowP99Micros();
+
+    /**
+     * @return the longest time spent showing a frame on the GUI, in microseconds
+     */
+    double getShowMaxMicros();
+
+    /**
+     * @return the median time spent advancing the sprites by one tick, in microseconds
+     */
+    double getTickP50Micros();
+
+    /**
+     * @return the 99th percentile of the time spent advancing the sprites by one tick, in microseconds
+     */
+    double getTickP99Micros();
+
+    /**
+     * @return the longest time spent advancing the sprites by one tick, in microseconds
+     */
+    double getTickMaxMicros();
+
+    /**
+     * @return the number of ticks per second
+     */
+    double getTicksPerSecond();
+
+    /**
+     * @return the average number of collision queries per tick
+     */
+    double getCollisionQueriesPerTick();
+
+    /**
+     * @return the largest number of collision queries in a single tick
+     */
+    long getMaxCollisionQueriesPerTick();
+
+    /**
+     * @return the number of bytes allocated per second while running the ticks, on whichever thread ran them
+     */
+    double getAllocatedBytesPerSecond();
+}
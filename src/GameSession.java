@@ -0,0 +1,151 @@
+/**
+ * The GameSession class is one headless game run by a {@link GameHost}, with a budget of ticks it may run.
+ * The host runs the session a slice of ticks at a time on one of its workers; between slices the session holds
+ * no thread, only its game. A session is confined to one worker at a time, so its game needs no locking, and its
+ * state can be read from any thread: the number of ticks it ran is updated after every slice.
+ */
+public class GameSession implements Runnable {
+    /**
+     * The state of a session.
+     */
+    public enum State {
+        /**
+         * The session is waiting for or running its next slice.
+         */
+        RUNNING,
+        /**
+         * The session ran its whole budget of ticks, or its input log ran out.
+         */
+        FINISHED,
+        /**
+         * The session was cancelled, or its host was closed, before it finished.
+         */
+        CANCELLED,
+        /**
+         * The game of the session threw an exception, which ended the session.
+         */
+        FAILED
+    }
+
+    private final GameHost host;
+    private final Game game;
+    private final long tickBudget;
+    private volatile long ticksRun;
+    private volatile State state = State.RUNNING;
+    private volatile boolean cancelRequested;
+    private volatile Throwable failure;
+
+    /**
+     * Constructs a GameSession. Sessions are created by {@link GameHost#submit(Game, long)}.
+     *
+     * @param host       the host running the session
+     * @param game       the game of the session, already initialized headless
+     * @param tickBudget the number of ticks the session may run
+     */
+    GameSession(GameHost host, Game game, long tickBudget) {
+        this.host = host;
+        this.game = game;
+        this.tickBudget = tickBudget;
+    }
+
+    /**
+     * Runs the next slice of the session on the calling worker, then hands the session back to the host, which
+     * queues it behind every other waiting session or ends it. Called by the workers of the host only.
+     */
+    @Override
+    public void run() {
+        if (this.cancelRequested) {
+            this.host.end(this, State.CANCELLED);
+            return;
+        }
+        long slice = Math.min(this.host.getSliceTicks(), this.tickBudget - this.ticksRun);
+        long ran;
+        try {
+            ran = this.game.advance(slice);
+        } catch (RuntimeException | Error e) {
+            this.failure = e;
+            this.host.end(this, State.FAILED);
+            return;
+        }
+        this.ticksRun += ran;
+        if (ran < slice || this.ticksRun >= this.tickBudget) {
+            this.host.end(this, State.FINISHED);
+        } else {
+            this.host.requeue(this);
+        }
+    }
+
+    /**
+     * Asks the session to stop. It ends before its next slice; a slice already running is finished first.
+     */
+    public void cancel() {
+        this.cancelRequested = true;
+    }
+
+    /**
+     * Waits until the session ended.
+     *
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public synchronized void await() throws InterruptedException {
+        while (this.state == State.RUNNING) {
+            wait();
+        }
+    }
+
+    /**
+     * Ends the session in the given state and wakes up the threads waiting for it. Called by the host only.
+     *
+     * @param endState the state the session ended in
+     */
+    synchronized void end(State endState) {
+        this.state = endState;
+        notifyAll();
+    }
+
+    /**
+     * Returns the game of the session. It must only be read while the session is not running, such as after it
+     * ended.
+     *
+     * @return the game
+     */
+    public Game getGame() {
+        return this.game;
+    }
+
+    /**
+     * Returns the number of ticks the session may run.
+     *
+     * @return the tick budget
+     */
+    public long getTickBudget() {
+        return this.tickBudget;
+    }
+
+    /**
+     * Returns the number of ticks the session ran so far, as of its last slice.
+     *
+     * @return the number of ticks run
+     */
+    public long getTicksRun() {
+        return this.ticksRun;
+    }
+
+    /**
+     * Returns the state of the session.
+     *
+     * @return the state
+     */
+    public State getState() {
+        return this.state;
+    }
+
+    /**
+     * Returns the exception that ended a failed session.
+     *
+     * @return the exception thrown by the game, or null if the session did not fail
+     */
+    public Throwable getFailure() {
+        return this.failure;
+    }
+}
@@ -0,0 +1,102 @@
+import biuoop.DrawSurface;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.Polygon;
+
+/**
+ * The GraphicsDrawSurface class is a DrawSurface that draws directly on a {@link Graphics}, such as the
+ * graphics of an off-screen image. Shapes are drawn the same way the GUI draws them.
+ */
+public class GraphicsDrawSurface implements DrawSurface {
+    private final Graphics g;
+    private final int width;
+    private final int height;
+
+    /**
+     * Constructs a GraphicsDrawSurface drawing on the given graphics.
+     *
+     * @param g      the graphics to draw on
+     * @param width  the width of the surface
+     * @param height the height of the surface
+     */
+    public GraphicsDrawSurface(Graphics g, int width, int height) {
+        this.g = g;
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    @Override
+    public void setColor(Color color) {
+        this.g.setColor(color);
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        this.g.drawLine(x1, y1, x2, y2);
+    }
+
+    @Override
+    public void drawOval(int x, int y, int w, int h) {
+        this.g.drawOval(x, y, w, h);
+    }
+
+    @Override
+    public void fillOval(int x, int y, int w, int h) {
+        this.g.fillOval(x, y, w, h);
+    }
+
+    @Override
+    public void drawRectangle(int x, int y, int w, int h) {
+        this.g.drawRect(x, y, w, h);
+    }
+
+    @Override
+    public void fillRectangle(int x, int y, int w, int h) {
+        this.g.fillRect(x, y, w, h);
+    }
+
+    @Override
+    public void drawImage(int x, int y, Image image) {
+        this.g.drawImage(image, x, y, null);
+    }
+
+    @Override
+    public void drawCircle(int x, int y, int r) {
+        this.g.drawOval(x - r, y - r, 2 * r, 2 * r);
+    }
+
+    @Override
+    public void fillCircle(int x, int y, int r) {
+        this.g.fillOval(x - r, y - r, 2 * r, 2 * r);
+    }
+
+    @Override
+    public void drawText(int x, int y, String s, int fontSize) {
+        Font font = this.g.getFont();
+        this.g.setFont(new Font(font.getFontName(), font.getStyle(), fontSize));
+        this.g.drawString(s, x, y);
+    }
+
+    @Override
+    public void drawPolygon(Polygon polygon) {
+        this.g.drawPolygon(polygon);
+    }
+
+    @Override
+    public void fillPolygon(Polygon polygon) {
+        this.g.fillPolygon(polygon);
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.Arrays;
+
+/**
+ * The HandleTable class hands out stable int handles for items kept in a densely packed array.
+ * The array can be compacted, moving items to other slots, while the handles given out for them stay valid:
+ * the table maps every live handle to the slot its item is in, and every slot back to its handle.
+ * Handles of removed items are reused, so a handle must not be used after its item was removed.
+ */
+public class HandleTable {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] slotOfHandle;
+    private int[] handleOfSlot;
+    private int[] freeHandles;
+    private int freeCount;
+    private int handleCount;
+
+    /**
+     * Constructs an empty HandleTable.
+     */
+    public HandleTable() {
+        this.slotOfHandle = new int[INITIAL_CAPACITY];
+        this.handleOfSlot = new int[INITIAL_CAPACITY];
+        this.freeHandles = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Hands out a handle for an item stored in the given slot.
+     *
+     * @param slot the slot of the item
+     * @return the handle of the item
+     */
+    public int allocate(int slot) {
+        int handle;
+        if (this.freeCount > 0) {
+            handle = this.freeHandles[--this.freeCount];
+        } else {
+            handle = this.handleCount++;
+            if (handle == this.slotOfHandle.length) {
+                this.slotOfHandle = Arrays.copyOf(this.slotOfHandle, handle * 2);
+            }
+        }
+        if (slot >= this.handleOfSlot.length) {
+            this.handleOfSlot = Arrays.copyOf(this.handleOfSlot, Math.max(slot + 1, this.handleOfSlot.length * 2));
+        }
+        this.slotOfHandle[handle] = slot;
+        this.handleOfSlot[slot] = handle;
+        return handle;
+    }
+
+    /**
+     * Returns the slot the item of a handle is stored in.
+     *
+     * @param handle a live handle
+     * @return the slot of its item
+     */
+    public int slotOf(int handle) {
+        return this.slotOfHandle[handle];
+    }
+
+    /**
+     * Records that the item stored in one slot was moved to another.
+     *
+     * @param from the old slot of the item
+     * @param to   the new slot of the item
+     */
+    public void move(int from, int to) {
+        int handle = this.handleOfSlot[from];
+        this.handleOfSlot[to] = handle;
+        this.slotOfHandle[handle] = to;
+    }
+
+    /**
+     * Takes back the handle of an item that was removed, so it can be handed out again.
+     *
+     * @param handle the handle to release
+     */
+    public void release(int handle) {
+        if (this.freeCount == this.freeHandles.length) {
+            this.freeHandles = Arrays.copyOf(this.freeHandles, this.freeCount * 2);
+        }
+        this.freeHandles[this.freeCount++] = handle;
+    }
+}
@@ -0,0 +1,46 @@
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * HeadlessGame class that runs the game without a GUI, as fast as possible, and reports its speed.
+ */
+public class HeadlessGame {
+    /**
+     * Main method that runs the game headless.
+     * The first argument is the number of ticks to run and the second is a wall-clock budget in milliseconds;
+     * a missing or zero value means no limit, but at least one of them must be set.
+     * An optional third argument is the number of threads to update the balls on; 0 or missing runs sequentially.
+     * An optional fourth argument is a level file to run instead of the built-in level.
+     *
+     * @param args command line arguments.
+     * @throws IOException if the level cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        long ticks = args.length > 0 ? Long.parseLong(args[0]) : 0;
+        long budgetMillis = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        if (ticks <= 0 && budgetMillis <= 0) {
+            ticks = 100000;
+        }
+
+        Game game = new Game();
+        if (args.length > 3) {
+            long loadStart = System.nanoTime();
+            game.setLevel(Level.load(args[3]));
+            System.out.printf("level loaded in %.1f ms%n", (System.nanoTime() - loadStart) / 1e6);
+        }
+        game.initializeHeadless();
+        if (threads > 0) {
+            game.setParallelUpdates(new ForkJoinPool(threads));
+        }
+        long startTime = System.nanoTime();
+        long ticksRun = game.runHeadless(ticks, budgetMillis);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.printf("%d ticks in %.3f s (%.0f ticks/s)%n", ticksRun, seconds, ticksRun / seconds);
+        GameMetrics metrics = game.getMetrics();
+        // The whole run, since the last one-second window has usually not closed when it ends
+        System.out.printf("tick p50 %.1f us, p99 %.1f us, max %.1f us, %.1f collision queries/tick%n",
+                metrics.getRunTickP50Micros(), metrics.getRunTickP99Micros(), metrics.getRunTickMaxMicros(),
+                metrics.getRunCollisionQueriesPerTick());
+    }
+}
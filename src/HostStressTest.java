@@ -0,0 +1,141 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The HostStressTest class runs many headless games at once in a {@link GameHost} and reports how much memory a
+ * session takes, how many ticks the host runs per second over all sessions, and how evenly the sessions advance.
+ */
+public class HostStressTest {
+    private static final long SAMPLE_MILLIS = 50;
+
+    /**
+     * Main method that runs the sessions.
+     * Arguments are of the form name=value, and all are optional:
+     * <ul>
+     * <li>sessions: the number of sessions (default 10000)</li>
+     * <li>ticks: the tick budget of every session (default 600)</li>
+     * <li>threads: the number of worker threads (default one per available processor)</li>
+     * <li>slice: the number of ticks a session runs per slice (default 60)</li>
+     * <li>seed: the seed of the first session; the others count up from it (default 1)</li>
+     * </ul>
+     *
+     * @param args command line arguments.
+     * @throws InterruptedException if interrupted while waiting for the sessions
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int sessionCount = 10000;
+        long ticks = 600;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int slice = 60;
+        long seed = 1;
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                usage("\"" + arg + "\" is not of the form name=value");
+            }
+            String name = arg.substring(0, equals);
+            String value = arg.substring(equals + 1);
+            switch (name) {
+                case "sessions":
+                    sessionCount = Integer.parseInt(value);
+                    break;
+                case "ticks":
+                    ticks = Long.parseLong(value);
+                    break;
+                case "threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "slice":
+                    slice = Integer.parseInt(value);
+                    break;
+                case "seed":
+                    seed = Long.parseLong(value);
+                    break;
+                default:
+                    usage("unknown argument \"" + name + "\"");
+            }
+        }
+
+        // Build every game before starting, so the memory they take can be measured on its own
+        long heapBefore = usedHeap();
+        List<Game> games = new ArrayList<>(sessionCount);
+        for (int i = 0; i < sessionCount; i++) {
+            Game game = new Game();
+            game.setSeed(seed + i);
+            game.initializeHeadless();
+            games.add(game);
+        }
+        double bytesPerSession = (double) (usedHeap() - heapBefore) / sessionCount;
+
+        List<GameSession> sessions = new ArrayList<>(sessionCount);
+        long maxSpread = 0;
+        long startTime = System.nanoTime();
+        try (GameHost host = new GameHost(threads, slice)) {
+            for (Game game : games) {
+                sessions.add(host.submit(game, ticks));
+            }
+            while (host.getActiveSessions() > 0) {
+                Thread.sleep(SAMPLE_MILLIS);
+                maxSpread = Math.max(maxSpread, spread(sessions));
+            }
+            host.awaitAll();
+        }
+        double elapsed = (System.nanoTime() - startTime) / 1e9;
+
+        long totalTicks = 0;
+        int failed = 0;
+        for (GameSession session : sessions) {
+            totalTicks += session.getTicksRun();
+            if (session.getState() == GameSession.State.FAILED) {
+                failed++;
+            }
+        }
+        System.out.printf("sessions=%d ticks=%d threads=%d slice=%d: %d ticks in %.3f s, %d failed%n",
+                sessionCount, ticks, threads, slice, totalTicks, elapsed, failed);
+        System.out.printf("  %.1f KB heap per session, %.0f ticks/s over all sessions, %.2f ticks/s per session, "
+                + "largest lag between running sessions %d ticks%n", bytesPerSession / 1024, totalTicks / elapsed,
+                totalTicks / elapsed / sessionCount, maxSpread);
+    }
+
+    /**
+     * Returns how far the furthest running session is ahead of the session furthest behind.
+     *
+     * @param sessions the sessions
+     * @return the difference between the most and the fewest ticks run by a running session, or 0 if none runs
+     */
+    private static long spread(List<GameSession> sessions) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (GameSession session : sessions) {
+            if (session.getState() == GameSession.State.RUNNING) {
+                min = Math.min(min, session.getTicksRun());
+                max = Math.max(max, session.getTicksRun());
+            }
+        }
+        return max >= min ? max - min : 0;
+    }
+
+    /**
+     * Returns the heap in use after a full garbage collection.
+     *
+     * @return the used heap, in bytes
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Prints an error and the usage of the program, and exits.
+     *
+     * @param error the error to print
+     */
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("usage: HostStressTest [sessions=n] [ticks=n] [threads=n] [slice=n] [seed=n]");
+        System.exit(2);
+    }
+}
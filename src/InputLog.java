@@ -0,0 +1,136 @@
+import biuoop.KeyboardSensor;
+
+/**
+ * The InputLog class is the keyboard of a game whose input is recorded to, or replayed from, a binary log.
+ * The keys are latched once per tick into a bitmask, so every read during a tick sees the same state, and a
+ * recorded game replays exactly as long as it is started from the same seed.
+ * <p>
+ * The log starts with a header of a magic number, a format version, the seed of the game, and the number of ticks
+ * between state hashes. Then, for every tick, follows one byte with the mask of the pressed keys, and after every
+ * hash interval the state hash of the game at that tick, as a long.
+ */
+public abstract class InputLog implements KeyboardSensor {
+    /**
+     * The magic number at the start of every log, "ARKR".
+     */
+    public static final int MAGIC = 0x41524B52;
+    /**
+     * The version of the log format.
+     */
+    public static final int VERSION = 1;
+    /**
+     * The default number of ticks between state hashes, one second of play.
+     */
+    public static final int DEFAULT_HASH_INTERVAL = 60;
+
+    /**
+     * The keys in the log, in the order of their bits; a key that is not listed is never pressed.
+     */
+    private static final String[] KEYS = {KeyboardSensor.LEFT_KEY, KeyboardSensor.RIGHT_KEY, KeyboardSensor.UP_KEY,
+            KeyboardSensor.DOWN_KEY, KeyboardSensor.SPACE_KEY, KeyboardSensor.ENTER_KEY, MetricsOverlay.TOGGLE_KEY};
+
+    private int mask;
+    private long tick;
+
+    /**
+     * Returns the mask of the keys pressed on the given keyboard.
+     *
+     * @param keyboard the keyboard to read
+     * @return the mask of the pressed keys, with one bit per key in the log
+     */
+    protected static int readMask(KeyboardSensor keyboard) {
+        int mask = 0;
+        for (int i = 0; i < KEYS.length; i++) {
+            if (keyboard.isPressed(KEYS[i])) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
+    @Override
+    public boolean isPressed(String key) {
+        for (int i = 0; i < KEYS.length; i++) {
+            if (KEYS[i].equals(key)) {
+                return (this.mask & (1 << i)) != 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Latches the keys for the next tick. Must be called before every tick.
+     *
+     * @return false if there is no more input and the game should stop, true otherwise
+     */
+    public boolean beginTick() {
+        int next = nextMask();
+        if (next < 0) {
+            return false;
+        }
+        this.mask = next;
+        return true;
+    }
+
+    /**
+     * Ends the current tick, handling the state hash of the game when one is due. Must be called after every tick.
+     *
+     * @param game the game that just ran the tick
+     */
+    public void endTick(Game game) {
+        this.tick++;
+        if (this.tick % getHashInterval() == 0) {
+            stateHash(this.tick, game.stateHash());
+        }
+    }
+
+    /**
+     * Returns the number of ticks that ended so far.
+     *
+     * @return the number of ticks
+     */
+    public long getTick() {
+        return this.tick;
+    }
+
+    /**
+     * Connects the log to the keyboard of the game, before the game starts.
+     *
+     * @param keyboard the keyboard of the game, which may not be used if the input comes from the log
+     */
+    public abstract void attach(KeyboardSensor keyboard);
+
+    /**
+     * Returns the seed the game must be started with.
+     *
+     * @return the seed of the game
+     */
+    public abstract long getSeed();
+
+    /**
+     * Returns the number of ticks between state hashes.
+     *
+     * @return the hash interval
+     */
+    public abstract int getHashInterval();
+
+    /**
+     * Returns the mask of the keys for the next tick.
+     *
+     * @return the mask of the pressed keys, or -1 if there is no more input
+     */
+    protected abstract int nextMask();
+
+    /**
+     * Handles the state hash of the game at the end of a tick that is due for one.
+     *
+     * @param atTick the number of ticks that ended so far
+     * @param hash   the state hash of the game
+     */
+    protected abstract void stateHash(long atTick, long hash);
+
+    /**
+     * Closes the log and the file under it.
+     */
+    public abstract void close();
+}
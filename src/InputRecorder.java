@@ -0,0 +1,94 @@
+import biuoop.KeyboardSensor;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * The InputRecorder class records the keys pressed on the keyboard of a game, tick by tick, into an
+ * {@link InputLog} file, together with the seed of the game and its state hash at every hash interval.
+ * The file is flushed at every state hash, so a game that is killed loses at most one interval, and it may be
+ * closed from another thread, such as a shutdown hook, while the game is still running.
+ */
+public class InputRecorder extends InputLog {
+    private final DataOutputStream out;
+    private final long seed;
+    private final int hashInterval;
+    private KeyboardSensor keyboard = new NullKeyboardSensor();
+    private boolean closed;
+
+    /**
+     * Constructs an InputRecorder writing to the given file, and writes the header of the log.
+     *
+     * @param fileName     the name of the file to record to
+     * @param seed         the seed of the game
+     * @param hashInterval the number of ticks between state hashes
+     * @throws IOException if the file cannot be written
+     */
+    public InputRecorder(String fileName, long seed, int hashInterval) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+        this.seed = seed;
+        this.hashInterval = hashInterval;
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(VERSION);
+        this.out.writeLong(seed);
+        this.out.writeInt(hashInterval);
+    }
+
+    @Override
+    public void attach(KeyboardSensor liveKeyboard) {
+        this.keyboard = liveKeyboard;
+    }
+
+    @Override
+    public long getSeed() {
+        return this.seed;
+    }
+
+    @Override
+    public int getHashInterval() {
+        return this.hashInterval;
+    }
+
+    @Override
+    protected synchronized int nextMask() {
+        int mask = readMask(this.keyboard);
+        if (this.closed) {
+            return mask;
+        }
+        try {
+            this.out.writeByte(mask);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return mask;
+    }
+
+    @Override
+    protected synchronized void stateHash(long atTick, long hash) {
+        if (this.closed) {
+            return;
+        }
+        try {
+            this.out.writeLong(hash);
+            this.out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            this.out.close();
+        } catch (IOException e) {
+            System.err.println("Could not close the input log: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+import biuoop.KeyboardSensor;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * The InputReplayer class replays the keys recorded by an {@link InputRecorder}, tick by tick, and compares the
+ * state hash of the replayed game with the recorded one at every hash interval.
+ * The input ends at the end of the file or at the first state hash that differs, since the replay has diverged
+ * from the recording by then and everything after it is meaningless.
+ */
+public class InputReplayer extends InputLog {
+    private final DataInputStream in;
+    private final long seed;
+    private final int hashInterval;
+    private long divergedAt = -1;
+    private long expectedHash;
+    private long actualHash;
+
+    /**
+     * Constructs an InputReplayer reading from the given file, and reads the header of the log.
+     *
+     * @param fileName the name of the file to replay
+     * @throws IOException if the file cannot be read or is not an input log
+     */
+    public InputReplayer(String fileName) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+        if (this.in.readInt() != MAGIC) {
+            this.in.close();
+            throw new IOException(fileName + " is not an input log");
+        }
+        int version = this.in.readInt();
+        if (version != VERSION) {
+            this.in.close();
+            throw new IOException(fileName + " has unsupported input log version " + version);
+        }
+        this.seed = this.in.readLong();
+        this.hashInterval = this.in.readInt();
+    }
+
+    @Override
+    public void attach(KeyboardSensor keyboard) {
+        // the input comes from the log only
+    }
+
+    @Override
+    public long getSeed() {
+        return this.seed;
+    }
+
+    @Override
+    public int getHashInterval() {
+        return this.hashInterval;
+    }
+
+    @Override
+    protected int nextMask() {
+        if (this.divergedAt >= 0) {
+            return -1;
+        }
+        try {
+            return this.in.readUnsignedByte();
+        } catch (EOFException e) {
+            return -1;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    protected void stateHash(long atTick, long hash) {
+        long recorded;
+        try {
+            recorded = this.in.readLong();
+        } catch (EOFException e) {
+            // the recording was cut off before this hash was written
+            return;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (recorded != hash && this.divergedAt < 0) {
+            this.divergedAt = atTick;
+            this.expectedHash = recorded;
+            this.actualHash = hash;
+        }
+    }
+
+    /**
+     * Returns the tick at which the replay diverged from the recording.
+     *
+     * @return the number of ticks that ended when the first state hash differed, or -1 if none differed
+     */
+    public long getDivergedAt() {
+        return this.divergedAt;
+    }
+
+    /**
+     * Returns the recorded state hash at the tick the replay diverged.
+     *
+     * @return the recorded hash, or 0 if the replay did not diverge
+     */
+    public long getExpectedHash() {
+        return this.expectedHash;
+    }
+
+    /**
+     * Returns the replayed state hash at the tick the replay diverged.
+     *
+     * @return the replayed hash, or 0 if the replay did not diverge
+     */
+    public long getActualHash() {
+        return this.actualHash;
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.in.close();
+        } catch (IOException e) {
+            System.err.println("Could not close the input log: " + e.getMessage());
+        }
+    }
+}
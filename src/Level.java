@@ -0,0 +1,402 @@
+import biuoop.KeyboardSensor;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+/**
+ * The Level class is the layout of a level: its blocks, its balls and its paddle, held as one array per value.
+ * Levels are written as text, in the format of {@link LevelParser}, and compiled into a binary cache next to the
+ * text file, which is read instead of the text for as long as the text file keeps its size and modification time.
+ * <p>
+ * The cache is a flat little-endian file, read and written through a memory-mapped {@link FileChannel}. It starts
+ * with a header: the magic number "ARKL", the format version, the size and the modification time of the text
+ * file, the number of blocks and of balls, the number of blocks before the paddle, the paddle's rectangle as four
+ * doubles, and its color. The blocks follow, as columns of x- and y-coordinates, widths, heights and colors, and
+ * then the balls, as columns of center coordinates, velocities, radii and colors.
+ */
+public class Level {
+    /**
+     * The magic number at the start of every level cache, "ARKL".
+     */
+    public static final int MAGIC = 0x41524B4C;
+    /**
+     * The version of the level cache format.
+     */
+    public static final int VERSION = 1;
+    /**
+     * The suffix added to the name of a level file to get the name of its cache.
+     */
+    public static final String CACHE_SUFFIX = ".bin";
+
+    private static final int HEADER_BYTES = 72;
+    private static final int BLOCK_BYTES = 4 * Double.BYTES + Integer.BYTES;
+    private static final int BALL_BYTES = 4 * Double.BYTES + 2 * Integer.BYTES;
+
+    private double[] blockX;
+    private double[] blockY;
+    private double[] blockWidth;
+    private double[] blockHeight;
+    private int[] blockColor;
+    private double[] ballX;
+    private double[] ballY;
+    private double[] ballDx;
+    private double[] ballDy;
+    private int[] ballRadius;
+    private int[] ballColor;
+    private double[] paddle = new double[4];
+    private int paddleColor;
+    private int paddleOrder;
+
+    /**
+     * Constructs an empty Level; only the builder and the cache reader fill it.
+     */
+    private Level() {
+    }
+
+    /**
+     * Loads a level from a text file, through its binary cache. When the cache is missing or out of date, the
+     * text is parsed and the cache is written again; a cache that cannot be written is only reported.
+     *
+     * @param fileName the name of the level's text file
+     * @return the level
+     * @throws IOException if the text file cannot be read or is not a valid level
+     */
+    public static Level load(String fileName) throws IOException {
+        Path source = Paths.get(fileName);
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        long sourceSize = attributes.size();
+        long sourceModified = attributes.lastModifiedTime().toMillis();
+        Path cache = Paths.get(fileName + CACHE_SUFFIX);
+
+        Level level = readCache(cache, sourceSize, sourceModified);
+        if (level != null) {
+            return level;
+        }
+        level = parse(fileName);
+        try {
+            level.writeCache(cache, sourceSize, sourceModified);
+        } catch (IOException e) {
+            System.err.println("Could not write the level cache " + cache + ": " + e.getMessage());
+        }
+        return level;
+    }
+
+    /**
+     * Parses a level from a text file, without its cache.
+     *
+     * @param fileName the name of the level's text file
+     * @return the level
+     * @throws IOException if the file cannot be read or is not a valid level
+     */
+    public static Level parse(String fileName) throws IOException {
+        try (Reader reader = Files.newBufferedReader(Paths.get(fileName), StandardCharsets.UTF_8)) {
+            return new LevelParser(reader, fileName).parse();
+        }
+    }
+
+    /**
+     * Reads a level from its cache, if the cache exists and was compiled from a text file of the given size and
+     * modification time.
+     *
+     * @param cache          the cache file
+     * @param sourceSize     the size of the text file
+     * @param sourceModified the modification time of the text file, in milliseconds
+     * @return the level, or null if the cache is missing, out of date or not a level cache of this version
+     * @throws IOException if the cache exists but cannot be read
+     */
+    private static Level readCache(Path cache, long sourceSize, long sourceModified) throws IOException {
+        if (!Files.isRegularFile(cache)) {
+            return null;
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                return null;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != sourceSize
+                || buffer.getLong() != sourceModified) {
+            return null;
+        }
+        int blocks = buffer.getInt();
+        int balls = buffer.getInt();
+        if (buffer.capacity() != HEADER_BYTES + (long) blocks * BLOCK_BYTES + (long) balls * BALL_BYTES) {
+            return null;
+        }
+
+        Level level = new Level();
+        level.paddleOrder = buffer.getInt();
+        buffer.asDoubleBuffer().get(level.paddle);
+        buffer.position(buffer.position() + level.paddle.length * Double.BYTES);
+        level.paddleColor = buffer.getInt();
+
+        level.blockX = new double[blocks];
+        level.blockY = new double[blocks];
+        level.blockWidth = new double[blocks];
+        level.blockHeight = new double[blocks];
+        level.blockColor = new int[blocks];
+        buffer.asDoubleBuffer().get(level.blockX).get(level.blockY).get(level.blockWidth).get(level.blockHeight);
+        buffer.position(buffer.position() + 4 * blocks * Double.BYTES);
+        buffer.asIntBuffer().get(level.blockColor);
+        buffer.position(buffer.position() + blocks * Integer.BYTES);
+
+        level.ballX = new double[balls];
+        level.ballY = new double[balls];
+        level.ballDx = new double[balls];
+        level.ballDy = new double[balls];
+        level.ballRadius = new int[balls];
+        level.ballColor = new int[balls];
+        buffer.asDoubleBuffer().get(level.ballX).get(level.ballY).get(level.ballDx).get(level.ballDy);
+        buffer.position(buffer.position() + 4 * balls * Double.BYTES);
+        buffer.asIntBuffer().get(level.ballRadius).get(level.ballColor);
+        return level;
+    }
+
+    /**
+     * Writes the level to a cache file, replacing the cache only once it is complete.
+     *
+     * @param cache          the cache file
+     * @param sourceSize     the size of the text file the level was parsed from
+     * @param sourceModified the modification time of the text file, in milliseconds
+     * @throws IOException if the cache cannot be written
+     */
+    private void writeCache(Path cache, long sourceSize, long sourceModified) throws IOException {
+        int blocks = getBlockCount();
+        int balls = getBallCount();
+        Path partial = Paths.get(cache + ".tmp");
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = HEADER_BYTES + (long) blocks * BLOCK_BYTES + (long) balls * BALL_BYTES;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(sourceSize).putLong(sourceModified);
+        buffer.putInt(blocks).putInt(balls).putInt(this.paddleOrder);
+        buffer.asDoubleBuffer().put(this.paddle);
+        buffer.position(buffer.position() + this.paddle.length * Double.BYTES);
+        buffer.putInt(this.paddleColor);
+
+        buffer.asDoubleBuffer().put(this.blockX).put(this.blockY).put(this.blockWidth).put(this.blockHeight);
+        buffer.position(buffer.position() + 4 * blocks * Double.BYTES);
+        buffer.asIntBuffer().put(this.blockColor);
+        buffer.position(buffer.position() + blocks * Integer.BYTES);
+
+        buffer.asDoubleBuffer().put(this.ballX).put(this.ballY).put(this.ballDx).put(this.ballDy);
+        buffer.position(buffer.position() + 4 * balls * Double.BYTES);
+        buffer.asIntBuffer().put(this.ballRadius).put(this.ballColor);
+        buffer.force();
+        Files.move(partial, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the number of blocks in the level.
+     *
+     * @return the number of blocks
+     */
+    public int getBlockCount() {
+        return this.blockX.length;
+    }
+
+    /**
+     * Returns the number of balls in the level.
+     *
+     * @return the number of balls
+     */
+    public int getBallCount() {
+        return this.ballX.length;
+    }
+
+    /**
+     * Returns the number of blocks that are added to the game before the paddle.
+     *
+     * @return the position of the paddle among the blocks
+     */
+    public int getPaddleOrder() {
+        return this.paddleOrder;
+    }
+
+    /**
+     * Creates the blocks of the level.
+     *
+     * @return the blocks, in the order of the level
+     */
+    public Block[] createBlocks() {
+        Block[] blocks = new Block[getBlockCount()];
+        Color last = null;
+        for (int i = 0; i < blocks.length; i++) {
+            // Blocks mostly share a few colors, so consecutive equal colors share one object
+            if (last == null || last.getRGB() != this.blockColor[i]) {
+                last = new Color(this.blockColor[i], true);
+            }
+            blocks[i] = new Block(new Rectangle(new Point(this.blockX[i], this.blockY[i]), this.blockWidth[i],
+                    this.blockHeight[i]), last);
+        }
+        return blocks;
+    }
+
+    /**
+     * Creates the paddle of the level.
+     *
+     * @param keyboard the keyboard sensor controlling the paddle
+     * @return the paddle
+     */
+    public Paddle createPaddle(KeyboardSensor keyboard) {
+        return new Paddle(new Rectangle(new Point(this.paddle[0], this.paddle[1]), this.paddle[2], this.paddle[3]),
+                new Color(this.paddleColor, true), keyboard);
+    }
+
+    /**
+     * Creates the balls of the level.
+     *
+     * @param environment the game environment the balls collide with
+     * @return a ball system holding the balls, in the order of the level
+     */
+    public BallSystem createBalls(GameEnvironment environment) {
+        BallSystem balls = new BallSystem(environment, Math.max(1, getBallCount()));
+        Color last = null;
+        for (int i = 0; i < getBallCount(); i++) {
+            if (last == null || last.getRGB() != this.ballColor[i]) {
+                last = new Color(this.ballColor[i], true);
+            }
+            int index = balls.addBall(this.ballX[i], this.ballY[i], this.ballRadius[i], last);
+            balls.setVelocity(index, this.ballDx[i], this.ballDy[i]);
+        }
+        return balls;
+    }
+
+    /**
+     * The Builder class collects the objects of a level one at a time, such as while parsing its text.
+     */
+    public static class Builder {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private final Level level = new Level();
+        private int blocks;
+        private int balls;
+
+        /**
+         * Constructs an empty Builder.
+         */
+        public Builder() {
+            this.level.blockX = new double[INITIAL_CAPACITY];
+            this.level.blockY = new double[INITIAL_CAPACITY];
+            this.level.blockWidth = new double[INITIAL_CAPACITY];
+            this.level.blockHeight = new double[INITIAL_CAPACITY];
+            this.level.blockColor = new int[INITIAL_CAPACITY];
+            this.level.ballX = new double[INITIAL_CAPACITY];
+            this.level.ballY = new double[INITIAL_CAPACITY];
+            this.level.ballDx = new double[INITIAL_CAPACITY];
+            this.level.ballDy = new double[INITIAL_CAPACITY];
+            this.level.ballRadius = new int[INITIAL_CAPACITY];
+            this.level.ballColor = new int[INITIAL_CAPACITY];
+        }
+
+        /**
+         * Adds a block to the level.
+         *
+         * @param x      the x-coordinate of the upper-left corner
+         * @param y      the y-coordinate of the upper-left corner
+         * @param width  the width
+         * @param height the height
+         * @param argb   the color, as an ARGB value
+         */
+        public void addBlock(double x, double y, double width, double height, int argb) {
+            Level l = this.level;
+            if (this.blocks == l.blockX.length) {
+                int capacity = 2 * this.blocks;
+                l.blockX = Arrays.copyOf(l.blockX, capacity);
+                l.blockY = Arrays.copyOf(l.blockY, capacity);
+                l.blockWidth = Arrays.copyOf(l.blockWidth, capacity);
+                l.blockHeight = Arrays.copyOf(l.blockHeight, capacity);
+                l.blockColor = Arrays.copyOf(l.blockColor, capacity);
+            }
+            l.blockX[this.blocks] = x;
+            l.blockY[this.blocks] = y;
+            l.blockWidth[this.blocks] = width;
+            l.blockHeight[this.blocks] = height;
+            l.blockColor[this.blocks] = argb;
+            this.blocks++;
+        }
+
+        /**
+         * Adds a ball to the level.
+         *
+         * @param centerX the x-coordinate of the center
+         * @param centerY the y-coordinate of the center
+         * @param radius  the radius
+         * @param dx      the velocity along the x-axis
+         * @param dy      the velocity along the y-axis
+         * @param argb    the color, as an ARGB value
+         */
+        public void addBall(double centerX, double centerY, int radius, double dx, double dy, int argb) {
+            Level l = this.level;
+            if (this.balls == l.ballX.length) {
+                int capacity = 2 * this.balls;
+                l.ballX = Arrays.copyOf(l.ballX, capacity);
+                l.ballY = Arrays.copyOf(l.ballY, capacity);
+                l.ballDx = Arrays.copyOf(l.ballDx, capacity);
+                l.ballDy = Arrays.copyOf(l.ballDy, capacity);
+                l.ballRadius = Arrays.copyOf(l.ballRadius, capacity);
+                l.ballColor = Arrays.copyOf(l.ballColor, capacity);
+            }
+            l.ballX[this.balls] = centerX;
+            l.ballY[this.balls] = centerY;
+            l.ballDx[this.balls] = dx;
+            l.ballDy[this.balls] = dy;
+            l.ballRadius[this.balls] = radius;
+            l.ballColor[this.balls] = argb;
+            this.balls++;
+        }
+
+        /**
+         * Sets the paddle of the level, which is added to the game after the blocks added so far.
+         *
+         * @param x      the x-coordinate of the upper-left corner
+         * @param y      the y-coordinate of the upper-left corner
+         * @param width  the width
+         * @param height the height
+         * @param argb   the color, as an ARGB value
+         */
+        public void setPaddle(double x, double y, double width, double height, int argb) {
+            this.level.paddle = new double[] {x, y, width, height};
+            this.level.paddleColor = argb;
+            this.level.paddleOrder = this.blocks;
+        }
+
+        /**
+         * Returns the level built so far. The builder must not be used afterwards.
+         *
+         * @return the level
+         */
+        public Level build() {
+            Level l = this.level;
+            l.blockX = Arrays.copyOf(l.blockX, this.blocks);
+            l.blockY = Arrays.copyOf(l.blockY, this.blocks);
+            l.blockWidth = Arrays.copyOf(l.blockWidth, this.blocks);
+            l.blockHeight = Arrays.copyOf(l.blockHeight, this.blocks);
+            l.blockColor = Arrays.copyOf(l.blockColor, this.blocks);
+            l.ballX = Arrays.copyOf(l.ballX, this.balls);
+            l.ballY = Arrays.copyOf(l.ballY, this.balls);
+            l.ballDx = Arrays.copyOf(l.ballDx, this.balls);
+            l.ballDy = Arrays.copyOf(l.ballDy, this.balls);
+            l.ballRadius = Arrays.copyOf(l.ballRadius, this.balls);
+            l.ballColor = Arrays.copyOf(l.ballColor, this.balls);
+            return l;
+        }
+    }
+}
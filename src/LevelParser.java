@@ -0,0 +1,167 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * The LevelParser class parses the text format of a {@link Level}, one line at a time, so a level of any size is
+ * read without holding its text in memory.
+ * <p>
+ * Every line holds one object, as a keyword followed by numbers separated by spaces; empty lines and lines
+ * starting with "#" are ignored. Colors are written as "#RRGGBB".
+ * <pre>
+ * paddle x y width height color
+ * block  x y width height color
+ * ball   centerX centerY radius dx dy color
+ * </pre>
+ * A level has exactly one paddle, and the paddle is added to the game after the blocks written before it.
+ */
+public class LevelParser {
+    private static final int MAX_TOKENS = 7;
+
+    private final BufferedReader reader;
+    private final String name;
+    private final String[] tokens = new String[MAX_TOKENS];
+    private int lineNumber;
+
+    /**
+     * Constructs a LevelParser reading from the given reader.
+     *
+     * @param reader the reader of the level's text
+     * @param name   the name of the level, such as its file name, for error messages
+     */
+    public LevelParser(Reader reader, String name) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        this.name = name;
+    }
+
+    /**
+     * Parses the whole level.
+     *
+     * @return the parsed level
+     * @throws IOException if the text cannot be read or is not a valid level
+     */
+    public Level parse() throws IOException {
+        Level.Builder builder = new Level.Builder();
+        boolean hasPaddle = false;
+        String line;
+        while ((line = this.reader.readLine()) != null) {
+            this.lineNumber++;
+            int count = tokenize(line);
+            if (count == 0 || this.tokens[0].startsWith("#")) {
+                continue;
+            }
+            String keyword = this.tokens[0];
+            if (keyword.equals("block")) {
+                expect(count, 6);
+                builder.addBlock(number(1), number(2), number(3), number(4), color(5));
+            } else if (keyword.equals("ball")) {
+                expect(count, 7);
+                builder.addBall(number(1), number(2), (int) number(3), number(4), number(5), color(6));
+            } else if (keyword.equals("paddle")) {
+                expect(count, 6);
+                if (hasPaddle) {
+                    throw error("a level has only one paddle");
+                }
+                hasPaddle = true;
+                builder.setPaddle(number(1), number(2), number(3), number(4), color(5));
+            } else {
+                throw error("unknown object \"" + keyword + "\"");
+            }
+        }
+        if (!hasPaddle) {
+            throw new IOException(this.name + ": the level has no paddle");
+        }
+        return builder.build();
+    }
+
+    /**
+     * Splits a line into tokens separated by spaces or tabs.
+     *
+     * @param line the line
+     * @return the number of tokens, or 1 for a comment
+     * @throws IOException if the line has more tokens than any object needs
+     */
+    private int tokenize(String line) throws IOException {
+        int count = 0;
+        int i = 0;
+        int length = line.length();
+        while (i < length) {
+            while (i < length && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            int start = i;
+            while (i < length && !Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            if (count == MAX_TOKENS) {
+                throw error("too many values");
+            }
+            this.tokens[count++] = line.substring(start, i);
+            if (count == 1 && this.tokens[0].startsWith("#")) {
+                // A comment, which may hold anything
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks that the current line has the given number of tokens.
+     *
+     * @param count    the number of tokens on the line
+     * @param expected the number of tokens the object needs, with its keyword
+     * @throws IOException if the numbers differ
+     */
+    private void expect(int count, int expected) throws IOException {
+        if (count != expected) {
+            throw error("\"" + this.tokens[0] + "\" needs " + (expected - 1) + " values, found " + (count - 1));
+        }
+    }
+
+    /**
+     * Parses a token of the current line as a number.
+     *
+     * @param index the index of the token
+     * @return the number
+     * @throws IOException if the token is not a number
+     */
+    private double number(int index) throws IOException {
+        try {
+            return Double.parseDouble(this.tokens[index]);
+        } catch (NumberFormatException e) {
+            throw error("\"" + this.tokens[index] + "\" is not a number");
+        }
+    }
+
+    /**
+     * Parses a token of the current line as a color.
+     *
+     * @param index the index of the token
+     * @return the color, as an opaque RGB value
+     * @throws IOException if the token is not a color
+     */
+    private int color(int index) throws IOException {
+        String token = this.tokens[index];
+        if (token.length() != 7 || token.charAt(0) != '#') {
+            throw error("\"" + token + "\" is not a color of the form #RRGGBB");
+        }
+        try {
+            return 0xFF000000 | Integer.parseInt(token.substring(1), 16);
+        } catch (NumberFormatException e) {
+            throw error("\"" + token + "\" is not a color of the form #RRGGBB");
+        }
+    }
+
+    /**
+     * Creates an error about the current line.
+     *
+     * @param message the error message
+     * @return the error, with the name of the level and the line number
+     */
+    private IOException error(String message) {
+        return new IOException(this.name + ":" + this.lineNumber + ": " + message);
+    }
+}
@@ -261,4 +261,133 @@ public class Line {
         }
         return closest;
     }
+
+    /**
+     * Finds where a segment first hits the boundary of a rectangle, without allocating.
+     * The hit is given as a parameter t in [0, 1], where the hit point is
+     * (x0 + t * (x1 - x0), y0 + t * (y1 - y0)). Like {@link #intersectionWith(Line)}, an edge touched
+     * only by a segment running along it does not count as a hit.
+     *
+     * @param x0     the x-coordinate of the start of the segment
+     * @param y0     the y-coordinate of the start of the segment
+     * @param x1     the x-coordinate of the end of the segment
+     * @param y1     the y-coordinate of the end of the segment
+     * @param packed the packed bounds: the left, top, right and bottom of every rectangle, in turn, as filled by
+     *               {@link Rectangle#copyBounds(double[], int)}
+     * @param offset the index of the left of the rectangle to check in the array
+     * @return the parameter of the hit closest to the start of the segment, or NaN if there is no hit
+     */
+    public static double closestHitParameter(double x0, double y0, double x1, double y1, double[] packed,
+                                             int offset) {
+        double left = packed[offset];
+        double top = packed[offset + 1];
+        double right = packed[offset + 2];
+        double bottom = packed[offset + 3];
+
+        double closest = horizontalEdgeHit(x0, y0, x1, y1, top, left, right);
+        closest = closer(closest, verticalEdgeHit(x0, y0, x1, y1, right, top, bottom));
+        closest = closer(closest, horizontalEdgeHit(x0, y0, x1, y1, bottom, left, right));
+        return closer(closest, verticalEdgeHit(x0, y0, x1, y1, left, top, bottom));
+    }
+
+    /**
+     * Finds the point where a segment first hits the boundary of a rectangle.
+     * The coordinate across the edge that was hit is exactly the edge's coordinate, so collidables
+     * can compare it against their sides.
+     *
+     * @param x0     the x-coordinate of the start of the segment
+     * @param y0     the y-coordinate of the start of the segment
+     * @param x1     the x-coordinate of the end of the segment
+     * @param y1     the y-coordinate of the end of the segment
+     * @param packed the packed bounds: the left, top, right and bottom of every rectangle, in turn
+     * @param offset the index of the left of the rectangle to check in the array
+     * @return the hit point closest to the start of the segment, or null if there is no hit
+     */
+    public static Point closestHitPoint(double x0, double y0, double x1, double y1, double[] packed, int offset) {
+        double t = closestHitParameter(x0, y0, x1, y1, packed, offset);
+        if (Double.isNaN(t)) {
+            return null;
+        }
+        double left = packed[offset];
+        double top = packed[offset + 1];
+        double right = packed[offset + 2];
+        double bottom = packed[offset + 3];
+        double x = x0 + t * (x1 - x0);
+        double y = y0 + t * (y1 - y0);
+
+        if (t == horizontalEdgeHit(x0, y0, x1, y1, top, left, right)) {
+            y = top;
+        } else if (t == horizontalEdgeHit(x0, y0, x1, y1, bottom, left, right)) {
+            y = bottom;
+        }
+        if (t == verticalEdgeHit(x0, y0, x1, y1, left, top, bottom)) {
+            x = left;
+        } else if (t == verticalEdgeHit(x0, y0, x1, y1, right, top, bottom)) {
+            x = right;
+        }
+        return new Point(x, y);
+    }
+
+    /**
+     * Finds where a segment crosses a horizontal edge.
+     *
+     * @param x0   the x-coordinate of the start of the segment
+     * @param y0   the y-coordinate of the start of the segment
+     * @param x1   the x-coordinate of the end of the segment
+     * @param y1   the y-coordinate of the end of the segment
+     * @param y    the y-coordinate of the edge
+     * @param minX the x-coordinate of the left end of the edge
+     * @param maxX the x-coordinate of the right end of the edge
+     * @return the parameter of the crossing along the segment, or NaN if the segment does not cross the edge
+     */
+    static double horizontalEdgeHit(double x0, double y0, double x1, double y1,
+                                    double y, double minX, double maxX) {
+        double dy = y1 - y0;
+        if (dy == 0) {
+            return Double.NaN;
+        }
+        double t = (y - y0) / dy;
+        if (t < 0 || t > 1) {
+            return Double.NaN;
+        }
+        double x = x0 + t * (x1 - x0);
+        return x >= minX && x <= maxX ? t : Double.NaN;
+    }
+
+    /**
+     * Finds where a segment crosses a vertical edge.
+     *
+     * @param x0   the x-coordinate of the start of the segment
+     * @param y0   the y-coordinate of the start of the segment
+     * @param x1   the x-coordinate of the end of the segment
+     * @param y1   the y-coordinate of the end of the segment
+     * @param x    the x-coordinate of the edge
+     * @param minY the y-coordinate of the top end of the edge
+     * @param maxY the y-coordinate of the bottom end of the edge
+     * @return the parameter of the crossing along the segment, or NaN if the segment does not cross the edge
+     */
+    static double verticalEdgeHit(double x0, double y0, double x1, double y1,
+                                  double x, double minY, double maxY) {
+        double dx = x1 - x0;
+        if (dx == 0) {
+            return Double.NaN;
+        }
+        double t = (x - x0) / dx;
+        if (t < 0 || t > 1) {
+            return Double.NaN;
+        }
+        double y = y0 + t * (y1 - y0);
+        return y >= minY && y <= maxY ? t : Double.NaN;
+    }
+
+    /**
+     * Returns the smaller of two hit parameters, ignoring missing hits.
+     *
+     * @param a the first hit parameter, or NaN
+     * @param b the second hit parameter, or NaN
+     * @return the smaller parameter, or NaN if both are NaN
+     */
+    static double closer(double a, double b) {
+        return Double.isNaN(a) || b < a ? b : a;
+    }
 }
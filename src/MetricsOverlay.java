@@ -0,0 +1,72 @@
+import biuoop.DrawSurface;
+import biuoop.KeyboardSensor;
+
+import java.awt.Color;
+
+/**
+ * The MetricsOverlay class draws the published {@link GameMetrics} on top of the game.
+ * Pressing the "m" key shows or hides it; it starts hidden.
+ */
+public class MetricsOverlay implements Sprite {
+    /**
+     * The key that shows or hides the overlay.
+     */
+    public static final String TOGGLE_KEY = "m";
+
+    private static final int FONT_SIZE = 12;
+    private static final int LINE_HEIGHT = 14;
+
+    private final GameMetrics metrics;
+    private final KeyboardSensor keyboard;
+    private boolean visible;
+    private boolean wasPressed;
+
+    /**
+     * Constructs a MetricsOverlay.
+     *
+     * @param metrics  the metrics to show
+     * @param keyboard the keyboard sensor used to toggle the overlay
+     */
+    public MetricsOverlay(GameMetrics metrics, KeyboardSensor keyboard) {
+        this.metrics = metrics;
+        this.keyboard = keyboard;
+    }
+
+    @Override
+    public void drawOn(DrawSurface d) {
+        if (!this.visible) {
+            return;
+        }
+        d.setColor(Color.BLACK);
+        d.fillRectangle(25, 25, 330, 6 * LINE_HEIGHT + 8);
+        d.setColor(Color.GREEN);
+        int y = 25 + LINE_HEIGHT;
+        d.drawText(30, y, String.format("draw  p50 %8.1f  p99 %8.1f  max %8.1f us", metrics.getDrawP50Micros(),
+                metrics.getDrawP99Micros(), metrics.getDrawMaxMicros()), FONT_SIZE);
+        y += LINE_HEIGHT;
+        d.drawText(30, y, String.format("show  p50 %8.1f  p99 %8.1f  max %8.1f us", metrics.getShowP50Micros(),
+                metrics.getShowP99Micros(), metrics.getShowMaxMicros()), FONT_SIZE);
+        y += LINE_HEIGHT;
+        d.drawText(30, y, String.format("tick  p50 %8.1f  p99 %8.1f  max %8.1f us", metrics.getTickP50Micros(),
+                metrics.getTickP99Micros(), metrics.getTickMaxMicros()), FONT_SIZE);
+        y += LINE_HEIGHT;
+        d.drawText(30, y, String.format("ticks/s %.1f", metrics.getTicksPerSecond()), FONT_SIZE);
+        y += LINE_HEIGHT;
+        d.drawText(30, y, String.format("queries/tick %.1f  max %d", metrics.getCollisionQueriesPerTick(),
+                metrics.getMaxCollisionQueriesPerTick()), FONT_SIZE);
+        y += LINE_HEIGHT;
+        d.drawText(30, y, String.format("alloc %.1f KB/s", metrics.getAllocatedBytesPerSecond() / 1024), FONT_SIZE);
+    }
+
+    /**
+     * Shows or hides the overlay when the toggle key goes down.
+     */
+    @Override
+    public void timePassed() {
+        boolean pressed = this.keyboard.isPressed(TOGGLE_KEY);
+        if (pressed && !this.wasPressed) {
+            this.visible = !this.visible;
+        }
+        this.wasPressed = pressed;
+    }
+}
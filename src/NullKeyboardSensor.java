@@ -0,0 +1,13 @@
+import biuoop.KeyboardSensor;
+
+/**
+ * The NullKeyboardSensor class is a KeyboardSensor on which no key is ever pressed.
+ * It is used when the game runs without a GUI.
+ */
+public class NullKeyboardSensor implements KeyboardSensor {
+
+    @Override
+    public boolean isPressed(String key) {
+        return false;
+    }
+}
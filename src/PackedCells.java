@@ -0,0 +1,405 @@
+import java.util.Arrays;
+
+/**
+ * The PackedCells class is a dense copy of a uniform grid over axis-aligned bounding boxes, laid out so a batch of
+ * queries can test the items of a cell in one tight loop, such as with {@link VectorSweep}. The bounds, ids and add
+ * orders of the items are kept in parallel arrays, with the items of every cell in one contiguous run, and the cells
+ * of the grid's extent are found by index rather than by hashing. Every run is padded to a multiple of
+ * {@link #LANES} entries with empty boxes, which no query overlaps, so a run can be read in whole chunks.
+ * <p>
+ * A separate loose run holds a few items that are not in any cell, and is tested by every query.
+ */
+public class PackedCells {
+    /**
+     * The number of entries every run is a multiple of.
+     */
+    public static final int LANES = 8;
+
+    private static final int MIN_CELLS = 1024;
+    private static final int CELLS_PER_ITEM = 4;
+
+    private final double cellSize;
+    private int firstColumn;
+    private int firstRow;
+    private int columns;
+    private int rows;
+    private int[] runStarts;
+    private double[] lefts;
+    private double[] tops;
+    private double[] rights;
+    private double[] bottoms;
+    private int[] ids;
+    private long[] orders;
+    private int looseStart;
+    private int looseEnd;
+    private boolean valid;
+
+    /**
+     * Constructs an empty PackedCells, which must be built before being queried, with square cells of the given size.
+     *
+     * @param cellSize the width and height of a single cell
+     */
+    public PackedCells(double cellSize) {
+        this.cellSize = cellSize;
+        this.runStarts = new int[1];
+        this.lefts = new double[0];
+        this.tops = new double[0];
+        this.rights = new double[0];
+        this.bottoms = new double[0];
+        this.ids = new int[0];
+        this.orders = new long[0];
+    }
+
+    /**
+     * Builds the cells again from scratch, which empties the loose run. If the items are spread so thinly that the
+     * cells would take much more room than the items, nothing is built and the cells stay invalid.
+     *
+     * @param boxes    the packed bounds of all items, four per id
+     * @param addOrder the add order of every id, which breaks ties between hits
+     * @param items    the ids of the items to put in the cells
+     * @param count    the number of ids in items
+     */
+    public void rebuild(double[] boxes, long[] addOrder, int[] items, int count) {
+        this.valid = false;
+        this.looseStart = 0;
+        this.looseEnd = 0;
+        int minColumn = Integer.MAX_VALUE;
+        int minRow = Integer.MAX_VALUE;
+        int maxColumn = Integer.MIN_VALUE;
+        int maxRow = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            int offset = items[i] * 4;
+            minColumn = Math.min(minColumn, cellOf(boxes[offset]));
+            minRow = Math.min(minRow, cellOf(boxes[offset + 1]));
+            maxColumn = Math.max(maxColumn, cellOf(boxes[offset + 2]));
+            maxRow = Math.max(maxRow, cellOf(boxes[offset + 3]));
+        }
+        long cells = count == 0 ? 0 : ((long) maxColumn - minColumn + 1) * ((long) maxRow - minRow + 1);
+        if (cells > Math.max(MIN_CELLS, (long) count * CELLS_PER_ITEM)) {
+            return;
+        }
+        this.firstColumn = minColumn;
+        this.firstRow = minRow;
+        this.columns = count == 0 ? 0 : maxColumn - minColumn + 1;
+        this.rows = count == 0 ? 0 : maxRow - minRow + 1;
+
+        // Count the items of every cell, pad the counts, and turn them into the starts of the runs
+        int[] starts = new int[(int) cells + 1];
+        for (int i = 0; i < count; i++) {
+            int offset = items[i] * 4;
+            int lastColumn = cellOf(boxes[offset + 2]);
+            int lastRow = cellOf(boxes[offset + 3]);
+            for (int column = cellOf(boxes[offset]); column <= lastColumn; column++) {
+                for (int row = cellOf(boxes[offset + 1]); row <= lastRow; row++) {
+                    starts[cellIndex(column, row) + 1]++;
+                }
+            }
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            starts[cell + 1] = starts[cell] + padded(starts[cell + 1]);
+        }
+        this.runStarts = starts;
+        this.looseStart = starts[(int) cells];
+        this.looseEnd = this.looseStart;
+        allocate(this.looseStart + LANES);
+
+        // Fill the runs from their starts, then mark what is left of every run as empty
+        int[] fill = Arrays.copyOf(starts, (int) cells);
+        for (int i = 0; i < count; i++) {
+            int id = items[i];
+            int offset = id * 4;
+            int lastColumn = cellOf(boxes[offset + 2]);
+            int lastRow = cellOf(boxes[offset + 3]);
+            for (int column = cellOf(boxes[offset]); column <= lastColumn; column++) {
+                for (int row = cellOf(boxes[offset + 1]); row <= lastRow; row++) {
+                    put(fill[cellIndex(column, row)]++, id, boxes, addOrder[id]);
+                }
+            }
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            for (int entry = fill[cell]; entry < starts[cell + 1]; entry++) {
+                clear(entry);
+            }
+        }
+        this.valid = true;
+    }
+
+    /**
+     * Replaces the items of the loose run, such as with the current bounds of moving items.
+     *
+     * @param boxes    the packed bounds of all items, four per id
+     * @param addOrder the add order of every id, which breaks ties between hits
+     * @param items    the ids of the loose items
+     * @param count    the number of ids in items
+     */
+    public void setLoose(double[] boxes, long[] addOrder, int[] items, int count) {
+        int end = this.looseStart + padded(count);
+        if (end > this.ids.length) {
+            grow(end);
+        }
+        for (int i = 0; i < count; i++) {
+            put(this.looseStart + i, items[i], boxes, addOrder[items[i]]);
+        }
+        for (int entry = this.looseStart + count; entry < end; entry++) {
+            clear(entry);
+        }
+        this.looseEnd = end;
+    }
+
+    /**
+     * Takes an item out of the cells its bounds touch, leaving empty entries in its place.
+     *
+     * @param id    the id of the item
+     * @param boxes the packed bounds of all items, with the bounds the item was put in the cells with
+     */
+    public void remove(int id, double[] boxes) {
+        int offset = id * 4;
+        int lastColumn = cellOf(boxes[offset + 2]);
+        int lastRow = cellOf(boxes[offset + 3]);
+        for (int column = cellOf(boxes[offset]); column <= lastColumn; column++) {
+            for (int row = cellOf(boxes[offset + 1]); row <= lastRow; row++) {
+                int cell = cellIndex(column, row);
+                for (int entry = this.runStarts[cell]; entry < this.runStarts[cell + 1]; entry++) {
+                    if (this.ids[entry] == id) {
+                        clear(entry);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives an item a new id in the cells its bounds touch.
+     *
+     * @param oldId the current id of the item
+     * @param newId the new id of the item
+     * @param boxes the packed bounds of all items, with the bounds of the item at its new id
+     */
+    public void rename(int oldId, int newId, double[] boxes) {
+        int offset = newId * 4;
+        int lastColumn = cellOf(boxes[offset + 2]);
+        int lastRow = cellOf(boxes[offset + 3]);
+        for (int column = cellOf(boxes[offset]); column <= lastColumn; column++) {
+            for (int row = cellOf(boxes[offset + 1]); row <= lastRow; row++) {
+                int cell = cellIndex(column, row);
+                for (int entry = this.runStarts[cell]; entry < this.runStarts[cell + 1]; entry++) {
+                    if (this.ids[entry] == oldId) {
+                        this.ids[entry] = newId;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether the cells were built by the last {@link #rebuild(double[], long[], int[], int)}.
+     *
+     * @return true if the cells can be queried
+     */
+    public boolean isValid() {
+        return this.valid;
+    }
+
+    /**
+     * Returns the column or row of the cell containing the given coordinate.
+     *
+     * @param coordinate an x or y coordinate
+     * @return the index of the cell containing the coordinate
+     */
+    public int cellOf(double coordinate) {
+        return (int) Math.floor(coordinate / this.cellSize);
+    }
+
+    /**
+     * Returns the first entry of the cells of a column from one row to another. The runs of the cells of a column are
+     * next to each other, so those cells hold one contiguous span of entries.
+     *
+     * @param column   the column of the cells
+     * @param firstRow the row of the first cell
+     * @param lastRow  the row of the last cell
+     * @return the first entry of the span, or 0 if no cell of the span lies inside the extent
+     */
+    public int spanStart(int column, int firstRow, int lastRow) {
+        int x = column - this.firstColumn;
+        int top = Math.max(firstRow - this.firstRow, 0);
+        int bottom = Math.min(lastRow - this.firstRow, this.rows - 1);
+        if (x < 0 || x >= this.columns || top > bottom) {
+            return 0;
+        }
+        return this.runStarts[x * this.rows + top];
+    }
+
+    /**
+     * Returns the entry after the cells of a column from one row to another.
+     *
+     * @param column   the column of the cells
+     * @param firstRow the row of the first cell
+     * @param lastRow  the row of the last cell
+     * @return the entry after the span, or 0 if no cell of the span lies inside the extent
+     */
+    public int spanEnd(int column, int firstRow, int lastRow) {
+        int x = column - this.firstColumn;
+        int top = Math.max(firstRow - this.firstRow, 0);
+        int bottom = Math.min(lastRow - this.firstRow, this.rows - 1);
+        if (x < 0 || x >= this.columns || top > bottom) {
+            return 0;
+        }
+        return this.runStarts[x * this.rows + bottom + 1];
+    }
+
+    /**
+     * Returns the first entry of the loose run.
+     *
+     * @return the first entry of the loose run
+     */
+    public int looseStart() {
+        return this.looseStart;
+    }
+
+    /**
+     * Returns the entry after the loose run.
+     *
+     * @return the entry after the last entry of the loose run
+     */
+    public int looseEnd() {
+        return this.looseEnd;
+    }
+
+    /**
+     * Returns the left sides of the entries; an empty entry has an infinite left side.
+     *
+     * @return the left side of every entry
+     */
+    public double[] lefts() {
+        return this.lefts;
+    }
+
+    /**
+     * Returns the top sides of the entries.
+     *
+     * @return the top side of every entry
+     */
+    public double[] tops() {
+        return this.tops;
+    }
+
+    /**
+     * Returns the right sides of the entries.
+     *
+     * @return the right side of every entry
+     */
+    public double[] rights() {
+        return this.rights;
+    }
+
+    /**
+     * Returns the bottom sides of the entries.
+     *
+     * @return the bottom side of every entry
+     */
+    public double[] bottoms() {
+        return this.bottoms;
+    }
+
+    /**
+     * Returns the ids of the entries; an empty entry has the id -1.
+     *
+     * @return the id of every entry
+     */
+    public int[] ids() {
+        return this.ids;
+    }
+
+    /**
+     * Returns the add orders of the entries.
+     *
+     * @return the add order of every entry
+     */
+    public long[] orders() {
+        return this.orders;
+    }
+
+    /**
+     * Returns the index of a cell inside the extent being built.
+     *
+     * @param column the column of the cell
+     * @param row    the row of the cell
+     * @return the index of the cell
+     */
+    private int cellIndex(int column, int row) {
+        return (column - this.firstColumn) * this.rows + (row - this.firstRow);
+    }
+
+    /**
+     * Rounds a number of entries up to a whole number of chunks.
+     *
+     * @param count the number of entries
+     * @return the smallest multiple of {@link #LANES} not below count
+     */
+    private static int padded(int count) {
+        return (count + LANES - 1) / LANES * LANES;
+    }
+
+    /**
+     * Copies an item into an entry.
+     *
+     * @param entry the entry
+     * @param id    the id of the item
+     * @param boxes the packed bounds of all items, four per id
+     * @param order the add order of the item
+     */
+    private void put(int entry, int id, double[] boxes, long order) {
+        int offset = id * 4;
+        this.lefts[entry] = boxes[offset];
+        this.tops[entry] = boxes[offset + 1];
+        this.rights[entry] = boxes[offset + 2];
+        this.bottoms[entry] = boxes[offset + 3];
+        this.ids[entry] = id;
+        this.orders[entry] = order;
+    }
+
+    /**
+     * Empties an entry. Its box is inside out, so no query box overlaps it.
+     *
+     * @param entry the entry
+     */
+    private void clear(int entry) {
+        this.lefts[entry] = Double.POSITIVE_INFINITY;
+        this.tops[entry] = Double.POSITIVE_INFINITY;
+        this.rights[entry] = Double.NEGATIVE_INFINITY;
+        this.bottoms[entry] = Double.NEGATIVE_INFINITY;
+        this.ids[entry] = -1;
+        this.orders[entry] = Long.MAX_VALUE;
+    }
+
+    /**
+     * Makes room for at least the given number of entries, dropping the ones already there unless they fit.
+     *
+     * @param capacity the number of entries needed
+     */
+    private void allocate(int capacity) {
+        if (capacity > this.ids.length) {
+            this.lefts = new double[capacity];
+            this.tops = new double[capacity];
+            this.rights = new double[capacity];
+            this.bottoms = new double[capacity];
+            this.ids = new int[capacity];
+            this.orders = new long[capacity];
+        }
+    }
+
+    /**
+     * Makes room for at least the given number of entries, keeping the ones already there.
+     *
+     * @param capacity the number of entries needed
+     */
+    private void grow(int capacity) {
+        int newCapacity = Math.max(capacity, this.ids.length * 2);
+        this.lefts = Arrays.copyOf(this.lefts, newCapacity);
+        this.tops = Arrays.copyOf(this.tops, newCapacity);
+        this.rights = Arrays.copyOf(this.rights, newCapacity);
+        this.bottoms = Arrays.copyOf(this.bottoms, newCapacity);
+        this.ids = Arrays.copyOf(this.ids, newCapacity);
+        this.orders = Arrays.copyOf(this.orders, newCapacity);
+    }
+}
@@ -4,10 +4,17 @@ import biuoop.KeyboardSensor;
 /**
  * The Paddle class represents the player-controlled paddle in the game.
  * It implements both the Sprite and Collidable interfaces.
+ * The paddle keeps its position as plain coordinates, so moving it creates nothing; its rectangle is only built
+ * when asked for, and the game environment reads its bounds directly.
  */
 public class Paddle implements Sprite, Collidable {
 
+    private double x;
+    private final double y;
+    private final double width;
+    private final double height;
     private Rectangle rect;
+    private long version;
     private java.awt.Color color;
     private biuoop.KeyboardSensor keyboard;
     private final int borderLeft = 20;
@@ -21,6 +28,10 @@ public class Paddle implements Sprite, Collidable {
      * @param keyboard the keyboard sensor for controlling the paddle
      */
     public Paddle(Rectangle rect, java.awt.Color color, KeyboardSensor keyboard) {
+        this.x = rect.getUpperLeft().getX();
+        this.y = rect.getUpperLeft().getY();
+        this.width = rect.getWidth();
+        this.height = rect.getHeight();
         this.rect = rect;
         this.color = color;
         this.keyboard = keyboard;
@@ -30,23 +41,40 @@ public class Paddle implements Sprite, Collidable {
      * Moves the paddle to the left.
      */
     public void moveLeft() {
-        this.rect = new Rectangle(new Point(this.rect.getUpperLeft().getX() - 5, this.rect.getUpperLeft().getY()),
-                this.rect.getWidth(), this.rect.getHeight());
+        moveTo(this.x - 5);
     }
 
     /**
      * Moves the paddle to the right.
      */
     public void moveRight() {
-        this.rect = new Rectangle(new Point(this.rect.getUpperLeft().getX() + 5, this.rect.getUpperLeft().getY()),
-                this.rect.getWidth(), this.rect.getHeight());
+        moveTo(this.x + 5);
+    }
+
+    /**
+     * Moves the paddle to a new horizontal position and bumps its version.
+     *
+     * @param newX the new x-coordinate of the left side of the paddle
+     */
+    private void moveTo(double newX) {
+        this.x = newX;
+        this.rect = null;
+        this.version++;
+    }
+
+    /**
+     * Gets the color of the paddle.
+     *
+     * @return the color of the paddle
+     */
+    public java.awt.Color getColor() {
+        return this.color;
     }
 
     @Override
     public void drawOn(DrawSurface d) {
         d.setColor(this.color);
-        d.fillRectangle((int) this.rect.getUpperLeft().getX(), (int) this.rect.getUpperLeft().getY(),
-                (int) this.rect.getWidth(), (int) this.rect.getHeight());
+        d.fillRectangle((int) this.x, (int) this.y, (int) this.width, (int) this.height);
     }
 
     /**
@@ -63,14 +91,11 @@ public class Paddle implements Sprite, Collidable {
         if (this.keyboard.isPressed(KeyboardSensor.RIGHT_KEY)) {
             moveRight();
         }
-        if (this.rect.getUpperLeft().getX() < borderLeft) {
-            this.rect = new Rectangle(new Point(borderRight - this.rect.getWidth(),
-                    this.rect.getUpperLeft().getY()), this.rect.getWidth(),
-                    this.rect.getHeight());
+        if (this.x < borderLeft) {
+            moveTo(borderRight - this.width);
         }
-        if (this.rect.getUpperLeft().getX() + this.rect.getWidth() > 780) {
-            this.rect = new Rectangle(new Point(borderLeft, this.rect.getUpperLeft().getY()), this.rect.getWidth(),
-                    this.rect.getHeight());
+        if (this.x + this.width > 780) {
+            moveTo(borderLeft);
         }
     }
 
@@ -80,7 +105,25 @@ public class Paddle implements Sprite, Collidable {
      * @return the rectangle representing the collision shape of the object
      */
     public Rectangle getCollisionRectangle() {
-        return this.rect;
+        Rectangle current = this.rect;
+        if (current == null) {
+            current = new Rectangle(new Point(this.x, this.y), this.width, this.height);
+            this.rect = current;
+        }
+        return current;
+    }
+
+    @Override
+    public void copyBounds(double[] packed, int offset) {
+        packed[offset] = this.x;
+        packed[offset + 1] = this.y;
+        packed[offset + 2] = this.x + this.width;
+        packed[offset + 3] = this.y + this.height;
+    }
+
+    @Override
+    public long getVersion() {
+        return this.version;
     }
 
     /**
@@ -92,28 +135,40 @@ public class Paddle implements Sprite, Collidable {
      * @param currentVelocity the current velocity of the object that collided with this object
      * @return the new velocity after the collision
      */
-
     public Velocity hit(Point collisionPoint, Velocity currentVelocity) {
-        double dx = currentVelocity.getDx();
-        double dy = currentVelocity.getDy();
-        double x = collisionPoint.getX();
+        Velocity velocity = new Velocity(currentVelocity.getDx(), currentVelocity.getDy());
+        hit(collisionPoint.getX(), collisionPoint.getY(), velocity);
+        return velocity;
+    }
+
+    /**
+     * Notifies the object that a collision occurred at the specified point, and changes the velocity in place
+     * according to the region of the paddle that was hit.
+     *
+     * @param collisionX the x-coordinate of the point of collision
+     * @param collisionY the y-coordinate of the point of collision
+     * @param velocity   the current velocity, changed to the velocity after the collision
+     */
+    @Override
+    public void hit(double collisionX, double collisionY, Velocity velocity) {
+        double dx = velocity.getDx();
+        double dy = velocity.getDy();
         double regionWidth = (borderRight - borderLeft) / 5.0;
         double speed = Math.sqrt(dx * dx + dy * dy);
 
         // Determine which region the ball hit
-        if (x >= borderLeft && x < borderLeft + regionWidth) {
-            return Velocity.fromAngleAndSpeed(60, -speed); // Region 1
-        } else if (x >= borderLeft + regionWidth && x < borderLeft + 2 * regionWidth) {
-            return Velocity.fromAngleAndSpeed(30, -speed); // Region 2
-        } else if (x >= borderLeft + 2 * regionWidth && x < borderLeft + 3 * regionWidth) {
-            return new Velocity(dx, -dy); // Region 3 (middle region, no angle change)
-        } else if (x >= borderLeft + 3 * regionWidth && x < borderLeft + 4 * regionWidth) {
-            return Velocity.fromAngleAndSpeed(330, -speed); // Region 4
-        } else if (x >= borderLeft + 4 * regionWidth && x <= borderRight) {
-            return Velocity.fromAngleAndSpeed(300, -speed); // Region 5
+        if (collisionX >= borderLeft && collisionX < borderLeft + regionWidth) {
+            velocity.setAngleAndSpeed(60, -speed); // Region 1
+        } else if (collisionX >= borderLeft + regionWidth && collisionX < borderLeft + 2 * regionWidth) {
+            velocity.setAngleAndSpeed(30, -speed); // Region 2
+        } else if (collisionX >= borderLeft + 2 * regionWidth && collisionX < borderLeft + 3 * regionWidth) {
+            velocity.set(dx, -dy); // Region 3 (middle region, no angle change)
+        } else if (collisionX >= borderLeft + 3 * regionWidth && collisionX < borderLeft + 4 * regionWidth) {
+            velocity.setAngleAndSpeed(330, -speed); // Region 4
+        } else if (collisionX >= borderLeft + 4 * regionWidth && collisionX <= borderRight) {
+            velocity.setAngleAndSpeed(300, -speed); // Region 5
         }
-        // In case the collision point doesn't fall into any specific region (shouldn't happen)
-        return new Velocity(dx, dy);
+        // In case the collision point doesn't fall into any specific region (shouldn't happen), it is unchanged
     }
 
     /**
@@ -122,7 +177,7 @@ public class Paddle implements Sprite, Collidable {
      * @param g the game to add the paddle to
      */
     public void addToGame(Game g) {
-        g.addCollidable(this);
+        g.addMovingCollidable(this);
         g.addSprite(this);
     }
 }
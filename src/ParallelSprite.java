@@ -0,0 +1,15 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The ParallelSprite interface represents a sprite that can spread its work for a single tick over several threads.
+ * Both ways of passing time must leave the sprite in exactly the same state.
+ */
+public interface ParallelSprite extends Sprite {
+
+    /**
+     * Indicates that time has passed, doing the work on the given pool.
+     *
+     * @param pool the pool to run the work on
+     */
+    void timePassed(ForkJoinPool pool);
+}
@@ -4,11 +4,44 @@ import java.util.List;
 /**
  * The Rectangle class represents a rectangle defined by its upper-left corner, width, and height.
  * It provides methods to get its properties and calculate intersection points with a line.
+ * A Rectangle never changes: its bounds are computed once, so collision tests read them directly, and its edges
+ * and packed bounds are built once, the first time they are needed.
  */
 public class Rectangle {
-    private Point upperLeft;
-    private double width;
-    private double height;
+    /**
+     * The left side, whose outward normal is (-1, 0).
+     */
+    public static final int LEFT = 1;
+    /**
+     * The right side, whose outward normal is (1, 0).
+     */
+    public static final int RIGHT = 2;
+    /**
+     * The top side, whose outward normal is (0, -1).
+     */
+    public static final int TOP = 4;
+    /**
+     * The bottom side, whose outward normal is (0, 1).
+     */
+    public static final int BOTTOM = 8;
+    /**
+     * The sides whose normals are horizontal: a hit on them reverses the horizontal velocity.
+     */
+    public static final int VERTICAL_SIDES = LEFT | RIGHT;
+    /**
+     * The sides whose normals are vertical: a hit on them reverses the vertical velocity.
+     */
+    public static final int HORIZONTAL_SIDES = TOP | BOTTOM;
+
+    private final Point upperLeft;
+    private final double width;
+    private final double height;
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+    private volatile double[] bounds;
+    private Line[] edges;
 
     /**
      * Constructs a Rectangle with the specified upper-left corner, width, and height.
@@ -21,6 +54,10 @@ public class Rectangle {
         this.upperLeft = upperLeft;
         this.width = width;
         this.height = height;
+        this.minX = upperLeft.getX();
+        this.minY = upperLeft.getY();
+        this.maxX = this.minX + width;
+        this.maxY = this.minY + height;
     }
 
     /**
@@ -50,6 +87,82 @@ public class Rectangle {
         return height;
     }
 
+    /**
+     * Returns the x-coordinate of the left side of the rectangle.
+     *
+     * @return the smallest x-coordinate of the rectangle
+     */
+    public double getMinX() {
+        return minX;
+    }
+
+    /**
+     * Returns the y-coordinate of the top side of the rectangle.
+     *
+     * @return the smallest y-coordinate of the rectangle
+     */
+    public double getMinY() {
+        return minY;
+    }
+
+    /**
+     * Returns the x-coordinate of the right side of the rectangle.
+     *
+     * @return the largest x-coordinate of the rectangle
+     */
+    public double getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Returns the y-coordinate of the bottom side of the rectangle.
+     *
+     * @return the largest y-coordinate of the rectangle
+     */
+    public double getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Copies the bounds of the rectangle into an array of packed bounds, as read by
+     * {@link #sweptCircleHitParameter(double[], int, double, double, double, double, double)}.
+     *
+     * @param packed the array to copy into
+     * @param offset the index of the first of the four bounds in the array
+     */
+    public void copyBounds(double[] packed, int offset) {
+        packed[offset] = this.minX;
+        packed[offset + 1] = this.minY;
+        packed[offset + 2] = this.maxX;
+        packed[offset + 3] = this.maxY;
+    }
+
+    /**
+     * Returns the sides of the rectangle a point lies on, such as a collision point.
+     * The point is compared exactly with the precomputed bounds, which collision points are snapped to.
+     *
+     * @param x the x-coordinate of the point
+     * @param y the y-coordinate of the point
+     * @return a combination of {@link #LEFT}, {@link #RIGHT}, {@link #TOP} and {@link #BOTTOM}; a corner gives two
+     *         sides, and a point on no side gives 0
+     */
+    public int sidesAt(double x, double y) {
+        int sides = 0;
+        if (x == minX) {
+            sides |= LEFT;
+        }
+        if (x == maxX) {
+            sides |= RIGHT;
+        }
+        if (y == minY) {
+            sides |= TOP;
+        }
+        if (y == maxY) {
+            sides |= BOTTOM;
+        }
+        return sides;
+    }
+
     /**
      * Returns a list of intersection points between the rectangle and a specified line.
      * If there are no intersection points, the list will be empty.
@@ -60,18 +173,8 @@ public class Rectangle {
     public List<Point> intersectionPoints(Line line) {
         List<Point> intersectionPoints = new ArrayList<>();
 
-        // Define the edges of the rectangle
-        Line[] edges = {
-                new Line(upperLeft, new Point(upperLeft.getX() + width, upperLeft.getY())), // Top edge
-                new Line(new Point(upperLeft.getX() + width, upperLeft.getY()),
-                        new Point(upperLeft.getX() + width, upperLeft.getY() + height)), // Right edge
-                new Line(new Point(upperLeft.getX(), upperLeft.getY() + height),
-                        new Point(upperLeft.getX() + width, upperLeft.getY() + height)), // Bottom edge
-                new Line(upperLeft, new Point(upperLeft.getX(), upperLeft.getY() + height)) // Left edge
-        };
-
         // Check intersections with each edge
-        for (Line edge : edges) {
+        for (Line edge : edges()) {
             Point intersection = line.intersectionWith(edge);
             if (intersection != null) {
                 intersectionPoints.add(intersection);
@@ -80,4 +183,287 @@ public class Rectangle {
 
         return intersectionPoints;
     }
+
+    /**
+     * Returns the edges of the rectangle, building them the first time.
+     * Building them twice from two threads is harmless, since both build the same edges.
+     *
+     * @return the top, right, bottom and left edges
+     */
+    private Line[] edges() {
+        Line[] result = this.edges;
+        if (result == null) {
+            result = new Line[] {
+                    new Line(upperLeft, new Point(maxX, minY)), // Top edge
+                    new Line(new Point(maxX, minY), new Point(maxX, maxY)), // Right edge
+                    new Line(new Point(minX, maxY), new Point(maxX, maxY)), // Bottom edge
+                    new Line(upperLeft, new Point(minX, maxY)) // Left edge
+            };
+            this.edges = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the packed bounds of the rectangle, building them the first time. Only the instance sweeps read
+     * them; the environment packs its own copy of the bounds with {@link #copyBounds(double[], int)}.
+     * Building them twice from two threads is harmless, since both build the same bounds.
+     *
+     * @return the left, top, right and bottom of the rectangle
+     */
+    private double[] bounds() {
+        double[] result = this.bounds;
+        if (result == null) {
+            result = new double[] {this.minX, this.minY, this.maxX, this.maxY};
+            this.bounds = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns when a circle moving from one position to another first touches the rectangle.
+     * The circle is swept against the rectangle grown by its radius on every side, so the corners are treated as
+     * square rather than rounded; a circle passing diagonally close to a corner may touch it slightly early.
+     * A circle whose center starts inside the rectangle, such as a ball inside the arena, touches it when it
+     * reaches the inner side it moves towards. A circle already touching the rectangle only hits it if it moves
+     * towards it, so a ball that has just bounced off does not hit it again.
+     *
+     * @param x0 the x-coordinate of the center of the circle at the start of the move
+     * @param y0 the y-coordinate of the center of the circle at the start of the move
+     * @param x1 the x-coordinate of the center of the circle at the end of the move
+     * @param y1 the y-coordinate of the center of the circle at the end of the move
+     * @param r  the radius of the circle
+     * @return the fraction of the move, between 0 and 1, at which the circle first touches the rectangle, or NaN
+     *         if it does not touch it during the move
+     */
+    public double sweptCircleHitParameter(double x0, double y0, double x1, double y1, double r) {
+        return sweptCircleHitParameter(bounds(), 0, x0, y0, x1, y1, r);
+    }
+
+    /**
+     * Returns when a circle moving from one position to another first touches a rectangle given by its bounds,
+     * exactly as {@link #sweptCircleHitParameter(double, double, double, double, double)} does. The bounds are read
+     * from an array holding many rectangles, four values each, so a collision query over many rectangles reads
+     * them in sequence instead of going through their objects.
+     *
+     * @param packed the packed bounds: the left, top, right and bottom of every rectangle, in turn
+     * @param offset the index of the left of the rectangle in the array
+     * @param x0     the x-coordinate of the center of the circle at the start of the move
+     * @param y0     the y-coordinate of the center of the circle at the start of the move
+     * @param x1     the x-coordinate of the center of the circle at the end of the move
+     * @param y1     the y-coordinate of the center of the circle at the end of the move
+     * @param r      the radius of the circle
+     * @return the fraction of the move, between 0 and 1, at which the circle first touches the rectangle, or NaN
+     *         if it does not touch it during the move
+     */
+    public static double sweptCircleHitParameter(double[] packed, int offset, double x0, double y0, double x1,
+                                                 double y1, double r) {
+        double left = packed[offset];
+        double top = packed[offset + 1];
+        double right = packed[offset + 2];
+        double bottom = packed[offset + 3];
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+
+        if (x0 >= left && x0 <= right && y0 >= top && y0 <= bottom) {
+            double t = Math.min(innerExit(x0, dx, left, right, r), innerExit(y0, dy, top, bottom, r));
+            return t <= 1 ? Math.max(t, 0) : Double.NaN;
+        }
+
+        double enterX;
+        double exitX;
+        if (dx == 0) {
+            if (x0 < left - r || x0 > right + r) {
+                return Double.NaN;
+            }
+            enterX = Double.NEGATIVE_INFINITY;
+            exitX = Double.POSITIVE_INFINITY;
+        } else {
+            double t1 = (left - r - x0) / dx;
+            double t2 = (right + r - x0) / dx;
+            enterX = Math.min(t1, t2);
+            exitX = Math.max(t1, t2);
+        }
+        double enterY;
+        double exitY;
+        if (dy == 0) {
+            if (y0 < top - r || y0 > bottom + r) {
+                return Double.NaN;
+            }
+            enterY = Double.NEGATIVE_INFINITY;
+            exitY = Double.POSITIVE_INFINITY;
+        } else {
+            double t1 = (top - r - y0) / dy;
+            double t2 = (bottom + r - y0) / dy;
+            enterY = Math.min(t1, t2);
+            exitY = Math.max(t1, t2);
+        }
+
+        double enter = Math.max(enterX, enterY);
+        double exit = Math.min(exitX, exitY);
+        if (enter > exit || enter > 1 || exit < 0) {
+            return Double.NaN;
+        }
+        if (enter >= 0) {
+            return enter;
+        }
+        // The circle already touches the rectangle: it hits it now if it moves towards it, and never otherwise
+        boolean separating = (x0 < left && dx < 0) || (x0 > right && dx > 0)
+                || (y0 < top && dy < 0) || (y0 > bottom && dy > 0);
+        boolean approaching = (x0 < left && dx > 0) || (x0 > right && dx < 0)
+                || (y0 < top && dy > 0) || (y0 > bottom && dy < 0);
+        return approaching && !separating ? 0 : Double.NaN;
+    }
+
+    /**
+     * Returns the point where a circle moving from one position to another first touches the rectangle.
+     * The point lies exactly on the side that was touched, or on the corner if two sides were touched at once.
+     *
+     * @param x0 the x-coordinate of the center of the circle at the start of the move
+     * @param y0 the y-coordinate of the center of the circle at the start of the move
+     * @param x1 the x-coordinate of the center of the circle at the end of the move
+     * @param y1 the y-coordinate of the center of the circle at the end of the move
+     * @param r  the radius of the circle
+     * @return the point of contact, or null if the circle does not touch the rectangle during the move
+     */
+    public Point sweptCircleContactPoint(double x0, double y0, double x1, double y1, double r) {
+        return sweptCircleContactPoint(bounds(), 0, x0, y0, x1, y1, r);
+    }
+
+    /**
+     * Returns the point where a circle moving from one position to another first touches a rectangle given by its
+     * bounds, exactly as {@link #sweptCircleContact(double[], int, CollisionBatch, int)} finds it. Only the point
+     * is created.
+     *
+     * @param packed the packed bounds: the left, top, right and bottom of every rectangle, in turn
+     * @param offset the index of the left of the rectangle in the array
+     * @param x0     the x-coordinate of the center of the circle at the start of the move
+     * @param y0     the y-coordinate of the center of the circle at the start of the move
+     * @param x1     the x-coordinate of the center of the circle at the end of the move
+     * @param y1     the y-coordinate of the center of the circle at the end of the move
+     * @param r      the radius of the circle
+     * @return the point of contact, or null if the circle does not touch the rectangle during the move
+     */
+    public static Point sweptCircleContactPoint(double[] packed, int offset, double x0, double y0, double x1,
+                                                double y1, double r) {
+        double t = sweptCircleHitParameter(packed, offset, x0, y0, x1, y1, r);
+        if (Double.isNaN(t)) {
+            return null;
+        }
+        int sides = innerSides(packed, offset, x0, y0, x1 - x0, y1 - y0, r);
+        double x = contactCoordinate(x0, x1 - x0, packed[offset], packed[offset + 2], t, (sides & LEFT) != 0,
+                (sides & RIGHT) != 0);
+        double y = contactCoordinate(y0, y1 - y0, packed[offset + 1], packed[offset + 3], t, (sides & TOP) != 0,
+                (sides & BOTTOM) != 0);
+        return new Point(x, y);
+    }
+
+    /**
+     * Finds the point where a circle moving as in one query of a batch first touches a rectangle given by its
+     * bounds, and records it as the contact point of the query. Nothing is created.
+     *
+     * @param packed the packed bounds: the left, top, right and bottom of every rectangle, in turn
+     * @param offset the index of the left of the rectangle in the array
+     * @param batch  the batch holding the move of the circle
+     * @param index  the index of the query
+     * @return true if the circle touches the rectangle during the move, false otherwise
+     */
+    public static boolean sweptCircleContact(double[] packed, int offset, CollisionBatch batch, int index) {
+        double x0 = batch.getStartX(index);
+        double y0 = batch.getStartY(index);
+        double x1 = batch.getEndX(index);
+        double y1 = batch.getEndY(index);
+        double r = batch.getRadius(index);
+        double t = sweptCircleHitParameter(packed, offset, x0, y0, x1, y1, r);
+        if (Double.isNaN(t)) {
+            return false;
+        }
+        int sides = innerSides(packed, offset, x0, y0, x1 - x0, y1 - y0, r);
+        double x = contactCoordinate(x0, x1 - x0, packed[offset], packed[offset + 2], t, (sides & LEFT) != 0,
+                (sides & RIGHT) != 0);
+        double y = contactCoordinate(y0, y1 - y0, packed[offset + 1], packed[offset + 3], t, (sides & TOP) != 0,
+                (sides & BOTTOM) != 0);
+        batch.setContact(index, x, y);
+        return true;
+    }
+
+    /**
+     * Returns the sides a circle whose center starts inside a rectangle given by its bounds reaches first: one side,
+     * or two at a corner.
+     *
+     * @param packed the packed bounds: the left, top, right and bottom of every rectangle, in turn
+     * @param offset the index of the left of the rectangle in the array
+     * @param x0     the x-coordinate of the center of the circle at the start of the move
+     * @param y0     the y-coordinate of the center of the circle at the start of the move
+     * @param dx     the change in the x-coordinate during the move
+     * @param dy     the change in the y-coordinate during the move
+     * @param r      the radius of the circle
+     * @return a combination of {@link #LEFT}, {@link #RIGHT}, {@link #TOP} and {@link #BOTTOM}, or 0 if the center
+     *         starts outside the rectangle
+     */
+    private static int innerSides(double[] packed, int offset, double x0, double y0, double dx, double dy,
+                                  double r) {
+        double left = packed[offset];
+        double top = packed[offset + 1];
+        double right = packed[offset + 2];
+        double bottom = packed[offset + 3];
+        if (x0 < left || x0 > right || y0 < top || y0 > bottom) {
+            return 0;
+        }
+        double exitX = innerExit(x0, dx, left, right, r);
+        double exitY = innerExit(y0, dy, top, bottom, r);
+        int sides = 0;
+        if (exitX <= exitY) {
+            sides |= dx > 0 ? RIGHT : LEFT;
+        }
+        if (exitY <= exitX) {
+            sides |= dy > 0 ? BOTTOM : TOP;
+        }
+        return sides;
+    }
+
+    /**
+     * Returns one coordinate of the point where a circle touches a rectangle: on the inner side it reaches if it
+     * starts inside, or else where its center is at the time of the hit, moved onto the rectangle.
+     *
+     * @param start the coordinate of the center of the circle at the start of the move
+     * @param delta the change in the coordinate during the move
+     * @param min   the coordinate of the near side of the rectangle
+     * @param max   the coordinate of the far side of the rectangle
+     * @param t     the fraction of the move at which the circle touches the rectangle
+     * @param onMin true if the circle starts inside and reaches the near side first
+     * @param onMax true if the circle starts inside and reaches the far side first
+     * @return the coordinate of the point of contact
+     */
+    private static double contactCoordinate(double start, double delta, double min, double max, double t,
+                                            boolean onMin, boolean onMax) {
+        if (onMin) {
+            return min;
+        }
+        if (onMax) {
+            return max;
+        }
+        return Math.min(Math.max(start + t * delta, min), max);
+    }
+
+    /**
+     * Returns when a circle moving inside the rectangle along one axis touches the side it moves towards.
+     *
+     * @param start the coordinate of the center of the circle at the start of the move
+     * @param delta the change in the coordinate during the move
+     * @param min   the coordinate of the near side of the rectangle
+     * @param max   the coordinate of the far side of the rectangle
+     * @param r     the radius of the circle
+     * @return the fraction of the move at which the circle touches the side, possibly negative if it already
+     *         crossed it, or positive infinity if the circle does not move along the axis
+     */
+    private static double innerExit(double start, double delta, double min, double max, double r) {
+        if (delta > 0) {
+            return (max - r - start) / delta;
+        }
+        if (delta < 0) {
+            return (min + r - start) / delta;
+        }
+        return Double.POSITIVE_INFINITY;
+    }
 }
@@ -0,0 +1,48 @@
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * ReplayGame class that replays a game recorded with "record" by {@link Ass3Game}, without a GUI and as fast as
+ * possible, and reports whether the replay stayed identical to the recording.
+ */
+public class ReplayGame {
+    /**
+     * Main method that replays a recorded game.
+     * The first argument is the input log to replay. An optional second argument is the number of threads to
+     * update the balls on; 0 or missing runs sequentially, and an optional third argument is the level file the
+     * game was recorded on, if not the built-in level. Exits with status 1 if the replay diverged.
+     *
+     * @param args command line arguments.
+     * @throws IOException if the input log or the level cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: ReplayGame <input log> [threads] [level]");
+            System.exit(2);
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+
+        InputReplayer replayer = new InputReplayer(args[0]);
+        Game game = new Game();
+        game.setInputLog(replayer);
+        if (args.length > 2) {
+            game.setLevel(Level.load(args[2]));
+        }
+        game.initializeHeadless();
+        if (threads > 0) {
+            game.setParallelUpdates(new ForkJoinPool(threads));
+        }
+        long startTime = System.nanoTime();
+        long ticksRun = game.runHeadless(0, 0);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        replayer.close();
+        System.out.printf("replayed %d ticks (%.1f s of play) in %.3f s (%.0f ticks/s), seed %d%n", ticksRun,
+                ticksRun / 60.0, seconds, ticksRun / seconds, replayer.getSeed());
+        if (replayer.getDivergedAt() >= 0) {
+            System.out.printf("diverged at tick %d: recorded hash %016x, replayed hash %016x%n",
+                    replayer.getDivergedAt(), replayer.getExpectedHash(), replayer.getActualHash());
+            System.exit(1);
+        }
+        System.out.printf("no divergence, checked every %d ticks%n", replayer.getHashInterval());
+    }
+}
@@ -0,0 +1,270 @@
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * The SaveState class reads and writes snapshots of a whole game world in a flat, versioned binary file, through a
+ * memory-mapped {@link FileChannel}. Every kind of value is stored as one column for all objects, in little-endian
+ * order, so saving and loading copies arrays in bulk instead of serializing objects one by one.
+ * <p>
+ * The file starts with a header: the magic number "ARKS", the format version, the tick and the seed of the game,
+ * the number of balls and of blocks, the paddle's rectangle as four doubles, its color, and the number of blocks
+ * that were added to the game before the paddle, so a loaded game adds everything in the same order.
+ * The balls follow, in the layout of {@link BallSystem#writeState(java.nio.ByteBuffer)}, and then the blocks: the
+ * x- and y-coordinates of their upper-left corners, their widths and heights, their colors, and one byte per block
+ * that is 1 if the block is in the game and 0 if it was removed.
+ * <p>
+ * Saving does not force the file to the disk; the operating system writes it back on its own, so a save costs
+ * no more than copying the state into memory.
+ */
+public final class SaveState {
+    /**
+     * The magic number at the start of every save state, "ARKS".
+     */
+    public static final int MAGIC = 0x41524B53;
+    /**
+     * The version of the save state format.
+     */
+    public static final int VERSION = 1;
+    /**
+     * The size of the header, in bytes.
+     */
+    public static final int HEADER_BYTES = 72;
+    /**
+     * The size of the state of one ball, in bytes.
+     */
+    public static final int BALL_BYTES = 4 * Double.BYTES + 2 * Integer.BYTES;
+    /**
+     * The size of the state of one block, in bytes.
+     */
+    public static final int BLOCK_BYTES = 4 * Double.BYTES + Integer.BYTES + 1;
+
+    private final MappedByteBuffer buffer;
+    private final long tick;
+    private final long seed;
+    private final int ballCount;
+    private final int blockCount;
+    private final Rectangle paddleRectangle;
+    private final Color paddleColor;
+    private final int paddleOrder;
+
+    /**
+     * Constructs a SaveState by reading the header of a mapped save state file.
+     *
+     * @param buffer   the mapped file, positioned after the magic number and the version
+     * @param fileName the name of the file, for error messages
+     * @throws IOException if the file is shorter than its header says
+     */
+    private SaveState(MappedByteBuffer buffer, String fileName) throws IOException {
+        this.buffer = buffer;
+        this.tick = buffer.getLong();
+        this.seed = buffer.getLong();
+        this.ballCount = buffer.getInt();
+        this.blockCount = buffer.getInt();
+        double minX = buffer.getDouble();
+        double minY = buffer.getDouble();
+        double width = buffer.getDouble();
+        double height = buffer.getDouble();
+        this.paddleRectangle = new Rectangle(new Point(minX, minY), width, height);
+        this.paddleColor = new Color(buffer.getInt(), true);
+        this.paddleOrder = buffer.getInt();
+        buffer.position(HEADER_BYTES);
+        if (buffer.capacity() < fileSize(this.ballCount, this.blockCount)) {
+            throw new IOException(fileName + " is truncated");
+        }
+    }
+
+    /**
+     * Returns the size of a save state file.
+     *
+     * @param balls  the number of balls
+     * @param blocks the number of blocks
+     * @return the size of the file, in bytes
+     */
+    private static long fileSize(int balls, int blocks) {
+        return HEADER_BYTES + (long) balls * BALL_BYTES + (long) blocks * BLOCK_BYTES;
+    }
+
+    /**
+     * Saves the state of a game world into a file, replacing it if it exists.
+     *
+     * @param fileName    the name of the file to save to
+     * @param tick        the number of ticks the game has run
+     * @param seed        the seed of the game
+     * @param paddle      the paddle
+     * @param paddleOrder the number of blocks that were added to the game before the paddle
+     * @param balls       the balls
+     * @param blocks      all blocks of the game, including the ones that were removed from it
+     * @throws IOException if the file cannot be written
+     */
+    public static void save(String fileName, long tick, long seed, Paddle paddle, int paddleOrder,
+                            BallSystem balls, List<Block> blocks) throws IOException {
+        int blockCount = blocks.size();
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(balls.size(), blockCount));
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        Rectangle rect = paddle.getCollisionRectangle();
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(tick).putLong(seed).putInt(balls.size()).putInt(blockCount);
+        buffer.putDouble(rect.getMinX()).putDouble(rect.getMinY()).putDouble(rect.getWidth())
+                .putDouble(rect.getHeight());
+        buffer.putInt(paddle.getColor().getRGB()).putInt(paddleOrder);
+
+        balls.writeState(buffer);
+
+        int start = buffer.position();
+        int columnBytes = blockCount * Double.BYTES;
+        int colorStart = start + 4 * columnBytes;
+        int inGameStart = colorStart + blockCount * Integer.BYTES;
+        for (int i = 0; i < blockCount; i++) {
+            Block block = blocks.get(i);
+            Rectangle blockRect = block.getCollisionRectangle();
+            int offset = start + i * Double.BYTES;
+            buffer.putDouble(offset, blockRect.getMinX());
+            buffer.putDouble(offset + columnBytes, blockRect.getMinY());
+            buffer.putDouble(offset + 2 * columnBytes, blockRect.getWidth());
+            buffer.putDouble(offset + 3 * columnBytes, blockRect.getHeight());
+            buffer.putInt(colorStart + i * Integer.BYTES, block.getColor().getRGB());
+            buffer.put(inGameStart + i, (byte) (block.isInGame() ? 1 : 0));
+        }
+    }
+
+    /**
+     * Opens a save state file and reads its header. The balls and the blocks are read on demand.
+     *
+     * @param fileName the name of the file to load
+     * @return the save state
+     * @throws IOException if the file cannot be read or is not a save state of a supported version
+     */
+    public static SaveState load(String fileName) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException(fileName + " is not a save state");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException(fileName + " is not a save state");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException(fileName + " has unsupported save state version " + version);
+        }
+        return new SaveState(buffer, fileName);
+    }
+
+    /**
+     * Returns the number of ticks the game had run when it was saved.
+     *
+     * @return the tick of the game
+     */
+    public long getTick() {
+        return this.tick;
+    }
+
+    /**
+     * Returns the seed of the saved game.
+     *
+     * @return the seed of the game
+     */
+    public long getSeed() {
+        return this.seed;
+    }
+
+    /**
+     * Returns the number of saved balls.
+     *
+     * @return the number of balls
+     */
+    public int getBallCount() {
+        return this.ballCount;
+    }
+
+    /**
+     * Returns the number of saved blocks, including the ones that were removed from the game.
+     *
+     * @return the number of blocks
+     */
+    public int getBlockCount() {
+        return this.blockCount;
+    }
+
+    /**
+     * Returns the rectangle of the saved paddle.
+     *
+     * @return the paddle's rectangle
+     */
+    public Rectangle getPaddleRectangle() {
+        return this.paddleRectangle;
+    }
+
+    /**
+     * Returns the color of the saved paddle.
+     *
+     * @return the paddle's color
+     */
+    public Color getPaddleColor() {
+        return this.paddleColor;
+    }
+
+    /**
+     * Returns the number of blocks that were added to the game before the paddle.
+     *
+     * @return the position of the paddle among the blocks
+     */
+    public int getPaddleOrder() {
+        return this.paddleOrder;
+    }
+
+    /**
+     * Replaces all balls of the system with the saved balls.
+     *
+     * @param balls the ball system to read the balls into
+     */
+    public void readBalls(BallSystem balls) {
+        ByteBuffer view = this.buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        view.position(HEADER_BYTES);
+        balls.readState(view, this.ballCount);
+    }
+
+    /**
+     * Creates the saved blocks.
+     *
+     * @param inGame filled with whether each block was in the game when it was saved; at least as long as the
+     *               number of blocks
+     * @return the blocks, in the order they were saved
+     */
+    public Block[] readBlocks(boolean[] inGame) {
+        int start = HEADER_BYTES + this.ballCount * BALL_BYTES;
+        int columnBytes = this.blockCount * Double.BYTES;
+        int colorStart = start + 4 * columnBytes;
+        int inGameStart = colorStart + this.blockCount * Integer.BYTES;
+        Block[] blocks = new Block[this.blockCount];
+        Color last = null;
+        for (int i = 0; i < this.blockCount; i++) {
+            int offset = start + i * Double.BYTES;
+            Rectangle rect = new Rectangle(new Point(this.buffer.getDouble(offset),
+                    this.buffer.getDouble(offset + columnBytes)), this.buffer.getDouble(offset + 2 * columnBytes),
+                    this.buffer.getDouble(offset + 3 * columnBytes));
+            int argb = this.buffer.getInt(colorStart + i * Integer.BYTES);
+            // Blocks mostly share a few colors, so consecutive equal colors share one object
+            if (last == null || last.getRGB() != argb) {
+                last = new Color(argb, true);
+            }
+            blocks[i] = new Block(rect, last);
+            inGame[i] = this.buffer.get(inGameStart + i) != 0;
+        }
+        return blocks;
+    }
+}
@@ -0,0 +1,58 @@
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The SnapshotExchange class hands recorded frames from the simulation thread to the render thread without locks.
+ * It is a triple buffer: the simulation thread records into its own back buffer and publishes it by swapping it
+ * with the shared ready buffer, and the render thread swaps its front buffer with the ready buffer whenever a
+ * newer frame was published. No buffer is ever used by both threads at once, and nothing is allocated per frame.
+ */
+public class SnapshotExchange {
+    private final AtomicReference<DrawCommandBuffer> ready;
+    private DrawCommandBuffer back;
+    private DrawCommandBuffer front;
+
+    /**
+     * Constructs a SnapshotExchange of frames of the given size.
+     *
+     * @param width  the width of a frame
+     * @param height the height of a frame
+     */
+    public SnapshotExchange(int width, int height) {
+        this.back = new DrawCommandBuffer(width, height);
+        this.front = new DrawCommandBuffer(width, height);
+        this.ready = new AtomicReference<>(new DrawCommandBuffer(width, height));
+    }
+
+    /**
+     * Returns an empty buffer to record the next frame into. Only the simulation thread may call this.
+     *
+     * @return the back buffer, cleared
+     */
+    public DrawCommandBuffer beginFrame() {
+        this.back.clear();
+        return this.back;
+    }
+
+    /**
+     * Publishes the frame recorded into the back buffer. Only the simulation thread may call this.
+     *
+     * @param sequence the sequence number of the frame, such as its tick; must grow from frame to frame
+     */
+    public void publish(long sequence) {
+        this.back.setSequence(sequence);
+        this.back = this.ready.getAndSet(this.back);
+    }
+
+    /**
+     * Returns the newest published frame. Only the render thread may call this, and the frame stays valid until
+     * its next call.
+     *
+     * @return the newest frame
+     */
+    public DrawCommandBuffer latest() {
+        if (this.ready.get().getSequence() > this.front.getSequence()) {
+            this.front = this.ready.getAndSet(this.front);
+        }
+        return this.front;
+    }
+}
@@ -1,48 +1,162 @@
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import biuoop.DrawSurface;
 
 /**
  * The SpriteCollection class represents a collection of Sprite objects.
  * It provides methods to add sprites, notify all sprites that time has passed,
  * and draw all sprites on a given DrawSurface.
+ * Sprites are always updated one after the other, in the order they were added; in parallel mode a
+ * {@link ParallelSprite} may spread its own update over a fork-join pool.
+ * Sprites can be removed at any time, even by another sprite while time passes. A removed sprite is skipped at
+ * once, and the collection is compacted at the end of the tick, keeping the drawing order of the other sprites.
  */
 public class SpriteCollection {
     private List<Sprite> sprites;
+    private List<ParallelSprite> parallelSprites;
+    private StaticLayer staticLayer;
+    private ForkJoinPool pool;
+    private HandleTable handles;
+    private int removedCount;
 
     /**
      * Constructs a new SpriteCollection.
      */
     public SpriteCollection() {
         this.sprites = new ArrayList<>();
+        this.parallelSprites = new ArrayList<>();
+        this.handles = new HandleTable();
     }
 
     /**
      * Adds a sprite to the collection.
      *
      * @param s the sprite to add
+     * @return the handle of the sprite, to remove it with
      */
-    public void addSprite(Sprite s) {
+    public int addSprite(Sprite s) {
         this.sprites.add(s);
+        // Resolved once here rather than with an instanceof check on every sprite in every tick
+        this.parallelSprites.add(s instanceof ParallelSprite ? (ParallelSprite) s : null);
+        return this.handles.allocate(this.sprites.size() - 1);
+    }
+
+    /**
+     * Removes a sprite from the collection. It is neither updated nor drawn after this call.
+     *
+     * @param handle the handle returned when the sprite was added; it must not be used again
+     */
+    public void removeSprite(int handle) {
+        int slot = this.handles.slotOf(handle);
+        this.sprites.set(slot, null);
+        this.parallelSprites.set(slot, null);
+        this.handles.release(handle);
+        this.removedCount++;
+    }
+
+    /**
+     * Adds a sprite that never moves to the collection. All static sprites are drawn together, as one cached
+     * layer, at the place in the drawing order where the first static sprite was added.
+     *
+     * @param s the static sprite to add
+     * @return the handle of the sprite in the static layer, to remove it with
+     */
+    public int addStaticSprite(StaticSprite s) {
+        if (this.staticLayer == null) {
+            this.staticLayer = new StaticLayer();
+            addSprite(this.staticLayer);
+        }
+        return this.staticLayer.addSprite(s);
+    }
+
+    /**
+     * Removes a static sprite from the collection. It is neither updated nor drawn after this call.
+     *
+     * @param handle the handle returned when the static sprite was added; it must not be used again
+     */
+    public void removeStaticSprite(int handle) {
+        this.staticLayer.removeSprite(handle);
+    }
+
+    /**
+     * Turns on parallel updates: parallel sprites do their work on the given pool.
+     * The sprites end up in exactly the same state as with sequential updates.
+     *
+     * @param forkJoinPool the pool to update parallel sprites on, or null to go back to sequential updates
+     */
+    public void setParallelUpdates(ForkJoinPool forkJoinPool) {
+        this.pool = forkJoinPool;
     }
 
     /**
      * Notifies all sprites that time has passed, causing them to perform their actions.
      */
     public void notifyAllTimePassed() {
-        for (Sprite s : sprites) {
-            s.timePassed();
+        // Indexed loops, since sprites may be removed, and added at the end, while they are notified
+        if (this.pool == null) {
+            for (int i = 0; i < this.sprites.size(); i++) {
+                Sprite s = this.sprites.get(i);
+                if (s != null) {
+                    s.timePassed();
+                }
+            }
+        } else {
+            for (int i = 0; i < this.sprites.size(); i++) {
+                ParallelSprite parallelSprite = this.parallelSprites.get(i);
+                if (parallelSprite != null) {
+                    parallelSprite.timePassed(this.pool);
+                } else {
+                    Sprite s = this.sprites.get(i);
+                    if (s != null) {
+                        s.timePassed();
+                    }
+                }
+            }
+        }
+        if (this.removedCount > 0) {
+            compact();
+        }
+    }
+
+    /**
+     * Drops the slots of removed sprites in a single pass, keeping the order of the other sprites.
+     */
+    private void compact() {
+        int kept = 0;
+        for (int i = 0; i < this.sprites.size(); i++) {
+            Sprite s = this.sprites.get(i);
+            if (s != null) {
+                if (kept != i) {
+                    this.sprites.set(kept, s);
+                    this.parallelSprites.set(kept, this.parallelSprites.get(i));
+                    this.handles.move(i, kept);
+                }
+                kept++;
+            }
         }
+        this.sprites.subList(kept, this.sprites.size()).clear();
+        this.parallelSprites.subList(kept, this.parallelSprites.size()).clear();
+        this.removedCount = 0;
     }
 
     /**
-     * Draws all sprites on the given DrawSurface.
+     * Draws all sprites on the given DrawSurface, each over the ones before it.
+     * When recording into a {@link DrawCommandBuffer}, every sprite is separated from the next by a barrier, so
+     * a batched replay only reorders the shapes of a single sprite.
      *
      * @param d the DrawSurface to draw on
      */
     public void drawAllOn(DrawSurface d) {
-        for (Sprite s : sprites) {
-            s.drawOn(d);
+        DrawCommandBuffer buffer = d instanceof DrawCommandBuffer ? (DrawCommandBuffer) d : null;
+        for (int i = 0; i < this.sprites.size(); i++) {
+            Sprite s = this.sprites.get(i);
+            if (s != null) {
+                s.drawOn(d);
+                if (buffer != null) {
+                    buffer.barrier();
+                }
+            }
         }
     }
 }
@@ -0,0 +1,142 @@
+import biuoop.DrawSurface;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The StaticLayer class draws a group of sprites that never move, such as the background, the borders and the
+ * bricks. The sprites are rasterized once into an off-screen image and every frame only draws that image, so a
+ * frame costs one draw call however many static sprites there are. The image is redrawn only after the layer is
+ * invalidated, when a sprite is added, removed or changes its look. Removed sprites are dropped from the layer's
+ * list the next time it is redrawn, in a single pass that keeps the drawing order of the others.
+ */
+public class StaticLayer implements Sprite {
+    private static final Color TRANSPARENT = new Color(0, 0, 0, 0);
+
+    private List<StaticSprite> sprites;
+    private BufferedImage image;
+    private BufferedImage spare;
+    private boolean valid;
+    private HandleTable handles;
+    private int removedCount;
+
+    /**
+     * Constructs an empty StaticLayer.
+     */
+    public StaticLayer() {
+        this.sprites = new ArrayList<>();
+        this.handles = new HandleTable();
+    }
+
+    /**
+     * Adds a sprite to the layer.
+     *
+     * @param s the sprite to add
+     * @return the handle of the sprite, to remove it with
+     */
+    public int addSprite(StaticSprite s) {
+        this.sprites.add(s);
+        s.setLayer(this);
+        invalidate();
+        return this.handles.allocate(this.sprites.size() - 1);
+    }
+
+    /**
+     * Removes a sprite from the layer.
+     *
+     * @param handle the handle returned when the sprite was added; it must not be used again
+     */
+    public void removeSprite(int handle) {
+        int slot = this.handles.slotOf(handle);
+        this.sprites.get(slot).setLayer(null);
+        this.sprites.set(slot, null);
+        this.handles.release(handle);
+        this.removedCount++;
+        invalidate();
+    }
+
+    /**
+     * Marks the cached image as out of date, so it is redrawn before the next frame.
+     */
+    public void invalidate() {
+        this.valid = false;
+    }
+
+    /**
+     * Draws the layer, redrawing its image first if it is out of date.
+     *
+     * @param d the DrawSurface to draw on
+     */
+    @Override
+    public void drawOn(DrawSurface d) {
+        if (!this.valid || this.image.getWidth() != d.getWidth() || this.image.getHeight() != d.getHeight()) {
+            redraw(d.getWidth(), d.getHeight());
+        }
+        d.drawImage(0, 0, this.image);
+    }
+
+    /**
+     * Clears the spare image and draws the sprites into it, then makes it the image of the layer.
+     * The layer keeps two images, created once for the size they are drawn at, and redraws the one it did not
+     * show last. A frame recorded with the current image and replayed on another thread, as in
+     * {@link Game#runPipelined()}, therefore keeps showing it while the next one is drawn.
+     *
+     * @param width  the width of the image
+     * @param height the height of the image
+     */
+    private void redraw(int width, int height) {
+        BufferedImage target = this.spare;
+        if (target == null || target.getWidth() != width || target.getHeight() != height) {
+            target = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+        Graphics2D g = target.createGraphics();
+        g.setBackground(TRANSPARENT);
+        g.clearRect(0, 0, width, height);
+        DrawSurface imageSurface = new GraphicsDrawSurface(g, width, height);
+        if (this.removedCount > 0) {
+            compact();
+        }
+        for (StaticSprite s : this.sprites) {
+            s.drawOn(imageSurface);
+        }
+        g.dispose();
+        this.spare = this.image;
+        this.image = target;
+        this.valid = true;
+    }
+
+    /**
+     * Notifies all sprites of the layer that time has passed.
+     */
+    @Override
+    public void timePassed() {
+        for (int i = 0; i < this.sprites.size(); i++) {
+            StaticSprite s = this.sprites.get(i);
+            if (s != null) {
+                s.timePassed();
+            }
+        }
+    }
+
+    /**
+     * Drops the slots of removed sprites in a single pass, keeping the order of the other sprites.
+     */
+    private void compact() {
+        int kept = 0;
+        for (int i = 0; i < this.sprites.size(); i++) {
+            StaticSprite s = this.sprites.get(i);
+            if (s != null) {
+                if (kept != i) {
+                    this.sprites.set(kept, s);
+                    this.handles.move(i, kept);
+                }
+                kept++;
+            }
+        }
+        this.sprites.subList(kept, this.sprites.size()).clear();
+        this.removedCount = 0;
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * The StaticSprite interface represents a sprite that never moves, so it can be drawn once into a
+ * {@link StaticLayer} and reused frame after frame.
+ * A static sprite must invalidate its layer whenever its look changes.
+ */
+public interface StaticSprite extends Sprite {
+
+    /**
+     * Tells the sprite which layer caches its drawing, so it can invalidate it when its look changes.
+     *
+     * @param layer the layer the sprite was added to
+     */
+    void setLayer(StaticLayer layer);
+}
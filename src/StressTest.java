@@ -0,0 +1,270 @@
+import java.awt.Color;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * StressTest class that generates stress scenarios, runs each of them headless for a fixed time, and reports the
+ * game's throughput, so the capacity of a machine can be measured repeatably.
+ * <p>
+ * A scenario is a walled arena with a grid of 50x20 bricks at the top, an idle paddle at the bottom, and balls
+ * launched in random directions from random points of the open area between them, all drawn from a seed.
+ * The bricks are either separate blocks or a single {@link BrickField}.
+ */
+public class StressTest {
+    private static final int BRICK_WIDTH = 50;
+    private static final int BRICK_HEIGHT = 20;
+    private static final int BORDER_SIZE = 20;
+    private static final int OPEN_AREA_HEIGHT = 400;
+    private static final int MIN_WIDTH = 800;
+    private static final int BALL_RADIUS = 5;
+    private static final double MIN_SPEED = 0.1;
+    private static final Color[] ROW_COLORS = {Color.RED, Color.YELLOW, Color.GREEN, Color.CYAN};
+
+    /**
+     * Main method that runs the stress scenarios.
+     * Arguments are of the form name=value, and all are optional:
+     * <ul>
+     * <li>balls: the number of balls, or a comma-separated list of them to run one scenario each (default 1000)</li>
+     * <li>columns, rows: the size of the brick grid (default 100 by 20)</li>
+     * <li>speed: the distribution of the ball speeds: fixed:s, uniform:min:max or normal:mean:deviation
+     * (default fixed:5)</li>
+     * <li>seed: the seed of the scenario (default 1)</li>
+     * <li>seconds: how long each scenario runs, after a one-second warm-up (default 10)</li>
+     * <li>threads: the number of threads to update the balls on, or 0 to update them sequentially (default 0)</li>
+     * <li>bricks: blocks to make every brick a block, or field to make them a single brick field
+     * (default blocks)</li>
+     * <li>kinetic: true to move the balls from collision to collision instead of querying every ball every tick
+     * (default false)</li>
+     * <li>csv: true to print one comma-separated line per scenario after a header line (default false)</li>
+     * </ul>
+     *
+     * @param args command line arguments.
+     */
+    public static void main(String[] args) {
+        List<Integer> ballCounts = new ArrayList<>();
+        int columns = 100;
+        int rows = 20;
+        String speed = "fixed:5";
+        long seed = 1;
+        double seconds = 10;
+        int threads = 0;
+        boolean csv = false;
+        boolean brickField = false;
+        boolean kinetic = false;
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                usage("\"" + arg + "\" is not of the form name=value");
+            }
+            String name = arg.substring(0, equals);
+            String value = arg.substring(equals + 1);
+            switch (name) {
+                case "balls":
+                    for (String count : value.split(",")) {
+                        ballCounts.add(Integer.parseInt(count));
+                    }
+                    break;
+                case "columns":
+                    columns = Integer.parseInt(value);
+                    break;
+                case "rows":
+                    rows = Integer.parseInt(value);
+                    break;
+                case "speed":
+                    speed = value;
+                    break;
+                case "seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "seconds":
+                    seconds = Double.parseDouble(value);
+                    break;
+                case "threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "bricks":
+                    if (!value.equals("blocks") && !value.equals("field")) {
+                        usage("bricks must be blocks or field");
+                    }
+                    brickField = value.equals("field");
+                    break;
+                case "kinetic":
+                    kinetic = Boolean.parseBoolean(value);
+                    break;
+                case "csv":
+                    csv = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    usage("unknown argument \"" + name + "\"");
+            }
+        }
+        if (ballCounts.isEmpty()) {
+            ballCounts.add(1000);
+        }
+
+        ForkJoinPool pool = threads > 0 ? new ForkJoinPool(threads) : null;
+        if (csv) {
+            System.out.println("balls,bricks,brick_field,kinetic,speed,seed,threads,ticks,seconds,ticks_per_second,"
+                    + "collision_queries_per_second,tick_p50_us,tick_p99_us,tick_max_us,allocated_bytes_per_second");
+        }
+        for (int balls : ballCounts) {
+            Level level = createScenario(balls, columns, rows, speed, seed, !brickField);
+            Game game = new Game();
+            game.setLevel(level);
+            game.initializeHeadless();
+            if (brickField) {
+                createBrickField(columns, rows).addToGame(game);
+            }
+            game.setParallelUpdates(pool);
+            game.setKinetic(kinetic);
+
+            // Warm up, so the measurement sees compiled code
+            game.runHeadless(0, 1000);
+            GameMetrics metrics = game.getMetrics();
+            metrics.resetRun();
+            long startBytes = allocatedBytes();
+            long startTime = System.nanoTime();
+            long ticks = game.runHeadless(0, (long) (seconds * 1000));
+            double elapsed = (System.nanoTime() - startTime) / 1e9;
+            double bytesPerSecond = (allocatedBytes() - startBytes) / elapsed;
+
+            LatencyHistogram tickTimes = metrics.getRunTicks();
+            double p50 = tickTimes.getPercentile(50) / 1e3;
+            double p99 = tickTimes.getPercentile(99) / 1e3;
+            double max = tickTimes.getMax() / 1e3;
+            double queriesPerSecond = metrics.getRunCollisionQueries() / elapsed;
+            int bricks = columns * rows;
+            if (csv) {
+                System.out.printf("%d,%d,%b,%b,%s,%d,%d,%d,%.3f,%.1f,%.1f,%.1f,%.1f,%.1f,%.0f%n", balls, bricks,
+                        brickField, kinetic, speed, seed, threads, ticks, elapsed, ticks / elapsed, queriesPerSecond,
+                        p50, p99, max, bytesPerSecond);
+            } else {
+                System.out.printf("balls=%d bricks=%d%s%s speed=%s seed=%d threads=%d: %d ticks in %.3f s%n",
+                        balls, bricks, brickField ? " (field)" : "", kinetic ? " kinetic" : "", speed, seed, threads,
+                        ticks, elapsed);
+                System.out.printf("  %.1f ticks/s, %.0f collision queries/s, tick p50 %.1f us, p99 %.1f us, "
+                        + "max %.1f us, %.1f MB/s allocated%n", ticks / elapsed, queriesPerSecond, p50, p99, max,
+                        bytesPerSecond / 1e6);
+            }
+        }
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Generates a scenario.
+     *
+     * @param balls   the number of balls
+     * @param columns the number of columns of bricks
+     * @param rows    the number of rows of bricks
+     * @param speed   the distribution of the ball speeds, as described in {@link #main(String[])}
+     * @param seed    the seed for the ball positions, directions and speeds
+     * @param blocks  true to add the bricks to the level as blocks, false to leave their place empty for a
+     *                {@link #createBrickField(int, int)}
+     * @return the level of the scenario
+     */
+    public static Level createScenario(int balls, int columns, int rows, String speed, long seed,
+                                       boolean blocks) {
+        int width = Math.max(MIN_WIDTH, columns * BRICK_WIDTH + 2 * BORDER_SIZE);
+        int height = rows * BRICK_HEIGHT + OPEN_AREA_HEIGHT + 2 * BORDER_SIZE;
+        int gray = Color.GRAY.getRGB();
+        Level.Builder builder = new Level.Builder();
+        builder.addBlock(0, 0, width, BORDER_SIZE, gray);
+        builder.addBlock(0, height - BORDER_SIZE, width, BORDER_SIZE, gray);
+        builder.addBlock(0, 0, BORDER_SIZE, height, gray);
+        builder.addBlock(width - BORDER_SIZE, 0, BORDER_SIZE, height, gray);
+        builder.setPaddle(width / 2.0 - 50, height - 2 * BORDER_SIZE, 100, 20, Color.ORANGE.getRGB());
+        for (int row = 0; blocks && row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                builder.addBlock(BORDER_SIZE + column * BRICK_WIDTH, BORDER_SIZE + row * BRICK_HEIGHT, BRICK_WIDTH,
+                        BRICK_HEIGHT, ROW_COLORS[row % ROW_COLORS.length].getRGB());
+            }
+        }
+
+        Random random = new Random(seed);
+        double openTop = BORDER_SIZE + rows * BRICK_HEIGHT + 10;
+        double openWidth = width - 2 * BORDER_SIZE - 20;
+        int white = Color.WHITE.getRGB();
+        for (int i = 0; i < balls; i++) {
+            double x = BORDER_SIZE + 10 + random.nextDouble() * openWidth;
+            double y = openTop + random.nextDouble() * (OPEN_AREA_HEIGHT - 3 * BORDER_SIZE);
+            Velocity velocity = Velocity.fromAngleAndSpeed(random.nextInt(360) + 0.5, nextSpeed(random, speed));
+            builder.addBall(x, y, BALL_RADIUS, velocity.getDx(), velocity.getDy(), white);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates the bricks of a scenario as a single brick field, in the place left for them by
+     * {@link #createScenario(int, int, int, String, long, boolean)}. The bricks never break, like blocks.
+     *
+     * @param columns the number of columns of bricks
+     * @param rows    the number of rows of bricks
+     * @return the brick field
+     */
+    public static BrickField createBrickField(int columns, int rows) {
+        BrickField field = new BrickField(new Point(BORDER_SIZE, BORDER_SIZE), BRICK_WIDTH, BRICK_HEIGHT, columns,
+                rows, ROW_COLORS);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                field.setBrick(column, row, row % ROW_COLORS.length, BrickField.UNBREAKABLE);
+            }
+        }
+        return field;
+    }
+
+    /**
+     * Draws a ball speed from a distribution.
+     *
+     * @param random the random generator
+     * @param speed  the distribution, as described in {@link #main(String[])}
+     * @return the speed, at least a small positive minimum
+     */
+    private static double nextSpeed(Random random, String speed) {
+        String[] parts = speed.split(":");
+        double value;
+        if (parts[0].equals("fixed") && parts.length == 2) {
+            value = Double.parseDouble(parts[1]);
+        } else if (parts[0].equals("uniform") && parts.length == 3) {
+            double min = Double.parseDouble(parts[1]);
+            value = min + random.nextDouble() * (Double.parseDouble(parts[2]) - min);
+        } else if (parts[0].equals("normal") && parts.length == 3) {
+            value = Double.parseDouble(parts[1]) + random.nextGaussian() * Double.parseDouble(parts[2]);
+        } else {
+            throw new IllegalArgumentException("unknown speed distribution \"" + speed + "\"");
+        }
+        return Math.max(MIN_SPEED, value);
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by all live threads.
+     *
+     * @return the number of allocated bytes
+     */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+
+    /**
+     * Prints an error and the usage of the stress test, and exits.
+     *
+     * @param error the error
+     */
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("usage: StressTest [balls=n[,n...]] [columns=n] [rows=n] "
+                + "[speed=fixed:s|uniform:min:max|normal:mean:deviation] [seed=n] [seconds=s] [threads=n] "
+                + "[bricks=blocks|field] [kinetic=true] [csv=true]");
+        System.exit(2);
+    }
+}
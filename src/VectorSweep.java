@@ -0,0 +1,183 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The VectorSweep class sweeps circles through {@link PackedCells} a chunk of entries at a time with the incubating
+ * vector API. Every lane takes all branches of
+ * {@link Rectangle#sweptCircleHitParameter(double[], int, double, double, double, double, double)} at once and keeps
+ * the one its own box would take, so it finds the same hit parameter, bit for bit, without branching on the data.
+ * It needs the jdk.incubator.vector module, so it must only be loaded when that module is present.
+ */
+public final class VectorSweep {
+    /**
+     * The largest number of cells a move may touch to be answered here.
+     */
+    public static final int MAX_CELLS = 4;
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED.length() > PackedCells.LANES
+            ? DoubleVector.SPECIES_512 : DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> ORDER_SPECIES = SPECIES.withLanes(long.class);
+
+    /**
+     * Not used; the class only has static methods.
+     */
+    private VectorSweep() {
+    }
+
+    /**
+     * Finds the item of the cells hit first by a move of a batch, and records it in the batch with the time of the
+     * hit. Every cell the bounding box of the move touches is tested, together with the loose run; when several
+     * items are hit at the same time, the one with the lowest add order wins. Moves touching more than
+     * {@link #MAX_CELLS} cells, and moves along an axis, are left alone.
+     *
+     * @param cells the up to date cells to test
+     * @param batch the moves
+     * @param index the index of the move to answer
+     * @return true if the move was answered, false if it was left alone
+     */
+    public static boolean closestHit(PackedCells cells, CollisionBatch batch, int index) {
+        double x0 = batch.getStartX(index);
+        double y0 = batch.getStartY(index);
+        double x1 = batch.getEndX(index);
+        double y1 = batch.getEndY(index);
+        double r = batch.getRadius(index);
+        double minX = Math.min(x0, x1) - r;
+        double minY = Math.min(y0, y1) - r;
+        double maxX = Math.max(x0, x1) + r;
+        double maxY = Math.max(y0, y1) + r;
+        int firstColumn = cells.cellOf(minX);
+        int firstRow = cells.cellOf(minY);
+        long columns = (long) cells.cellOf(maxX) - firstColumn + 1;
+        long rows = (long) cells.cellOf(maxY) - firstRow + 1;
+        if (x1 == x0 || y1 == y0 || !(r >= 0) || columns * rows > MAX_CELLS) {
+            return false;
+        }
+
+        // Broadcast the bounding box once, rather than for every chunk
+        DoubleVector boxLeft = DoubleVector.broadcast(SPECIES, minX);
+        DoubleVector boxTop = DoubleVector.broadcast(SPECIES, minY);
+        DoubleVector boxRight = DoubleVector.broadcast(SPECIES, maxX);
+        DoubleVector boxBottom = DoubleVector.broadcast(SPECIES, maxY);
+        double[] lefts = cells.lefts();
+        double[] tops = cells.tops();
+        double[] rights = cells.rights();
+        double[] bottoms = cells.bottoms();
+        long bestOrder = Long.MAX_VALUE;
+        batch.setHit(index, CollisionBatch.NO_HIT, Double.MAX_VALUE);
+        int lastColumn = firstColumn + (int) columns - 1;
+        int lastRow = firstRow + (int) rows - 1;
+        // Every column the move touches is one span of entries, and the loose run comes last
+        for (int column = firstColumn; column <= lastColumn + 1; column++) {
+            int start = cells.looseStart();
+            int end = cells.looseEnd();
+            if (column <= lastColumn) {
+                start = cells.spanStart(column, firstRow, lastRow);
+                end = cells.spanEnd(column, firstRow, lastRow);
+            }
+            for (int entry = start; entry < end; entry += SPECIES.length()) {
+                VectorMask<Double> overlap = DoubleVector.fromArray(SPECIES, lefts, entry)
+                        .compare(VectorOperators.LE, boxRight)
+                        .and(DoubleVector.fromArray(SPECIES, tops, entry).compare(VectorOperators.LE, boxBottom))
+                        .and(DoubleVector.fromArray(SPECIES, rights, entry).compare(VectorOperators.GE, boxLeft))
+                        .and(DoubleVector.fromArray(SPECIES, bottoms, entry).compare(VectorOperators.GE, boxTop));
+                if (overlap.anyTrue()) {
+                    bestOrder = sweepChunk(cells, entry, batch, index, bestOrder);
+                }
+            }
+        }
+        if (batch.getHit(index) == CollisionBatch.NO_HIT) {
+            batch.setHit(index, CollisionBatch.NO_HIT, Double.NaN);
+        }
+        return true;
+    }
+
+    /**
+     * Tests a move against one chunk of entries, and records the hit in the batch if it comes before the hit
+     * recorded so far, or at the same time on an item added earlier. It is kept apart from the loop over the cells
+     * so that the compiler turns all of it into vector instructions.
+     *
+     * @param cells     the cells
+     * @param entry     the first entry of the chunk
+     * @param batch     the moves, holding the hit found so far and its time
+     * @param index     the index of the move
+     * @param bestOrder the add order of the item hit so far, or Long.MAX_VALUE if none
+     * @return the add order of the item hit first after this chunk
+     */
+    private static long sweepChunk(PackedCells cells, int entry, CollisionBatch batch, int index, long bestOrder) {
+        double x0 = batch.getStartX(index);
+        double y0 = batch.getStartY(index);
+        double x1 = batch.getEndX(index);
+        double y1 = batch.getEndY(index);
+        double radius = batch.getRadius(index);
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        double bestT = batch.getTime(index);
+        DoubleVector startX = DoubleVector.broadcast(SPECIES, x0);
+        DoubleVector startY = DoubleVector.broadcast(SPECIES, y0);
+        DoubleVector deltaX = DoubleVector.broadcast(SPECIES, dx);
+        DoubleVector deltaY = DoubleVector.broadcast(SPECIES, dy);
+        DoubleVector r = DoubleVector.broadcast(SPECIES, radius);
+        DoubleVector zero = DoubleVector.zero(SPECIES);
+        DoubleVector one = DoubleVector.broadcast(SPECIES, 1);
+        DoubleVector left = DoubleVector.fromArray(SPECIES, cells.lefts(), entry);
+        DoubleVector top = DoubleVector.fromArray(SPECIES, cells.tops(), entry);
+        DoubleVector right = DoubleVector.fromArray(SPECIES, cells.rights(), entry);
+        DoubleVector bottom = DoubleVector.fromArray(SPECIES, cells.bottoms(), entry);
+        VectorMask<Double> overlap = left.compare(VectorOperators.LE, Math.max(x0, x1) + radius)
+                .and(top.compare(VectorOperators.LE, Math.max(y0, y1) + radius))
+                .and(right.compare(VectorOperators.GE, Math.min(x0, x1) - radius))
+                .and(bottom.compare(VectorOperators.GE, Math.min(y0, y1) - radius));
+
+        // Starting outside, the circle hits the box when it enters both slabs of the grown box
+        DoubleVector t1 = left.sub(r).sub(startX).div(deltaX);
+        DoubleVector t2 = right.add(r).sub(startX).div(deltaX);
+        DoubleVector enterX = t1.min(t2);
+        DoubleVector exitX = t1.max(t2);
+        t1 = top.sub(r).sub(startY).div(deltaY);
+        t2 = bottom.add(r).sub(startY).div(deltaY);
+        DoubleVector enter = enterX.max(t1.min(t2));
+        DoubleVector exit = exitX.min(t1.max(t2));
+        // A circle already touching the box hits it now if it moves towards it, and never otherwise; the direction
+        // is the same in every lane, so the sides the move leaves are known up front
+        VectorMask<Double> touching = enter.compare(VectorOperators.LT, zero);
+        VectorMask<Double> separating = (dx < 0 ? left.compare(VectorOperators.GT, startX)
+                : right.compare(VectorOperators.LT, startX))
+                .or(dy < 0 ? top.compare(VectorOperators.GT, startY) : bottom.compare(VectorOperators.LT, startY));
+        VectorMask<Double> outerMiss = enter.compare(VectorOperators.GT, exit)
+                .or(enter.compare(VectorOperators.GT, one))
+                .or(exit.compare(VectorOperators.LT, zero))
+                .or(touching.and(separating));
+
+        // A lane that misses its box gets an infinite time, so only the times that may come first are kept
+        DoubleVector never = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+        DoubleVector t = enter.blend(zero, touching).blend(never, outerMiss);
+        // Starting inside, the circle hits the box when it reaches the inner side it moves towards
+        VectorMask<Double> inside = left.compare(VectorOperators.LE, startX)
+                .and(right.compare(VectorOperators.GE, startX))
+                .and(top.compare(VectorOperators.LE, startY))
+                .and(bottom.compare(VectorOperators.GE, startY));
+        if (inside.anyTrue()) {
+            DoubleVector innerX = (dx < 0 ? left.add(r) : right.sub(r)).sub(startX).div(deltaX);
+            DoubleVector innerY = (dy < 0 ? top.add(r) : bottom.sub(r)).sub(startY).div(deltaY);
+            DoubleVector inner = innerX.min(innerY);
+            t = t.blend(inner.max(zero).blend(never, inner.compare(VectorOperators.GT, one)), inside);
+        }
+        VectorMask<Double> hit = overlap.and(t.compare(VectorOperators.LE, bestT));
+        if (!hit.anyTrue()) {
+            return bestOrder;
+        }
+        // Of the lanes hit first keep the item added first, as the same item may sit in several cells
+        double first = t.reduceLanes(VectorOperators.MIN, hit);
+        LongVector orders = LongVector.fromArray(ORDER_SPECIES, cells.orders(), entry);
+        long order = orders.reduceLanes(VectorOperators.MIN,
+                t.compare(VectorOperators.EQ, first).and(hit).cast(ORDER_SPECIES));
+        if (first < bestT || order < bestOrder) {
+            batch.setHit(index, cells.ids()[entry + orders.compare(VectorOperators.EQ, order).firstTrue()], first);
+            return order;
+        }
+        return bestOrder;
+    }
+}
@@ -1,5 +1,6 @@
 /**
  * The Velocity class specifies the change in position on the `x` and the `y` axes.
+ * A Velocity can be changed in place, so a hit can update the velocity it is given instead of creating a new one.
  */
 public class Velocity {
     private double dx;
@@ -34,6 +35,30 @@ public class Velocity {
         return this.dy;
     }
 
+    /**
+     * Changes the velocity.
+     *
+     * @param newDx the new change in x-coordinate
+     * @param newDy the new change in y-coordinate
+     */
+    public void set(double newDx, double newDy) {
+        this.dx = newDx;
+        this.dy = newDy;
+    }
+
+    /**
+     * Changes the velocity to the one given by an angle and speed, as {@link #fromAngleAndSpeed(double, double)}
+     * creates it.
+     *
+     * @param angle the angle of the velocity in degrees
+     * @param speed the speed of the velocity
+     */
+    public void setAngleAndSpeed(double angle, double speed) {
+        double rad = Math.toRadians(angle);
+        this.dy = Math.cos(rad) * speed;
+        this.dx = Math.sin(rad) * speed;
+    }
+
     /**
      * Applies the velocity to a given point and returns the new point.
      *
@@ -52,9 +77,8 @@ public class Velocity {
      * @return the velocity object created from the angle and speed
      */
     public static Velocity fromAngleAndSpeed(double angle, double speed) {
-        double rad = Math.toRadians(angle);
-        double dy = Math.cos(rad) * speed;
-        double dx = Math.sin(rad) * speed;
-        return new Velocity(dx, dy);
+        Velocity velocity = new Velocity(0, 0);
+        velocity.setAngleAndSpeed(angle, speed);
+        return velocity;
     }
 }